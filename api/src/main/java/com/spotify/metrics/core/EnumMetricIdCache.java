@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A cache of metric ids for every constant of an enum.
+ * <p>
+ * All ids are loaded when the cache is built, and looked up by the ordinal of the constant, so a
+ * lookup neither hashes nor allocates.
+ *
+ * @param <E> The enum type keying the cache.
+ * @see MetricIdCache
+ */
+public final class EnumMetricIdCache<E extends Enum<E>> {
+    private final Class<E> type;
+    private final MetricId[] ids;
+
+    private EnumMetricIdCache(final Class<E> type, final MetricId[] ids) {
+        this.type = type;
+        this.ids = ids;
+    }
+
+    /**
+     * Build a cache with an empty base metric id.
+     *
+     * @see #of(Class, MetricId, MetricIdCache.Loader)
+     */
+    public static <E extends Enum<E>> EnumMetricIdCache<E> of(
+        final Class<E> type, final MetricIdCache.Loader<E> loader
+    ) {
+        return of(type, MetricId.EMPTY, loader);
+    }
+
+    /**
+     * Build a cache by loading the ids for all constants of the given enum.
+     *
+     * @param type The enum type.
+     * @param metricId The base metric id passed to the loader.
+     * @param loader The loader building ids from the base and constants.
+     * @throws IllegalStateException if loader returns {@code null}.
+     */
+    public static <E extends Enum<E>> EnumMetricIdCache<E> of(
+        final Class<E> type, final MetricId metricId, final MetricIdCache.Loader<E> loader
+    ) {
+        if (type == null) {
+            throw new IllegalArgumentException("'type' must not be null");
+        }
+
+        if (metricId == null) {
+            throw new IllegalArgumentException("'metricId' must not be null");
+        }
+
+        if (loader == null) {
+            throw new IllegalArgumentException("'loader' must not be null");
+        }
+
+        final E[] constants = type.getEnumConstants();
+        final MetricId[] ids = new MetricId[constants.length];
+
+        for (final E constant : constants) {
+            final MetricId id = loader.load(metricId, constant);
+
+            if (id == null) {
+                throw new IllegalStateException("loader returned null value");
+            }
+
+            ids[constant.ordinal()] = id;
+        }
+
+        return new EnumMetricIdCache<E>(type, ids);
+    }
+
+    /**
+     * Build a cache by tagging the base metric id with the name of each constant.
+     *
+     * @param type The enum type.
+     * @param metricId The base metric id.
+     * @param tag The tag to set to the name of the constant.
+     */
+    public static <E extends Enum<E>> EnumMetricIdCache<E> tagged(
+        final Class<E> type, final MetricId metricId, final String tag
+    ) {
+        return of(type, metricId, (id, constant) -> id.tagged(tag, constant.name()));
+    }
+
+    /**
+     * Get the metric id for the given constant.
+     */
+    public MetricId get(final E key) {
+        return ids[key.ordinal()];
+    }
+
+    public Class<E> getType() {
+        return type;
+    }
+
+    /**
+     * Get all metric ids of the cache.
+     *
+     * @return A new map of all ids by their constant.
+     */
+    public Map<E, MetricId> getIds() {
+        final Map<E, MetricId> result = new EnumMap<>(type);
+
+        for (final E constant : type.getEnumConstants()) {
+            result.put(constant, ids[constant.ordinal()]);
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+/**
+ * A stable 64-bit hash over the key and tags of a metric id.
+ * <p>
+ * The function is a variant of MurmurHash3 which consumes the UTF-16 code units of each string
+ * four at a time, followed by its length. Tags are consumed in sorted order. The result only
+ * depends on the contents of the id, and must stay the same across releases since fingerprints
+ * are used to identify series outside of the current process.
+ */
+final class Fingerprint {
+    private static final long SEED = 0x9e3779b97f4a7c15L;
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    /**
+     * Mixed in place of the length for {@code null} strings.
+     */
+    private static final long NULL_MARKER = -1L;
+
+    /**
+     * Substituted for a fingerprint of zero, which is reserved for <em>not computed</em>.
+     */
+    static final long ZERO_REPLACEMENT = 0x5bd1e9955bd1e995L;
+
+    private Fingerprint() {
+    }
+
+    static long of(final String key, final TagMap tags) {
+        final String[] pairs = tags.pairs();
+
+        long h = string(SEED, key);
+
+        for (int i = 0; i < pairs.length; i++) {
+            h = string(h, pairs[i]);
+        }
+
+        h = finalize(h ^ pairs.length);
+        return h == 0 ? ZERO_REPLACEMENT : h;
+    }
+
+    private static long string(long h, final String s) {
+        if (s == null) {
+            return mix(h, NULL_MARKER);
+        }
+
+        final int n = s.length();
+
+        int i = 0;
+
+        for (; i + 4 <= n; i += 4) {
+            h = mix(h, s.charAt(i) | (long) s.charAt(i + 1) << 16 |
+                (long) s.charAt(i + 2) << 32 | (long) s.charAt(i + 3) << 48);
+        }
+
+        if (i < n) {
+            long block = 0;
+
+            for (int shift = 0; i < n; i++, shift += 16) {
+                block |= (long) s.charAt(i) << shift;
+            }
+
+            h = mix(h, block);
+        }
+
+        return mix(h, n);
+    }
+
+    private static long mix(long h, long k) {
+        k *= C1;
+        k = Long.rotateLeft(k, 31);
+        k *= C2;
+        h ^= k;
+        h = Long.rotateLeft(h, 27);
+        return h * 5 + 0x52dce729;
+    }
+
+    private static long finalize(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -23,13 +23,10 @@ package com.spotify.metrics.core;
 
 import com.google.common.annotations.VisibleForTesting;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Set;
+import java.util.Objects;
 import java.util.SortedMap;
-import java.util.TreeMap;
 
 /**
  * A metric name with the ability to include semantic tags.
@@ -41,31 +38,36 @@ import java.util.TreeMap;
  * which will cache values for you.
  * <p>
  * This replaces the previous style where metric names where strictly dot-separated strings.
+ * <p>
+ * Tags are stored in a compact, sorted array. Copy-then-modify operations merge arrays instead of
+ * rebuilding a tree, and tags are shared between instances whenever they are left unchanged.
  *
  * @author udoprog
  */
 public class MetricId implements Comparable<MetricId> {
     public static final String SEPARATOR = ".";
-    public static final SortedMap<String, String> EMPTY_TAGS =
-        Collections.unmodifiableSortedMap(new TreeMap<String, String>());
+    public static final SortedMap<String, String> EMPTY_TAGS = TagMap.EMPTY;
     public static final MetricId EMPTY = new MetricId();
 
     private final String key;
-    private final SortedMap<String, String> tags;
+    private final TagMap tags;
     // store hash since these objects are immutable and
     // it will speed up hashing/comparison operations.
     private final int hash;
+    // lazily computed fingerprint, zero if it has not been computed yet.
+    // volatile since long writes are not guaranteed to be atomic otherwise.
+    private volatile long fingerprint;
 
     public MetricId() {
-        this(null, EMPTY_TAGS, true);
+        this(null, TagMap.EMPTY);
     }
 
     public MetricId(String key) {
-        this(key, EMPTY_TAGS, true);
+        this(key, TagMap.EMPTY);
     }
 
     public MetricId(String key, Map<String, String> tags) {
-        this(key, new TreeMap<>(tags), false);
+        this(key, TagMap.copyOf(tags));
     }
 
     /**
@@ -77,12 +79,12 @@ public class MetricId implements Comparable<MetricId> {
     @Deprecated
     @VisibleForTesting
     MetricId(String key, SortedMap<String, String> tags) {
-        this(key, tags, false);
+        this(key, TagMap.copyOf(tags));
     }
 
-    private MetricId(String key, SortedMap<String, String> tags, boolean isAlreadyUnmodifiable) {
+    MetricId(String key, TagMap tags) {
         this.key = key;
-        this.tags = isAlreadyUnmodifiable ? tags : Collections.unmodifiableSortedMap(tags);
+        this.tags = tags;
         this.hash = calculateHashCode(key, tags);
     }
 
@@ -104,6 +106,23 @@ public class MetricId implements Comparable<MetricId> {
         return tags;
     }
 
+    TagMap tags() {
+        return tags;
+    }
+
+    /**
+     * Get the canonical instance of this metric id from the global {@link MetricIdInterner}.
+     * <p>
+     * Interned ids share their key and tag strings with other interned ids, and comparing two
+     * interned ids that are equal is an identity check.
+     *
+     * @return A metric id which is equal to this one.
+     * @see MetricIdInterner#global()
+     */
+    public MetricId intern() {
+        return MetricIdInterner.global().intern(this);
+    }
+
     /**
      * Build the MetricName that is this with another path appended to it.
      * <p>
@@ -113,7 +132,7 @@ public class MetricId implements Comparable<MetricId> {
      * @return A new metric name relative to the original by the path specified in p.
      */
     public MetricId resolve(final String part) {
-        return new MetricId(extendKey(part), tags, true);
+        return new MetricId(extendKey(part), tags);
     }
 
     private String extendKey(final String part) {
@@ -135,9 +154,7 @@ public class MetricId implements Comparable<MetricId> {
      * @return A newly created metric name with the specified tags associated with it.
      */
     public MetricId tagged(Map<String, String> add) {
-        final TreeMap<String, String> tags = new TreeMap<>(this.tags);
-        tags.putAll(add);
-        return new MetricId(key, tags, false);
+        return new MetricId(key, tags.with(TagMap.copyOf(add)));
     }
 
     /**
@@ -156,11 +173,7 @@ public class MetricId implements Comparable<MetricId> {
             throw new IllegalArgumentException("Argument count must be even");
         }
 
-        final TreeMap<String, String> tags = new TreeMap<>(this.tags);
-        for (int i = 0; i < pairs.length; i += 2) {
-            tags.put(pairs[i], pairs[i + 1]);
-        }
-        return new MetricId(key, tags, false);
+        return new MetricId(key, tags.with(TagMap.ownPairs(pairs.clone())));
     }
 
     /**
@@ -173,9 +186,7 @@ public class MetricId implements Comparable<MetricId> {
      * @see #tagged(Map)
      */
     public MetricId tagged(String k1, String v1) {
-        final TreeMap<String, String> tags = new TreeMap<>(this.tags);
-        tags.put(k1, v1);
-        return new MetricId(key, tags, false);
+        return new MetricId(key, tags.with(k1, v1));
     }
 
     /**
@@ -190,10 +201,7 @@ public class MetricId implements Comparable<MetricId> {
      * @see #tagged(Map)
      */
     public MetricId tagged(String k1, String v1, String k2, String v2) {
-        final TreeMap<String, String> tags = new TreeMap<>(this.tags);
-        tags.put(k1, v1);
-        tags.put(k2, v2);
-        return new MetricId(key, tags, false);
+        return new MetricId(key, tags.with(TagMap.ownPairs(new String[]{k1, v1, k2, v2})));
     }
 
     /**
@@ -210,11 +218,8 @@ public class MetricId implements Comparable<MetricId> {
      * @see #tagged(Map)
      */
     public MetricId tagged(String k1, String v1, String k2, String v2, String k3, String v3) {
-        final TreeMap<String, String> tags = new TreeMap<>(this.tags);
-        tags.put(k1, v1);
-        tags.put(k2, v2);
-        tags.put(k3, v3);
-        return new MetricId(key, tags, false);
+        return new MetricId(key,
+            tags.with(TagMap.ownPairs(new String[]{k1, v1, k2, v2, k3, v3})));
     }
 
     /**
@@ -226,7 +231,7 @@ public class MetricId implements Comparable<MetricId> {
      **/
     public static MetricId join(MetricId... parts) {
         final StringBuilder nameBuilder = new StringBuilder();
-        final Map<String, String> tags = new HashMap<String, String>();
+        TagMap tags = TagMap.EMPTY;
 
         boolean first = true;
 
@@ -243,9 +248,7 @@ public class MetricId implements Comparable<MetricId> {
                 nameBuilder.append(name);
             }
 
-            if (!part.getTags().isEmpty()) {
-                tags.putAll(part.getTags());
-            }
+            tags = tags.with(TagMap.copyOf(part.getTags()));
         }
 
         return new MetricId(nameBuilder.toString(), tags);
@@ -263,10 +266,43 @@ public class MetricId implements Comparable<MetricId> {
         }
 
         if (parts.length == 1) {
-            return new MetricId(parts[0], EMPTY_TAGS, true);
+            return new MetricId(parts[0], TagMap.EMPTY);
+        }
+
+        return new MetricId(key(parts), TagMap.EMPTY);
+    }
+
+    /**
+     * Get a stable, 64-bit fingerprint of this id.
+     * <p>
+     * Unlike {@link #hashCode()}, the fingerprint is suitable to identify a series across
+     * processes and restarts, since it only depends on the key and tags of the id and the
+     * function used to calculate it will not change. Equal ids always have the same fingerprint,
+     * but distinct ids might collide, so users of fingerprints must be prepared to handle that.
+     * <p>
+     * The fingerprint is calculated on first use and then retained by the id. It is never zero.
+     *
+     * @return The fingerprint of this id.
+     */
+    public long fingerprint() {
+        long f = fingerprint;
+
+        if (f == 0) {
+            f = Fingerprint.of(key, tags);
+            fingerprint = f;
         }
 
-        return new MetricId(key(parts), EMPTY_TAGS, true);
+        return f;
+    }
+
+    /**
+     * Create a new, reusable builder for metric ids.
+     *
+     * @return A new, empty builder.
+     * @see Builder
+     */
+    public static Builder builder() {
+        return new Builder();
     }
 
     @Override
@@ -341,7 +377,7 @@ public class MetricId implements Comparable<MetricId> {
             return k;
         }
 
-        return compareTags(tags.entrySet(), o.tags.entrySet());
+        return TagMap.compare(tags, o.tags);
     }
 
     private static String key(String... names) {
@@ -381,60 +417,348 @@ public class MetricId implements Comparable<MetricId> {
         return left.compareTo(right);
     }
 
-    private int compareTags(
-        Set<Map.Entry<String, String>> left, Set<Map.Entry<String, String>> right
-    ) {
-        if (left == null && right == null) {
-            return 0;
+    private static int calculateHashCode(final String key, final TagMap tags) {
+        return calculateHashCode((key == null) ? 0 : key.hashCode(), tags.hashCode());
+    }
+
+    private static int calculateHashCode(final int keyHash, final int tagsHash) {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + keyHash;
+        result = prime * result + tagsHash;
+        return result;
+    }
+
+    /**
+     * A mutable, reusable builder for metric ids.
+     * <p>
+     * The builder accumulates key parts and tags into arrays which are retained across calls to
+     * {@link #reset()}, so that building ids on a hot path does not produce any intermediate ids
+     * or tag maps. Tags and key parts have the same semantics as {@link MetricId#tagged(String,
+     * String)} and {@link MetricId#resolve(String)}.
+     * <p>
+     * When combined with {@code SemanticMetricRegistry#getOrAdd(Builder, SemanticMetricBuilder)},
+     * an already registered metric can be looked up without building an id at all.
+     * <p>
+     * Builders are not thread-safe, and are intended to be confined to a single thread, for
+     * example through a {@link ThreadLocal}.
+     *
+     * <pre>{@code
+     * private final ThreadLocal<MetricId.Builder> builders =
+     *     ThreadLocal.withInitial(MetricId::builder);
+     *
+     * MetricId.Builder b = builders.get().from(base).tagged("endpoint", endpoint);
+     * registry.counter(b).inc();
+     * }</pre>
+     */
+    public static final class Builder {
+        private static final int INITIAL_TAGS = 8;
+        private static final int INITIAL_PARTS = 4;
+
+        private final Object lookupKey = new LookupKey();
+
+        private MetricId base = EMPTY;
+        private String baseKey = null;
+        private String[] parts = new String[INITIAL_PARTS];
+        private int partCount = 0;
+        private String[] pairs = new String[INITIAL_TAGS * 2];
+        private int pairCount = 0;
+        private boolean tagsChanged = false;
+
+        private Builder() {
         }
 
-        if (left == null) {
-            return 1;
+        /**
+         * Clear all key parts and tags of this builder.
+         *
+         * @return This builder.
+         */
+        public Builder reset() {
+            return from(EMPTY);
         }
 
-        if (right == null) {
-            return -1;
+        /**
+         * Reset this builder to the key and tags of the given id.
+         *
+         * @param id The id to start from.
+         * @return This builder.
+         */
+        public Builder from(final MetricId id) {
+            final String[] tags = id.tags.pairs();
+
+            Arrays.fill(parts, 0, partCount, null);
+            Arrays.fill(pairs, 0, pairCount, null);
+
+            ensureTagCapacity(tags.length);
+            System.arraycopy(tags, 0, pairs, 0, tags.length);
+
+            this.base = id;
+            this.baseKey = id.key;
+            this.partCount = 0;
+            this.pairCount = tags.length;
+            this.tagsChanged = false;
+            return this;
         }
 
-        final Iterator<Map.Entry<String, String>> li = left.iterator();
-        final Iterator<Map.Entry<String, String>> ri = right.iterator();
+        /**
+         * Append a part to the key.
+         *
+         * @param part The part to append, ignored if {@code null} or empty.
+         * @return This builder.
+         * @see MetricId#resolve(String)
+         */
+        public Builder resolve(final String part) {
+            if (part == null || part.isEmpty()) {
+                return this;
+            }
+
+            if (partCount == parts.length) {
+                parts = Arrays.copyOf(parts, parts.length * 2);
+            }
+
+            parts[partCount++] = part;
+            return this;
+        }
 
-        while (li.hasNext()) {
-            if (!ri.hasNext()) {
-                return -1;
+        /**
+         * Add a tag, replacing any existing value for the same key.
+         *
+         * @param key The key of the tag.
+         * @param value The value of the tag.
+         * @return This builder.
+         * @see MetricId#tagged(String, String)
+         */
+        public Builder tagged(final String key, final String value) {
+            if (key == null) {
+                throw new NullPointerException("tag key must not be null");
             }
 
-            final Map.Entry<String, String> l = li.next();
-            final Map.Entry<String, String> r = ri.next();
+            int lo = 0;
+            int hi = pairCount / 2 - 1;
 
-            final int k = l.getKey().compareTo(r.getKey());
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                final int c = pairs[mid * 2].compareTo(key);
 
-            if (k != 0) {
-                return k;
+                if (c < 0) {
+                    lo = mid + 1;
+                } else if (c > 0) {
+                    hi = mid - 1;
+                } else {
+                    if (!Objects.equals(pairs[mid * 2 + 1], value)) {
+                        pairs[mid * 2 + 1] = value;
+                        tagsChanged = true;
+                    }
+
+                    return this;
+                }
+            }
+
+            ensureTagCapacity(pairCount + 2);
+
+            final int at = lo * 2;
+            System.arraycopy(pairs, at, pairs, at + 2, pairCount - at);
+            pairs[at] = key;
+            pairs[at + 1] = value;
+            pairCount += 2;
+            tagsChanged = true;
+            return this;
+        }
+
+        /**
+         * Build a metric id from the current state of this builder.
+         * <p>
+         * The key and tags of the id given to {@link #from(MetricId)} are re-used if they were
+         * not modified.
+         *
+         * @return A new metric id.
+         */
+        public MetricId build() {
+            if (partCount == 0 && !tagsChanged) {
+                return base;
             }
 
-            if (l.getValue() != null && r.getValue() != null) {
+            final TagMap tags =
+                tagsChanged ? TagMap.ofSorted(Arrays.copyOf(pairs, pairCount)) : base.tags;
+
+            return new MetricId(buildKey(), tags);
+        }
+
+        /**
+         * Get an object which is equal to, and has the same hash code as, the id that this builder
+         * would build.
+         * <p>
+         * The returned object is only valid until this builder is next modified, and is intended
+         * for lookups in maps keyed by {@link MetricId}.
+         */
+        Object lookupKey() {
+            return lookupKey;
+        }
+
+        private String buildKey() {
+            if (partCount == 0) {
+                return baseKey;
+            }
+
+            final boolean hasBase = baseKey != null && !baseKey.isEmpty();
+
+            if (!hasBase && partCount == 1) {
+                return parts[0];
+            }
 
-                final int v = l.getValue().compareTo(r.getValue());
+            final StringBuilder builder = new StringBuilder(keyLength());
 
-                if (v != 0) {
-                    return v;
+            if (hasBase) {
+                builder.append(baseKey);
+            }
+
+            for (int i = 0; i < partCount; i++) {
+                if (builder.length() > 0) {
+                    builder.append(SEPARATOR);
                 }
+
+                builder.append(parts[i]);
             }
+
+            return builder.toString();
         }
 
-        if (ri.hasNext()) {
-            return 1;
+        private int keyLength() {
+            int length = baseKey == null ? 0 : baseKey.length();
+
+            for (int i = 0; i < partCount; i++) {
+                if (length > 0) {
+                    length += SEPARATOR.length();
+                }
+
+                length += parts[i].length();
+            }
+
+            return length;
         }
 
-        return 0;
-    }
+        private int keyHashCode() {
+            if (partCount == 0) {
+                return baseKey == null ? 0 : baseKey.hashCode();
+            }
 
-    private static int calculateHashCode(final String key, final SortedMap<String, String> tags) {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((key == null) ? 0 : key.hashCode());
-        result = prime * result + tags.hashCode();
-        return result;
+            int h = baseKey == null ? 0 : baseKey.hashCode();
+            boolean empty = baseKey == null || baseKey.isEmpty();
+
+            for (int i = 0; i < partCount; i++) {
+                if (!empty) {
+                    h = 31 * h + SEPARATOR.charAt(0);
+                }
+
+                final String part = parts[i];
+
+                for (int c = 0; c < part.length(); c++) {
+                    h = 31 * h + part.charAt(c);
+                }
+
+                empty = false;
+            }
+
+            return h;
+        }
+
+        private boolean keyEquals(final String other) {
+            if (partCount == 0) {
+                return baseKey == null ? other == null : baseKey.equals(other);
+            }
+
+            if (other == null || other.length() != keyLength()) {
+                return false;
+            }
+
+            int offset = 0;
+
+            if (baseKey != null) {
+                if (!other.startsWith(baseKey)) {
+                    return false;
+                }
+
+                offset = baseKey.length();
+            }
+
+            for (int i = 0; i < partCount; i++) {
+                if (offset > 0) {
+                    if (!other.startsWith(SEPARATOR, offset)) {
+                        return false;
+                    }
+
+                    offset += SEPARATOR.length();
+                }
+
+                final String part = parts[i];
+
+                if (!other.startsWith(part, offset)) {
+                    return false;
+                }
+
+                offset += part.length();
+            }
+
+            return true;
+        }
+
+        private int tagsHashCode() {
+            if (!tagsChanged) {
+                return base.tags.hashCode();
+            }
+
+            int h = 0;
+
+            for (int i = 0; i < pairCount; i += 2) {
+                h += pairs[i].hashCode() ^ Objects.hashCode(pairs[i + 1]);
+            }
+
+            return h;
+        }
+
+        private boolean tagsEqual(final TagMap other) {
+            final String[] o = other.pairs();
+
+            if (o.length != pairCount) {
+                return false;
+            }
+
+            for (int i = 0; i < pairCount; i++) {
+                if (!Objects.equals(pairs[i], o[i])) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private void ensureTagCapacity(final int capacity) {
+            if (capacity > pairs.length) {
+                pairs = Arrays.copyOf(pairs, Math.max(capacity, pairs.length * 2));
+            }
+        }
+
+        /**
+         * Stands in for the id being built in lookups, without having to build it.
+         * <p>
+         * This is deliberately only equal to a {@link MetricId} from its own side, which is the
+         * side that hash maps use when looking up a key.
+         */
+        private final class LookupKey {
+            @Override
+            public int hashCode() {
+                return calculateHashCode(keyHashCode(), tagsHashCode());
+            }
+
+            @Override
+            public boolean equals(final Object obj) {
+                if (obj == null || obj.getClass() != MetricId.class) {
+                    return false;
+                }
+
+                final MetricId m = (MetricId) obj;
+                return keyEquals(m.key) && tagsEqual(m.tags);
+            }
+        }
     }
 }
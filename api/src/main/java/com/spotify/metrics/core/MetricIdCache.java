@@ -111,6 +111,24 @@ public class MetricIdCache<T> {
         public void invalidate(T key);
 
         public void invalidateAll();
+
+        /**
+         * Get the number of entries in the cache.
+         *
+         * @return The number of entries, or {@code -1} if the cache does not keep track of it.
+         */
+        public default long size() {
+            return -1L;
+        }
+
+        /**
+         * Get the number of entries the cache has evicted to stay within its bounds.
+         *
+         * @return The number of evictions, or {@code -1} if the cache does not keep track of it.
+         */
+        public default long evictions() {
+            return -1L;
+        }
     }
 
     public static interface MapBuilder {
@@ -162,6 +180,11 @@ public class MetricIdCache<T> {
         public void invalidateAll() {
             cache.clear();
         }
+
+        @Override
+        public long size() {
+            return cache.size();
+        }
     }
 
     private interface TypedCacheBuilder<T> {
@@ -217,11 +240,34 @@ public class MetricIdCache<T> {
          * entries.
          *
          * @see Any#unbounded(Loader)
+         * @see #bounded(long, Loader)
          */
         public Typed<T> unbounded(Loader<T> loader) {
             return cache(new ConcurrentHashMap<T, MetricId>(), loader);
         }
 
+        /**
+         * Use a cache which holds at most the given number of entries.
+         * <p>
+         * When the cache is full, it retains the entries which are used most frequently, so that
+         * rarely used keys can not push out the ones that are used all the time.
+         *
+         * @param maximumSize The maximum number of entries in the cache.
+         * @see Any#bounded(long, Loader)
+         */
+        public Typed<T> bounded(final long maximumSize, Loader<T> loader) {
+            if (maximumSize <= 0) {
+                throw new IllegalArgumentException("'maximumSize' must be positive");
+            }
+
+            return loader(loader).typedCacheBuilder(new TypedCacheBuilder<T>() {
+                @Override
+                public Cache<T> build(Loader<T> loader) {
+                    return new TinyLfuCache<T>(maximumSize, loader);
+                }
+            });
+        }
+
         /**
          * Configure a specific cache instance, use this if you wish for the consequent builders to
          * re-use the same cache instance.
@@ -243,6 +289,15 @@ public class MetricIdCache<T> {
             return any(any.cacheBuilder(cacheBuilder));
         }
 
+        /**
+         * Put a small per-thread cache in front of the cache.
+         *
+         * @see Any#frontCache(int)
+         */
+        public Typed<T> frontCache(int size) {
+            return any(any.frontCache(size));
+        }
+
         public Typed<T> mapBuilder(MapBuilder mapBuilder, Loader<T> loader) {
             return loader(loader).any(any.mapBuilder(mapBuilder));
         }
@@ -287,14 +342,16 @@ public class MetricIdCache<T> {
     public static class Any {
         private final MetricId metricId;
         private final CacheBuilder cacheBuilder;
+        private final int frontCacheSize;
 
-        private Any(MetricId base, CacheBuilder cacheBuilder) {
+        private Any(MetricId base, CacheBuilder cacheBuilder, int frontCacheSize) {
             this.metricId = base;
             this.cacheBuilder = cacheBuilder;
+            this.frontCacheSize = frontCacheSize;
         }
 
         private Any() {
-            this(null, null);
+            this(null, null, 0);
         }
 
         /**
@@ -305,13 +362,17 @@ public class MetricIdCache<T> {
                 throw new IllegalArgumentException("'metricId' must not be null");
             }
 
-            return new Any(metricId, cacheBuilder);
+            return new Any(metricId, cacheBuilder, frontCacheSize);
         }
 
         public <T> Typed<T> unbounded(Loader<T> loader) {
             return new Typed<T>(this, null, null, null).unbounded(loader);
         }
 
+        public <T> Typed<T> bounded(long maximumSize, Loader<T> loader) {
+            return new Typed<T>(this, null, null, null).bounded(maximumSize, loader);
+        }
+
         public <T> Typed<T> cache(Cache<T> cache) {
             return new Typed<T>(this, null, null, null).cache(cache);
         }
@@ -333,7 +394,7 @@ public class MetricIdCache<T> {
                 throw new IllegalArgumentException("'cacheBuilder' must not be null");
             }
 
-            return new Any(metricId, cacheBuilder);
+            return new Any(metricId, cacheBuilder, frontCacheSize);
         }
 
         public Any mapBuilder(final MapBuilder mapBuilder) {
@@ -352,7 +413,24 @@ public class MetricIdCache<T> {
 
                     return new ConcurrentMapCache<T>(map, loader);
                 }
-            });
+            }, frontCacheSize);
+        }
+
+        /**
+         * Put a small, direct-mapped cache per thread in front of the built cache, which avoids
+         * contention on the shared cache for keys that are looked up very frequently.
+         * <p>
+         * This does not apply to shared caches configured through {@link #cache(Cache)}.
+         *
+         * @param size The number of slots per thread.
+         * @see ThreadLocalFrontCache
+         */
+        public Any frontCache(int size) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("'size' must be positive");
+            }
+
+            return new Any(metricId, cacheBuilder, size);
         }
 
         private <T> Cache<T> buildCache(
@@ -362,6 +440,16 @@ public class MetricIdCache<T> {
                 return cache;
             }
 
+            final Cache<T> c = buildCache(loader, typedCacheBuilder);
+
+            if (frontCacheSize > 0) {
+                return new ThreadLocalFrontCache<T>(c, frontCacheSize);
+            }
+
+            return c;
+        }
+
+        private <T> Cache<T> buildCache(Loader<T> loader, TypedCacheBuilder<T> typedCacheBuilder) {
             if (loader == null) {
                 throw new IllegalStateException("'loader' must be set");
             }
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cache of metric ids derived from two keys.
+ * <p>
+ * Unlike a {@link MetricIdCache} with a composite key, looking up an existing id in an
+ * {@link #unbounded(Loader) unbounded} cache does not need to allocate a key object, since ids
+ * are stored in one nested map per value of the first key. Nested maps are removed once they
+ * are empty.
+ * <p>
+ * A {@link #bounded(long, Loader) bounded} cache holds at most a given number of ids in a
+ * single map with composite keys. Every lookup in it allocates a key object, hits included, so
+ * latency-sensitive callers with a bounded set of keys should use an unbounded cache instead.
+ * <p>
+ * Keys must not be {@code null}.
+ *
+ * @param <A> The type of the first key.
+ * @param <B> The type of the second key.
+ * @see MetricIdCache
+ */
+public class MetricIdCache2<A, B> {
+    private final ConcurrentMap<A, ConcurrentMap<B, MetricId>> cache;
+    private final TinyLfuCache<Key<A, B>> bounded;
+
+    private final MetricId metricId;
+    private final Loader<A, B> loader;
+
+    private MetricIdCache2(
+        final MetricId metricId, final Loader<A, B> loader, final long maximumSize
+    ) {
+        this.metricId = metricId;
+        this.loader = loader;
+
+        if (maximumSize > 0) {
+            this.cache = null;
+            this.bounded = new TinyLfuCache<Key<A, B>>(
+                maximumSize, (id, key) -> loader.load(id, key.a, key.b));
+        } else {
+            this.cache = new ConcurrentHashMap<>();
+            this.bounded = null;
+        }
+    }
+
+    /**
+     * Build an unbounded cache with an empty base metric id.
+     */
+    public static <A, B> MetricIdCache2<A, B> unbounded(final Loader<A, B> loader) {
+        return unbounded(MetricId.EMPTY, loader);
+    }
+
+    /**
+     * Build an unbounded cache.
+     * <p>
+     * This could leak memory unless the set of keys is bounded, since ids are never evicted.
+     *
+     * @param metricId The base metric id passed to the loader.
+     * @param loader The loader building ids from the base and keys.
+     */
+    public static <A, B> MetricIdCache2<A, B> unbounded(
+        final MetricId metricId, final Loader<A, B> loader
+    ) {
+        checkArguments(metricId, loader);
+        return new MetricIdCache2<>(metricId, loader, 0L);
+    }
+
+    /**
+     * Build a bounded cache with an empty base metric id.
+     */
+    public static <A, B> MetricIdCache2<A, B> bounded(
+        final long maximumSize, final Loader<A, B> loader
+    ) {
+        return bounded(MetricId.EMPTY, maximumSize, loader);
+    }
+
+    /**
+     * Build a cache which holds at most the given number of ids.
+     * <p>
+     * When the cache is full, it retains the ids which are used most frequently. Unlike the
+     * lookups of an {@link #unbounded(MetricId, Loader) unbounded} cache, every lookup allocates
+     * a composite key, including lookups of existing ids.
+     *
+     * @param metricId The base metric id passed to the loader.
+     * @param maximumSize The maximum number of ids in the cache.
+     * @param loader The loader building ids from the base and keys.
+     * @see MetricIdCache.Any#bounded(long, MetricIdCache.Loader)
+     */
+    public static <A, B> MetricIdCache2<A, B> bounded(
+        final MetricId metricId, final long maximumSize, final Loader<A, B> loader
+    ) {
+        checkArguments(metricId, loader);
+
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("'maximumSize' must be positive");
+        }
+
+        return new MetricIdCache2<>(metricId, loader, maximumSize);
+    }
+
+    /**
+     * Get the value for the specified keys.
+     * <p>
+     * This method is guaranteed to return the same instance of the associated MetricId, regardless
+     * of how many threads invoke it.
+     * <p>
+     * The configured Loader could be called multiple times, and should be idempotent to that.
+     *
+     * @throws IllegalStateException if loader returns {@code null}.
+     */
+    public MetricId get(final A a, final B b) {
+        if (bounded != null) {
+            return bounded.get(metricId, new Key<>(a, b));
+        }
+
+        final ConcurrentMap<B, MetricId> inner = cache.get(a);
+
+        if (inner != null) {
+            final MetricId candidate = inner.get(b);
+
+            if (candidate != null) {
+                return candidate;
+            }
+        }
+
+        return load(a, b);
+    }
+
+    public void invalidate(final A a, final B b) {
+        if (bounded != null) {
+            bounded.invalidate(new Key<>(a, b));
+            return;
+        }
+
+        cache.computeIfPresent(a, (k, inner) -> {
+            inner.remove(b);
+            return inner.isEmpty() ? null : inner;
+        });
+    }
+
+    /**
+     * Invalidate all ids with the given first key.
+     */
+    public void invalidate(final A a) {
+        if (bounded != null) {
+            bounded.invalidateIf(key -> key.a.equals(a));
+            return;
+        }
+
+        cache.remove(a);
+    }
+
+    public void invalidateAll() {
+        if (bounded != null) {
+            bounded.invalidateAll();
+            return;
+        }
+
+        cache.clear();
+    }
+
+    /**
+     * Get the number of nested maps of an unbounded cache.
+     */
+    int nestedMaps() {
+        return cache.size();
+    }
+
+    private MetricId load(final A a, final B b) {
+        final MetricId addition = loader.load(metricId, a, b);
+
+        if (addition == null) {
+            throw new IllegalStateException("loader returned null value");
+        }
+
+        final MetricId[] result = new MetricId[1];
+
+        // added while the outer entry is locked, so that the nested map can't be removed
+        // concurrently and take the id with it.
+        cache.compute(a, (k, inner) -> {
+            final ConcurrentMap<B, MetricId> map =
+                inner != null ? inner : new ConcurrentHashMap<>();
+            final MetricId put = map.putIfAbsent(b, addition);
+            result[0] = put != null ? put : addition;
+            return map;
+        });
+
+        return result[0];
+    }
+
+    private static void checkArguments(final MetricId metricId, final Object loader) {
+        if (metricId == null) {
+            throw new IllegalArgumentException("'metricId' must not be null");
+        }
+
+        if (loader == null) {
+            throw new IllegalArgumentException("'loader' must not be null");
+        }
+    }
+
+    public interface Loader<A, B> {
+        MetricId load(MetricId id, A a, B b);
+    }
+
+    private static final class Key<A, B> {
+        private final A a;
+        private final B b;
+
+        private Key(final A a, final B b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            final Key<?, ?> other = (Key<?, ?>) o;
+            return a.equals(other.a) && b.equals(other.b);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * a.hashCode() + b.hashCode();
+        }
+    }
+}
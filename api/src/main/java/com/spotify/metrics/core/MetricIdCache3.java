@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cache of metric ids derived from three keys.
+ * <p>
+ * Like {@link MetricIdCache2}, an {@link #unbounded(Loader) unbounded} cache stores ids in
+ * nested maps so that looking up an existing id does not allocate, and a
+ * {@link #bounded(long, Loader) bounded} cache holds at most a given number of ids. Every lookup
+ * in a bounded cache allocates a composite key, hits included, so latency-sensitive callers with
+ * a bounded set of keys should use an unbounded cache instead.
+ * <p>
+ * Keys must not be {@code null}.
+ *
+ * @param <A> The type of the first key.
+ * @param <B> The type of the second key.
+ * @param <C> The type of the third key.
+ * @see MetricIdCache
+ */
+public class MetricIdCache3<A, B, C> {
+    private final ConcurrentMap<A, ConcurrentMap<B, ConcurrentMap<C, MetricId>>> cache;
+    private final TinyLfuCache<Key<A, B, C>> bounded;
+
+    private final MetricId metricId;
+    private final Loader<A, B, C> loader;
+
+    private MetricIdCache3(
+        final MetricId metricId, final Loader<A, B, C> loader, final long maximumSize
+    ) {
+        this.metricId = metricId;
+        this.loader = loader;
+
+        if (maximumSize > 0) {
+            this.cache = null;
+            this.bounded = new TinyLfuCache<Key<A, B, C>>(
+                maximumSize, (id, key) -> loader.load(id, key.a, key.b, key.c));
+        } else {
+            this.cache = new ConcurrentHashMap<>();
+            this.bounded = null;
+        }
+    }
+
+    /**
+     * Build an unbounded cache with an empty base metric id.
+     */
+    public static <A, B, C> MetricIdCache3<A, B, C> unbounded(final Loader<A, B, C> loader) {
+        return unbounded(MetricId.EMPTY, loader);
+    }
+
+    /**
+     * Build an unbounded cache.
+     * <p>
+     * This could leak memory unless the set of keys is bounded, since ids are never evicted.
+     *
+     * @param metricId The base metric id passed to the loader.
+     * @param loader The loader building ids from the base and keys.
+     */
+    public static <A, B, C> MetricIdCache3<A, B, C> unbounded(
+        final MetricId metricId, final Loader<A, B, C> loader
+    ) {
+        checkArguments(metricId, loader);
+        return new MetricIdCache3<>(metricId, loader, 0L);
+    }
+
+    /**
+     * Build a bounded cache with an empty base metric id.
+     */
+    public static <A, B, C> MetricIdCache3<A, B, C> bounded(
+        final long maximumSize, final Loader<A, B, C> loader
+    ) {
+        return bounded(MetricId.EMPTY, maximumSize, loader);
+    }
+
+    /**
+     * Build a cache which holds at most the given number of ids.
+     * <p>
+     * Every lookup allocates a composite key, including lookups of existing ids.
+     *
+     * @param metricId The base metric id passed to the loader.
+     * @param maximumSize The maximum number of ids in the cache.
+     * @param loader The loader building ids from the base and keys.
+     * @see MetricIdCache2#bounded(MetricId, long, MetricIdCache2.Loader)
+     */
+    public static <A, B, C> MetricIdCache3<A, B, C> bounded(
+        final MetricId metricId, final long maximumSize, final Loader<A, B, C> loader
+    ) {
+        checkArguments(metricId, loader);
+
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("'maximumSize' must be positive");
+        }
+
+        return new MetricIdCache3<>(metricId, loader, maximumSize);
+    }
+
+    /**
+     * Get the value for the specified keys.
+     *
+     * @throws IllegalStateException if loader returns {@code null}.
+     * @see MetricIdCache2#get(Object, Object)
+     */
+    public MetricId get(final A a, final B b, final C c) {
+        if (bounded != null) {
+            return bounded.get(metricId, new Key<>(a, b, c));
+        }
+
+        final ConcurrentMap<B, ConcurrentMap<C, MetricId>> middle = cache.get(a);
+
+        if (middle != null) {
+            final ConcurrentMap<C, MetricId> inner = middle.get(b);
+
+            if (inner != null) {
+                final MetricId candidate = inner.get(c);
+
+                if (candidate != null) {
+                    return candidate;
+                }
+            }
+        }
+
+        return load(a, b, c);
+    }
+
+    public void invalidate(final A a, final B b, final C c) {
+        if (bounded != null) {
+            bounded.invalidate(new Key<>(a, b, c));
+            return;
+        }
+
+        // nested maps are only modified while the outer entry is locked.
+        cache.computeIfPresent(a, (k, middle) -> {
+            final ConcurrentMap<C, MetricId> inner = middle.get(b);
+
+            if (inner != null) {
+                inner.remove(c);
+
+                if (inner.isEmpty()) {
+                    middle.remove(b);
+                }
+            }
+
+            return middle.isEmpty() ? null : middle;
+        });
+    }
+
+    /**
+     * Invalidate all ids with the given first key.
+     */
+    public void invalidate(final A a) {
+        if (bounded != null) {
+            bounded.invalidateIf(key -> key.a.equals(a));
+            return;
+        }
+
+        cache.remove(a);
+    }
+
+    public void invalidateAll() {
+        if (bounded != null) {
+            bounded.invalidateAll();
+            return;
+        }
+
+        cache.clear();
+    }
+
+    private MetricId load(final A a, final B b, final C c) {
+        final MetricId addition = loader.load(metricId, a, b, c);
+
+        if (addition == null) {
+            throw new IllegalStateException("loader returned null value");
+        }
+
+        final MetricId[] result = new MetricId[1];
+
+        // added while the outer entry is locked, so that the nested maps can't be removed
+        // concurrently and take the id with them.
+        cache.compute(a, (k, middle) -> {
+            final ConcurrentMap<B, ConcurrentMap<C, MetricId>> map =
+                middle != null ? middle : new ConcurrentHashMap<>();
+            final MetricId put =
+                map.computeIfAbsent(b, key -> new ConcurrentHashMap<>()).putIfAbsent(c, addition);
+            result[0] = put != null ? put : addition;
+            return map;
+        });
+
+        return result[0];
+    }
+
+    private static void checkArguments(final MetricId metricId, final Object loader) {
+        if (metricId == null) {
+            throw new IllegalArgumentException("'metricId' must not be null");
+        }
+
+        if (loader == null) {
+            throw new IllegalArgumentException("'loader' must not be null");
+        }
+    }
+
+    public interface Loader<A, B, C> {
+        MetricId load(MetricId id, A a, B b, C c);
+    }
+
+    private static final class Key<A, B, C> {
+        private final A a;
+        private final B b;
+        private final C c;
+
+        private Key(final A a, final B b, final C c) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            final Key<?, ?, ?> other = (Key<?, ?, ?>) o;
+            return a.equals(other.a) && b.equals(other.b) && c.equals(other.c);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * a.hashCode() + b.hashCode()) + c.hashCode();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of canonical {@link MetricId} instances.
+ * <p>
+ * Interning an id returns a previously interned, equal instance if one is present in the pool.
+ * Otherwise the id is rebuilt so that its key and tag strings are shared with other interned ids,
+ * stored, and returned. Since equal interned ids are usually the same instance, comparing them
+ * (for example when looking them up in a {@link java.util.concurrent.ConcurrentHashMap}) is
+ * reduced to an identity check.
+ * <p>
+ * Both ids and strings are stored in fixed-size, direct-mapped tables. A colliding entry simply
+ * replaces the previous one, which keeps memory bounded without any locking or eviction
+ * bookkeeping, at the cost of occasionally returning a non-canonical (but equal) instance.
+ * <p>
+ * Interning is opt-in: either through {@link MetricId#intern()}, which uses the {@link #global()}
+ * pool, or through a dedicated pool created with {@link #create(int)}.
+ */
+public final class MetricIdInterner {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private final AtomicReferenceArray<MetricId> ids;
+    private final AtomicReferenceArray<String> strings;
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger stringsSize = new AtomicInteger();
+
+    private MetricIdInterner(final int capacity) {
+        this.ids = new AtomicReferenceArray<>(capacity);
+        this.strings = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Get the global pool used by {@link MetricId#intern()}.
+     * <p>
+     * The pool is created the first time it is accessed, with {@link #DEFAULT_CAPACITY}.
+     */
+    public static MetricIdInterner global() {
+        return Global.INSTANCE;
+    }
+
+    /**
+     * Create a new pool.
+     *
+     * @param capacity The number of ids and strings to keep, rounded up to the nearest power of
+     * two.
+     * @return A new, empty pool.
+     */
+    public static MetricIdInterner create(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("'capacity' must be positive");
+        }
+
+        if (capacity > MAXIMUM_CAPACITY) {
+            throw new IllegalArgumentException("'capacity' must not exceed " + MAXIMUM_CAPACITY);
+        }
+
+        return new MetricIdInterner(tableSizeFor(capacity));
+    }
+
+    /**
+     * Get the canonical instance of the given id.
+     *
+     * @param id The id to intern.
+     * @return An id which is equal to the given id.
+     */
+    public MetricId intern(final MetricId id) {
+        final int index = spread(id.hashCode()) & mask;
+        final MetricId existing = ids.get(index);
+
+        if (existing != null && existing.equals(id)) {
+            hits.increment();
+            return existing;
+        }
+
+        misses.increment();
+
+        final MetricId canonical = canonicalize(id);
+
+        if (ids.getAndSet(index, canonical) == null) {
+            size.incrementAndGet();
+        }
+
+        return canonical;
+    }
+
+    /**
+     * Get the canonical instance of the given string.
+     *
+     * @param value The string to intern, may be {@code null}.
+     * @return A string which is equal to the given string.
+     */
+    public String intern(final String value) {
+        if (value == null) {
+            return null;
+        }
+
+        final int index = spread(value.hashCode()) & mask;
+        final String existing = strings.get(index);
+
+        if (existing != null && existing.equals(value)) {
+            return existing;
+        }
+
+        if (strings.getAndSet(index, value) == null) {
+            stringsSize.incrementAndGet();
+        }
+
+        return value;
+    }
+
+    /**
+     * @return The number of times an already interned id was returned.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of times an id had to be added to the pool.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The number of ids currently held by the pool.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return The number of strings currently held by the pool.
+     */
+    public int stringsSize() {
+        return stringsSize.get();
+    }
+
+    /**
+     * @return The maximum number of ids, and strings, held by the pool.
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    private MetricId canonicalize(final MetricId id) {
+        final String key = intern(id.getKey());
+        final TagMap tags = id.tags();
+        final String[] pairs = tags.pairs();
+
+        String[] canonical = null;
+
+        for (int i = 0; i < pairs.length; i++) {
+            final String s = intern(pairs[i]);
+
+            if (s != pairs[i]) {
+                if (canonical == null) {
+                    canonical = pairs.clone();
+                }
+
+                canonical[i] = s;
+            }
+        }
+
+        if (canonical == null && key == id.getKey()) {
+            return id;
+        }
+
+        return new MetricId(key, canonical == null ? tags : TagMap.ofSorted(canonical));
+    }
+
+    private static int tableSizeFor(final int capacity) {
+        if (capacity <= 1) {
+            return 1;
+        }
+
+        return Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    /**
+     * Spread the higher bits of the hash downwards, since only the lower bits are used to pick a
+     * slot.
+     */
+    private static int spread(final int h) {
+        final int s = h * 0x9E3779B9;
+        return s ^ (s >>> 16);
+    }
+
+    private static final class Global {
+        private static final MetricIdInterner INSTANCE = create(DEFAULT_CAPACITY);
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// @formatter:off
+/**
+ * <p>A metric id with a fixed set of tag names, whose values are bound positionally.</p>
+ *
+ * <p>The tag names are sorted once when the template is created, and values bound to the template
+ * are resolved through a nested lookup structure with one level per tag, so that looking up an
+ * id, or a metric, that has been seen before neither builds a {@link MetricId} nor hashes a map of
+ * tags.</p>
+ *
+ * <h1>Example</h1>
+ *
+ * <code><pre>
+ * final MetricIdTemplate template = MetricIdTemplate.of(
+ *     MetricId.build().tagged("what", "requests"), "method", "status");
+ *
+ * template.id("GET", "200"); // MetricId(method=GET, status=200, what=requests)
+ *
+ * // with a SemanticMetricRegistry.
+ * final MetricIdTemplate.Lookup&lt;Counter&gt; requests = registry.counters(template);
+ *
+ * requests.get("GET", "200").inc();
+ * </pre></code>
+ */
+// @formatter:on
+public final class MetricIdTemplate {
+    private static final Object NULL_VALUE = new Object();
+
+    private final MetricId base;
+    private final String[] names;
+    /* position of the value for each tag name, in sorted order */
+    private final int[] sortedPositions;
+    private final String[] sortedNames;
+    private final Lookup<MetricId> ids;
+
+    private MetricIdTemplate(
+        final MetricId base, final String[] names, final int[] sortedPositions,
+        final String[] sortedNames
+    ) {
+        this.base = base;
+        this.names = names;
+        this.sortedPositions = sortedPositions;
+        this.sortedNames = sortedNames;
+        this.ids = new Lookup<MetricId>(this, new Loader<MetricId>() {
+            @Override
+            public MetricId load(final MetricId id) {
+                return id;
+            }
+        });
+    }
+
+    /**
+     * Create a new template.
+     *
+     * @param base The id to add tags to.
+     * @param tagNames The names of the tags whose values are bound by position.
+     * @return A new template.
+     * @throws IllegalArgumentException if no tag names are given or a tag name is repeated.
+     */
+    public static MetricIdTemplate of(final MetricId base, final String... tagNames) {
+        if (base == null) {
+            throw new IllegalArgumentException("'base' must not be null");
+        }
+
+        if (tagNames == null || tagNames.length == 0) {
+            throw new IllegalArgumentException("at least one tag name is required");
+        }
+
+        final String[] names = tagNames.clone();
+        final Integer[] order = new Integer[names.length];
+
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null) {
+                throw new IllegalArgumentException("tag names must not be null");
+            }
+
+            order[i] = i;
+        }
+
+        Arrays.sort(order, (a, b) -> names[a].compareTo(names[b]));
+
+        final int[] sortedPositions = new int[names.length];
+        final String[] sortedNames = new String[names.length];
+
+        for (int i = 0; i < order.length; i++) {
+            sortedPositions[i] = order[i];
+            sortedNames[i] = names[order[i]];
+
+            if (i > 0 && sortedNames[i].equals(sortedNames[i - 1])) {
+                throw new IllegalArgumentException("duplicate tag name: " + sortedNames[i]);
+            }
+        }
+
+        return new MetricIdTemplate(base, names, sortedPositions, sortedNames);
+    }
+
+    public MetricId getBase() {
+        return base;
+    }
+
+    /**
+     * @return The tag names of this template, in the order their values are bound.
+     */
+    public List<String> getTagNames() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    /**
+     * Get the cached id for the given tag value.
+     */
+    public MetricId id(final String v1) {
+        return ids.get(v1);
+    }
+
+    /**
+     * Get the cached id for the given tag values.
+     */
+    public MetricId id(final String v1, final String v2) {
+        return ids.get(v1, v2);
+    }
+
+    /**
+     * Get the cached id for the given tag values.
+     */
+    public MetricId id(final String v1, final String v2, final String v3) {
+        return ids.get(v1, v2, v3);
+    }
+
+    /**
+     * Get the cached id for the given tag values.
+     *
+     * @param values One value for each tag name of the template, in the same order.
+     * @return The id with the given values bound.
+     */
+    public MetricId id(final String... values) {
+        return ids.get(values);
+    }
+
+    /**
+     * Build a new id for the given tag values, without going through the cache.
+     *
+     * @param values One value for each tag name of the template, in the same order.
+     * @return A newly created id with the given values bound.
+     */
+    public MetricId build(final String... values) {
+        checkArity(values.length);
+
+        final String[] pairs = new String[names.length * 2];
+
+        for (int i = 0; i < sortedNames.length; i++) {
+            pairs[i * 2] = sortedNames[i];
+            pairs[i * 2 + 1] = values[sortedPositions[i]];
+        }
+
+        return new MetricId(base.getKey(), base.tags().with(TagMap.ofSorted(pairs)));
+    }
+
+    /**
+     * Create a new lookup of values derived from the ids of this template.
+     *
+     * @param loader Loader invoked with the id for a set of values the first time they are
+     * looked up.
+     * @param <T> Type of values to look up.
+     * @return A new, empty lookup.
+     */
+    public <T> Lookup<T> lookup(final Loader<T> loader) {
+        if (loader == null) {
+            throw new IllegalArgumentException("'loader' must not be null");
+        }
+
+        return new Lookup<T>(this, loader);
+    }
+
+    private void checkArity(final int count) {
+        if (count != names.length) {
+            throw new IllegalArgumentException(
+                "expected " + names.length + " tag values " + Arrays.toString(names) + ", but got "
+                    + count);
+        }
+    }
+
+    private static Object key(final String value) {
+        return value == null ? NULL_VALUE : value;
+    }
+
+    public interface Loader<T> {
+        T load(MetricId id);
+    }
+
+    /**
+     * Values derived from the ids of a template, looked up by the values bound to it.
+     * <p>
+     * The configured {@link Loader} could be called multiple times for the same values, and
+     * should be idempotent to that.
+     *
+     * @param <T> Type of values to look up.
+     */
+    public static final class Lookup<T> {
+        private final MetricIdTemplate template;
+        private final Loader<T> loader;
+
+        private volatile ConcurrentMap<Object, Object> root = new ConcurrentHashMap<>();
+
+        private Lookup(final MetricIdTemplate template, final Loader<T> loader) {
+            this.template = template;
+            this.loader = loader;
+        }
+
+        public MetricIdTemplate getTemplate() {
+            return template;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(final String v1) {
+            template.checkArity(1);
+
+            final Object hit = root.get(key(v1));
+
+            if (hit != null) {
+                return (T) hit;
+            }
+
+            return load(new String[]{v1});
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(final String v1, final String v2) {
+            template.checkArity(2);
+
+            final ConcurrentMap<Object, Object> n1 = (ConcurrentMap<Object, Object>) root.get(
+                key(v1));
+
+            if (n1 != null) {
+                final Object hit = n1.get(key(v2));
+
+                if (hit != null) {
+                    return (T) hit;
+                }
+            }
+
+            return load(new String[]{v1, v2});
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(final String v1, final String v2, final String v3) {
+            template.checkArity(3);
+
+            final ConcurrentMap<Object, Object> n1 = (ConcurrentMap<Object, Object>) root.get(
+                key(v1));
+
+            if (n1 != null) {
+                final ConcurrentMap<Object, Object> n2 =
+                    (ConcurrentMap<Object, Object>) n1.get(key(v2));
+
+                if (n2 != null) {
+                    final Object hit = n2.get(key(v3));
+
+                    if (hit != null) {
+                        return (T) hit;
+                    }
+                }
+            }
+
+            return load(new String[]{v1, v2, v3});
+        }
+
+        /**
+         * Get the value for the given tag values.
+         *
+         * @param values One value for each tag name of the template, in the same order.
+         * @return The value for the given tag values.
+         * @throws IllegalStateException if the loader returns {@code null}.
+         */
+        @SuppressWarnings("unchecked")
+        public T get(final String... values) {
+            template.checkArity(values.length);
+
+            Object node = root;
+
+            for (final String value : values) {
+                node = ((ConcurrentMap<Object, Object>) node).get(key(value));
+
+                if (node == null) {
+                    return load(values.clone());
+                }
+            }
+
+            return (T) node;
+        }
+
+        /**
+         * Drop all values of this lookup, causing them to be loaded again on next access.
+         */
+        public void invalidateAll() {
+            root = new ConcurrentHashMap<>();
+        }
+
+        @SuppressWarnings("unchecked")
+        private T load(final String[] values) {
+            final int last = values.length - 1;
+
+            ConcurrentMap<Object, Object> node = root;
+
+            for (int i = 0; i < last; i++) {
+                node = (ConcurrentMap<Object, Object>) node.computeIfAbsent(key(values[i]),
+                    k -> new ConcurrentHashMap<>());
+            }
+
+            final Object k = key(values[last]);
+            final Object existing = node.get(k);
+
+            if (existing != null) {
+                return (T) existing;
+            }
+
+            final T addition = loader.load(template.build(values));
+
+            if (addition == null) {
+                throw new IllegalStateException("loader returned null value");
+            }
+
+            final Object previous = node.putIfAbsent(k, addition);
+
+            if (previous != null) {
+                return (T) previous;
+            }
+
+            return addition;
+        }
+    }
+}
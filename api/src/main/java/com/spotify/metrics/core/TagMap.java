@@ -0,0 +1,492 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An immutable, sorted map of tags backed by a single interleaved array.
+ * <p>
+ * Keys are stored at even indexes and their values at the following odd index, ordered by the
+ * natural ordering of the keys. Lookups use binary search, and modifications are performed by
+ * merging arrays into a new instance.
+ */
+final class TagMap extends AbstractMap<String, String> implements SortedMap<String, String> {
+    static final TagMap EMPTY = new TagMap(new String[0]);
+
+    /**
+     * Above this many entries a generic map is sorted through a {@link TreeMap} instead of
+     * insertion sort.
+     */
+    private static final int INSERTION_SORT_LIMIT = 32;
+
+    private final String[] pairs;
+
+    private TagMap(final String[] pairs) {
+        this.pairs = pairs;
+    }
+
+    /**
+     * Build a tag map from the given map, copying its entries.
+     */
+    static TagMap copyOf(final Map<String, String> tags) {
+        if (tags instanceof TagMap) {
+            return (TagMap) tags;
+        }
+
+        if (tags.isEmpty()) {
+            return EMPTY;
+        }
+
+        final boolean sorted =
+            tags instanceof SortedMap && ((SortedMap<String, String>) tags).comparator() == null;
+
+        if (!sorted && tags.size() > INSERTION_SORT_LIMIT) {
+            return copyOf(new TreeMap<>(tags));
+        }
+
+        final String[] pairs = new String[tags.size() * 2];
+
+        int i = 0;
+
+        for (final Map.Entry<String, String> e : tags.entrySet()) {
+            pairs[i++] = e.getKey();
+            pairs[i++] = e.getValue();
+        }
+
+        if (sorted) {
+            for (int k = 0; k < pairs.length; k += 2) {
+                requireKey(pairs[k]);
+            }
+
+            return new TagMap(pairs);
+        }
+
+        return new TagMap(sortPairs(pairs));
+    }
+
+    /**
+     * Build a tag map from an even list of key-value pairs.
+     * <p>
+     * The given array is sorted in place and might be retained by the returned instance, so the
+     * caller must not modify or expose it afterwards. When a key occurs multiple times, the last
+     * value wins.
+     */
+    static TagMap ownPairs(final String[] pairs) {
+        if (pairs.length == 0) {
+            return EMPTY;
+        }
+
+        return new TagMap(sortPairs(pairs));
+    }
+
+    /**
+     * Build a tag map from an even list of key-value pairs which are already sorted by key and
+     * free of duplicates.
+     * <p>
+     * The given array is retained by the returned instance.
+     */
+    static TagMap ofSorted(final String[] pairs) {
+        if (pairs.length == 0) {
+            return EMPTY;
+        }
+
+        return new TagMap(pairs);
+    }
+
+    /**
+     * Get the backing array of interleaved keys and values.
+     * <p>
+     * The returned array must not be modified.
+     */
+    String[] pairs() {
+        return pairs;
+    }
+
+    String keyAt(final int index) {
+        return pairs[index * 2];
+    }
+
+    String valueAt(final int index) {
+        return pairs[index * 2 + 1];
+    }
+
+    /**
+     * Find the index of the given key.
+     *
+     * @return The index of the entry, or {@code -(insertion point) - 1} if it is not present.
+     */
+    int indexOf(final String key) {
+        int lo = 0;
+        int hi = pairs.length / 2 - 1;
+
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int c = pairs[mid * 2].compareTo(key);
+
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -(lo + 1);
+    }
+
+    /**
+     * Return a tag map with the given tag set, replacing any existing value for the key.
+     */
+    TagMap with(final String key, final String value) {
+        final int index = indexOf(requireKey(key));
+
+        if (index >= 0) {
+            if (Objects.equals(pairs[index * 2 + 1], value)) {
+                return this;
+            }
+
+            final String[] result = pairs.clone();
+            result[index * 2 + 1] = value;
+            return new TagMap(result);
+        }
+
+        final int at = (-index - 1) * 2;
+        final String[] result = new String[pairs.length + 2];
+        System.arraycopy(pairs, 0, result, 0, at);
+        result[at] = key;
+        result[at + 1] = value;
+        System.arraycopy(pairs, at, result, at + 2, pairs.length - at);
+        return new TagMap(result);
+    }
+
+    /**
+     * Merge the given tags into this map, where values from {@code add} take precedence.
+     */
+    TagMap with(final TagMap add) {
+        final String[] a = pairs;
+        final String[] b = add.pairs;
+
+        if (b.length == 0) {
+            return this;
+        }
+
+        if (a.length == 0) {
+            return add;
+        }
+
+        // first pass: figure out the size of the result, and whether anything changes at all.
+        int size = 0;
+        boolean changed = false;
+
+        int i = 0;
+        int j = 0;
+
+        while (i < a.length && j < b.length) {
+            final int c = a[i].compareTo(b[j]);
+
+            if (c < 0) {
+                i += 2;
+            } else if (c > 0) {
+                j += 2;
+                changed = true;
+            } else {
+                changed |= !Objects.equals(a[i + 1], b[j + 1]);
+                i += 2;
+                j += 2;
+            }
+
+            size += 2;
+        }
+
+        if (j < b.length) {
+            changed = true;
+        }
+
+        if (!changed) {
+            return this;
+        }
+
+        size += (a.length - i) + (b.length - j);
+
+        final String[] result = new String[size];
+
+        int o = 0;
+        i = 0;
+        j = 0;
+
+        while (i < a.length && j < b.length) {
+            final int c = a[i].compareTo(b[j]);
+
+            if (c < 0) {
+                result[o++] = a[i++];
+                result[o++] = a[i++];
+            } else {
+                result[o++] = b[j++];
+                result[o++] = b[j++];
+
+                if (c == 0) {
+                    i += 2;
+                }
+            }
+        }
+
+        System.arraycopy(a, i, result, o, a.length - i);
+        o += a.length - i;
+        System.arraycopy(b, j, result, o, b.length - j);
+        return new TagMap(result);
+    }
+
+    /**
+     * Compare two tag maps entry by entry.
+     * <p>
+     * Values are only compared if both of them are non-null.
+     */
+    static int compare(final TagMap left, final TagMap right) {
+        final String[] l = left.pairs;
+        final String[] r = right.pairs;
+        final int n = Math.min(l.length, r.length);
+
+        for (int i = 0; i < n; i += 2) {
+            final int k = l[i].compareTo(r[i]);
+
+            if (k != 0) {
+                return k;
+            }
+
+            final String lv = l[i + 1];
+            final String rv = r[i + 1];
+
+            if (lv != null && rv != null) {
+                final int v = lv.compareTo(rv);
+
+                if (v != 0) {
+                    return v;
+                }
+            }
+        }
+
+        if (l.length > r.length) {
+            return -1;
+        }
+
+        if (l.length < r.length) {
+            return 1;
+        }
+
+        return 0;
+    }
+
+    @Override
+    public int size() {
+        return pairs.length / 2;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return pairs.length == 0;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return key instanceof String && indexOf((String) key) >= 0;
+    }
+
+    @Override
+    public String get(final Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+
+        final int index = indexOf((String) key);
+        return index >= 0 ? pairs[index * 2 + 1] : null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<Map.Entry<String, String>>() {
+                    private int index = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < pairs.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (index >= pairs.length) {
+                            throw new NoSuchElementException();
+                        }
+
+                        final Map.Entry<String, String> entry =
+                            new SimpleImmutableEntry<>(pairs[index], pairs[index + 1]);
+                        index += 2;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return pairs.length / 2;
+            }
+        };
+    }
+
+    @Override
+    public Comparator<? super String> comparator() {
+        return null;
+    }
+
+    @Override
+    public SortedMap<String, String> subMap(final String fromKey, final String toKey) {
+        if (fromKey.compareTo(toKey) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+
+        return range(lowerBound(fromKey), lowerBound(toKey));
+    }
+
+    @Override
+    public SortedMap<String, String> headMap(final String toKey) {
+        return range(0, lowerBound(toKey));
+    }
+
+    @Override
+    public SortedMap<String, String> tailMap(final String fromKey) {
+        return range(lowerBound(fromKey), size());
+    }
+
+    @Override
+    public String firstKey() {
+        if (pairs.length == 0) {
+            throw new NoSuchElementException();
+        }
+
+        return pairs[0];
+    }
+
+    @Override
+    public String lastKey() {
+        if (pairs.length == 0) {
+            throw new NoSuchElementException();
+        }
+
+        return pairs[pairs.length - 2];
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (o == this) {
+            return true;
+        }
+
+        if (o instanceof TagMap) {
+            return Arrays.equals(pairs, ((TagMap) o).pairs);
+        }
+
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+
+        for (int i = 0; i < pairs.length; i += 2) {
+            h += pairs[i].hashCode() ^ Objects.hashCode(pairs[i + 1]);
+        }
+
+        return h;
+    }
+
+    private int lowerBound(final String key) {
+        final int index = indexOf(key);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private TagMap range(final int from, final int to) {
+        if (from == 0 && to == size()) {
+            return this;
+        }
+
+        if (from >= to) {
+            return EMPTY;
+        }
+
+        return new TagMap(Arrays.copyOfRange(pairs, from * 2, to * 2));
+    }
+
+    /**
+     * Sort an even list of key-value pairs in place using insertion sort, dropping duplicate keys
+     * in favour of the last occurrence.
+     *
+     * @return The sorted pairs, which is a shorter copy of the array if duplicates were dropped.
+     */
+    private static String[] sortPairs(final String[] pairs) {
+        int n = 0;
+
+        for (int i = 0; i < pairs.length; i += 2) {
+            final String key = requireKey(pairs[i]);
+            final String value = pairs[i + 1];
+
+            int j = n - 2;
+
+            while (j >= 0 && pairs[j].compareTo(key) > 0) {
+                j -= 2;
+            }
+
+            if (j >= 0 && pairs[j].equals(key)) {
+                pairs[j + 1] = value;
+                continue;
+            }
+
+            System.arraycopy(pairs, j + 2, pairs, j + 4, n - (j + 2));
+            pairs[j + 2] = key;
+            pairs[j + 3] = value;
+            n += 2;
+        }
+
+        return n == pairs.length ? pairs : Arrays.copyOf(pairs, n);
+    }
+
+    private static String requireKey(final String key) {
+        if (key == null) {
+            throw new NullPointerException("tag key must not be null");
+        }
+
+        return key;
+    }
+}
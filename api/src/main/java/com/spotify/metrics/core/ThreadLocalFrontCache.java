@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small, direct-mapped cache per thread in front of another {@link MetricIdCache.Cache}.
+ * <p>
+ * Keys which are looked up very frequently from many threads can make the shared cache a
+ * contention point, even if lookups never block. Each thread first consults its own table, and
+ * only falls back to the shared cache when the slot for the key holds another key.
+ * <p>
+ * Calls to {@link #invalidate(Object)} and {@link #invalidateAll()} advance an epoch which
+ * causes every thread to discard its table on its next lookup. Entries which are evicted by the
+ * shared cache on its own, for example when it is bounded, are not removed from the tables of
+ * threads, which might keep returning the evicted id until it is replaced in their table.
+ *
+ * @param <T> The key type of the cache.
+ */
+public final class ThreadLocalFrontCache<T> implements MetricIdCache.Cache<T> {
+    private final MetricIdCache.Cache<T> delegate;
+    private final int mask;
+    private final ThreadLocal<Table> tables;
+
+    private final AtomicLong epoch = new AtomicLong();
+
+    /**
+     * @param delegate The cache to consult when a thread misses in its own table.
+     * @param size The number of slots in the table of each thread, rounded up to a power of two.
+     */
+    public ThreadLocalFrontCache(final MetricIdCache.Cache<T> delegate, final int size) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("'delegate' must not be null");
+        }
+
+        if (size <= 0 || size > 1 << 16) {
+            throw new IllegalArgumentException("'size' must be in [1, 65536]");
+        }
+
+        final int length = size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+
+        this.delegate = delegate;
+        this.mask = length - 1;
+        this.tables = ThreadLocal.withInitial(() -> new Table(length));
+    }
+
+    /**
+     * Wrap all caches built by the given builder in a front cache.
+     *
+     * @see #ThreadLocalFrontCache(MetricIdCache.Cache, int)
+     */
+    public static MetricIdCache.CacheBuilder wrap(
+        final MetricIdCache.CacheBuilder builder, final int size
+    ) {
+        if (builder == null) {
+            throw new IllegalArgumentException("'builder' must not be null");
+        }
+
+        return new MetricIdCache.CacheBuilder() {
+            @Override
+            public <T> MetricIdCache.Cache<T> build(final MetricIdCache.Loader<T> loader) {
+                final MetricIdCache.Cache<T> cache = builder.build(loader);
+
+                if (cache == null) {
+                    throw new IllegalStateException("'builder' must return non-null values");
+                }
+
+                return new ThreadLocalFrontCache<T>(cache, size);
+            }
+        };
+    }
+
+    @Override
+    public MetricId get(final MetricId metricId, final T key) throws ExecutionException {
+        final Table table = tables.get();
+        // read before consulting the delegate, so that a concurrent invalidation is never missed.
+        final long current = epoch.get();
+
+        if (table.epoch != current) {
+            table.clear(current);
+        }
+
+        final int index = spread(key.hashCode()) & mask;
+        final Object candidate = table.keys[index];
+
+        if (candidate != null && candidate.equals(key)) {
+            return table.values[index];
+        }
+
+        final MetricId value = delegate.get(metricId, key);
+        table.keys[index] = key;
+        table.values[index] = value;
+        return value;
+    }
+
+    @Override
+    public void invalidate(final T key) {
+        delegate.invalidate(key);
+        epoch.incrementAndGet();
+    }
+
+    @Override
+    public void invalidateAll() {
+        delegate.invalidateAll();
+        epoch.incrementAndGet();
+    }
+
+    @Override
+    public long size() {
+        return delegate.size();
+    }
+
+    @Override
+    public long evictions() {
+        return delegate.evictions();
+    }
+
+    private static int spread(final int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Table {
+        private final Object[] keys;
+        private final MetricId[] values;
+        private long epoch;
+
+        private Table(final int length) {
+            this.keys = new Object[length];
+            this.values = new MetricId[length];
+        }
+
+        private void clear(final long epoch) {
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = null;
+                values[i] = null;
+            }
+
+            this.epoch = epoch;
+        }
+    }
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * A bounded cache which decides what to retain using the W-TinyLFU policy.
+ * <p>
+ * New entries enter a small LRU window. Entries evicted from the window have to compete for a
+ * place in the main space against its least recently used entry, and are only admitted if they
+ * have been accessed more frequently according to a compact frequency sketch. The main space is
+ * a segmented LRU, where entries accessed again are promoted from a probation to a protected
+ * segment. This keeps frequently used ids cached even when a burst of one-off keys passes by.
+ * <p>
+ * Reads are lock-free. They are recorded in lossy ring buffers which are replayed against the
+ * policy by whichever thread manages to acquire the eviction lock. The buffers are striped by a
+ * probe derived from the id of the reading thread, and the counters of the stripes are padded
+ * apart, so that concurrent readers rarely update the same cache line. Writes always update the
+ * policy under the lock.
+ *
+ * @param <T> The key type of the cache.
+ */
+final class TinyLfuCache<T> implements MetricIdCache.Cache<T> {
+    private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+    private static final int STRIPE_SIZE = 16;
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+    // the number of longs between the read counters of two stripes, which spans 128 bytes.
+    private static final int COUNTER_SPACING = 16;
+    private static final int DRAIN_THRESHOLD = 8;
+
+    private static final int WINDOW = 1;
+    private static final int PROBATION = 2;
+    private static final int PROTECTED = 3;
+
+    private final MetricIdCache.Loader<T> loader;
+    private final long maximumSize;
+    private final long maximumWindowSize;
+    private final long maximumProtectedSize;
+
+    private final ConcurrentMap<T, Node<T>> data = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Node<T>> readBuffer =
+        new AtomicReferenceArray<>(STRIPES * STRIPE_SIZE);
+    private final AtomicLongArray reads = new AtomicLongArray(STRIPES * COUNTER_SPACING);
+    private final AtomicLong evictions = new AtomicLong();
+
+    /* guarded by evictionLock */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final AccessOrder<T> window = new AccessOrder<>();
+    private final AccessOrder<T> probation = new AccessOrder<>();
+    private final AccessOrder<T> protectedSegment = new AccessOrder<>();
+    // the number of reads of each stripe which have been replayed.
+    private final long[] drained = new long[STRIPES];
+
+    TinyLfuCache(final long maximumSize, final MetricIdCache.Loader<T> loader) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("'maximumSize' must be positive");
+        }
+
+        if (loader == null) {
+            throw new IllegalArgumentException("'loader' must not be null");
+        }
+
+        this.loader = loader;
+        this.maximumSize = maximumSize;
+        this.maximumWindowSize = Math.max(1, maximumSize / 100);
+        this.maximumProtectedSize = (maximumSize - maximumWindowSize) * 4 / 5;
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    @Override
+    public MetricId get(final MetricId metricId, final T key) {
+        final Node<T> node = data.get(key);
+
+        if (node != null) {
+            afterRead(node);
+            return node.value;
+        }
+
+        final MetricId addition = loader.load(metricId, key);
+
+        if (addition == null) {
+            throw new IllegalStateException("loader returned null value");
+        }
+
+        final Node<T> created = new Node<>(key, addition);
+        final Node<T> existing = data.putIfAbsent(key, created);
+
+        if (existing != null) {
+            afterRead(existing);
+            return existing.value;
+        }
+
+        afterWrite(created);
+        return addition;
+    }
+
+    @Override
+    public void invalidate(final T key) {
+        final Node<T> node = data.remove(key);
+
+        if (node == null) {
+            return;
+        }
+
+        evictionLock.lock();
+
+        try {
+            retire(node);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Invalidate all entries whose key matches the given predicate.
+     */
+    void invalidateIf(final Predicate<? super T> predicate) {
+        for (final T key : data.keySet()) {
+            if (predicate.test(key)) {
+                invalidate(key);
+            }
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        evictionLock.lock();
+
+        try {
+            for (final Node<T> node : data.values()) {
+                data.remove(node.key, node);
+                retire(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public long size() {
+        return data.size();
+    }
+
+    @Override
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Replay pending reads against the policy.
+     */
+    void cleanUp() {
+        evictionLock.lock();
+
+        try {
+            drainReadBuffer();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void afterRead(final Node<T> node) {
+        final int stripe = probe() & (STRIPES - 1);
+        final long index = reads.getAndIncrement(stripe * COUNTER_SPACING);
+        readBuffer.lazySet(stripe * STRIPE_SIZE + ((int) index & STRIPE_MASK), node);
+
+        if ((index & (DRAIN_THRESHOLD - 1)) == DRAIN_THRESHOLD - 1 && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void afterWrite(final Node<T> node) {
+        evictionLock.lock();
+
+        try {
+            drainReadBuffer();
+            sketch.increment(node.key);
+
+            // might have been invalidated before we got the lock.
+            if (node.queue == 0) {
+                window.addLast(node);
+                node.queue = WINDOW;
+            }
+
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void drainReadBuffer() {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            final long end = reads.get(stripe * COUNTER_SPACING);
+
+            // older reads have been overwritten, since the buffers are lossy.
+            for (long i = Math.max(drained[stripe], end - STRIPE_SIZE); i < end; i++) {
+                final Node<T> node =
+                    readBuffer.getAndSet(stripe * STRIPE_SIZE + ((int) i & STRIPE_MASK), null);
+
+                if (node != null) {
+                    onAccess(node);
+                }
+            }
+
+            drained[stripe] = end;
+        }
+    }
+
+    private static int probe() {
+        final long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    private static int stripes(final int processors) {
+        // the next power of two, so that a probe can be masked into a stripe.
+        final int n = Math.max(1, Math.min(16, processors));
+        return Integer.highestOneBit(n * 2 - 1);
+    }
+
+    private void onAccess(final Node<T> node) {
+        sketch.increment(node.key);
+
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                protectedSegment.addLast(node);
+                node.queue = PROTECTED;
+
+                while (protectedSegment.size > maximumProtectedSize) {
+                    final Node<T> demoted = protectedSegment.removeFirst();
+                    probation.addLast(demoted);
+                    demoted.queue = PROBATION;
+                }
+
+                break;
+            case PROTECTED:
+                protectedSegment.moveToLast(node);
+                break;
+            default:
+                // not yet added, or already retired.
+                break;
+        }
+    }
+
+    private void evict() {
+        while (window.size > maximumWindowSize) {
+            final Node<T> node = window.removeFirst();
+            probation.addLast(node);
+            node.queue = PROBATION;
+        }
+
+        while (window.size + probation.size + protectedSegment.size > maximumSize) {
+            final Node<T> victim = probation.first();
+            final Node<T> candidate = probation.last();
+
+            if (victim == null) {
+                // everything lives in the protected segment or the window.
+                evict(protectedSegment.size > 0 ? protectedSegment.first() : window.first());
+                continue;
+            }
+
+            if (victim == candidate) {
+                evict(victim);
+                continue;
+            }
+
+            // the candidate was most recently moved out of the window, and is only admitted if
+            // it is used more frequently than the entry it would replace.
+            if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                evict(victim);
+            } else {
+                evict(candidate);
+            }
+        }
+    }
+
+    private void evict(final Node<T> node) {
+        if (data.remove(node.key, node)) {
+            evictions.incrementAndGet();
+        }
+
+        retire(node);
+    }
+
+    private void retire(final Node<T> node) {
+        switch (node.queue) {
+            case WINDOW:
+                window.remove(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            case PROTECTED:
+                protectedSegment.remove(node);
+                break;
+            default:
+                break;
+        }
+
+        node.queue = -1;
+    }
+
+    private static final class Node<T> {
+        private final T key;
+        private final MetricId value;
+
+        /* guarded by evictionLock */
+        private Node<T> prev;
+        private Node<T> next;
+        // 0 until added to the policy, -1 once retired.
+        private int queue;
+
+        private Node(final T key, final MetricId value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A doubly-linked list of nodes, ordered from least to most recently used.
+     */
+    private static final class AccessOrder<T> {
+        private Node<T> head;
+        private Node<T> tail;
+        private long size;
+
+        Node<T> first() {
+            return head;
+        }
+
+        Node<T> last() {
+            return tail;
+        }
+
+        void addLast(final Node<T> node) {
+            node.prev = tail;
+            node.next = null;
+
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+
+            tail = node;
+            size++;
+        }
+
+        Node<T> removeFirst() {
+            final Node<T> node = head;
+            remove(node);
+            return node;
+        }
+
+        void moveToLast(final Node<T> node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void remove(final Node<T> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+    }
+
+    /**
+     * A count-min sketch of 4-bit counters, which estimates how often keys were accessed.
+     * <p>
+     * All counters are halved once the number of recorded accesses reaches a sample size
+     * proportional to the size of the cache, so that the sketch favours recent history.
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int tableMask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(final long maximumSize) {
+            final int size = (int) Math.min(maximumSize, 1 << 30);
+            final int length = Math.max(8, Integer.highestOneBit(size - 1) << 1);
+
+            this.table = new long[length];
+            this.tableMask = length - 1;
+            this.sampleSize = (int) Math.min(10L * size, Integer.MAX_VALUE);
+        }
+
+        int frequency(final Object key) {
+            final int hash = spread(key.hashCode());
+
+            int frequency = Integer.MAX_VALUE;
+
+            for (int i = 0; i < 4; i++) {
+                final int index = indexOf(hash, i);
+                final int offset = counterOffset(hash, i);
+                final int count = (int) ((table[index] >>> offset) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+
+            return frequency;
+        }
+
+        void increment(final Object key) {
+            final int hash = spread(key.hashCode());
+
+            boolean added = false;
+
+            for (int i = 0; i < 4; i++) {
+                final int index = indexOf(hash, i);
+                final int offset = counterOffset(hash, i);
+
+                if (((table[index] >>> offset) & 0xfL) != 0xfL) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+
+            if (added && ++additions == sampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+
+            additions /= 2;
+        }
+
+        private int indexOf(final int hash, final int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & tableMask;
+        }
+
+        private static int counterOffset(final int hash, final int i) {
+            // each long holds 16 counters, every hash function uses its own group of 4.
+            return (((hash >>> (i * 8)) & 3) + (i << 2)) << 2;
+        }
+
+        private static int spread(int h) {
+            h ^= h >>> 17;
+            h *= 0xed5ad4bb;
+            h ^= h >>> 11;
+            h *= 0xac4c1b51;
+            h ^= h >>> 15;
+            return h;
+        }
+    }
+}
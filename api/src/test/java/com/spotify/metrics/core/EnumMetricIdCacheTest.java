@@ -0,0 +1,46 @@
+package com.spotify.metrics.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class EnumMetricIdCacheTest {
+    private enum Result {
+        HIT, MISS, ERROR
+    }
+
+    private final MetricId base = MetricId.build("cache");
+
+    @Test
+    public void testPrecomputesAllIds() {
+        final AtomicInteger loads = new AtomicInteger();
+
+        final EnumMetricIdCache<Result> cache = EnumMetricIdCache.of(Result.class, base,
+            (id, result) -> {
+                loads.incrementAndGet();
+                return id.tagged("result", result.name().toLowerCase());
+            });
+
+        assertEquals(3, loads.get());
+        assertEquals(base.tagged("result", "hit"), cache.get(Result.HIT));
+        assertSame(cache.get(Result.MISS), cache.get(Result.MISS));
+        assertEquals(3, loads.get());
+        assertEquals(3, cache.getIds().size());
+    }
+
+    @Test
+    public void testTagged() {
+        final EnumMetricIdCache<Result> cache =
+            EnumMetricIdCache.tagged(Result.class, base, "result");
+
+        assertEquals(base.tagged("result", "ERROR"), cache.get(Result.ERROR));
+        assertEquals(Result.class, cache.getType());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNullLoadedValue() {
+        EnumMetricIdCache.of(Result.class, (id, result) -> null);
+    }
+}
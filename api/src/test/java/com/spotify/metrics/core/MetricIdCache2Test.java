@@ -0,0 +1,95 @@
+package com.spotify.metrics.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class MetricIdCache2Test {
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final MetricIdCache2<String, Integer> cache =
+        MetricIdCache2.unbounded(MetricId.build("foo"), (id, endpoint, status) -> {
+            loads.incrementAndGet();
+            return id.tagged("endpoint", endpoint, "status", Integer.toString(status));
+        });
+
+    @Test
+    public void testGet() {
+        final MetricId id = cache.get("/a", 200);
+
+        assertEquals(MetricId.build("foo").tagged("endpoint", "/a", "status", "200"), id);
+        assertSame(id, cache.get("/a", 200));
+        assertEquals(1, loads.get());
+
+        assertEquals(MetricId.build("foo").tagged("endpoint", "/a", "status", "500"),
+            cache.get("/a", 500));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testInvalidate() {
+        final MetricId id = cache.get("/a", 200);
+        cache.get("/b", 200);
+
+        cache.invalidate("/a", 200);
+        assertNotSame(id, cache.get("/a", 200));
+        assertEquals(3, loads.get());
+
+        cache.invalidate("/b");
+        cache.get("/b", 200);
+        assertEquals(4, loads.get());
+
+        cache.invalidateAll();
+        cache.get("/a", 200);
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    public void testInvalidateRemovesEmptyNestedMaps() {
+        cache.get("/a", 200);
+        cache.get("/a", 500);
+        cache.get("/b", 200);
+
+        cache.invalidate("/a", 200);
+        assertEquals(2, cache.nestedMaps());
+
+        cache.invalidate("/a", 500);
+        assertEquals(1, cache.nestedMaps());
+
+        // ids loaded after their nested map was removed are not lost.
+        final MetricId id = cache.get("/a", 200);
+        assertSame(id, cache.get("/a", 200));
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void testBounded() {
+        final MetricIdCache2<String, Integer> bounded =
+            MetricIdCache2.bounded(MetricId.build("foo"), 10, (id, endpoint, status) -> {
+                loads.incrementAndGet();
+                return id.tagged("endpoint", endpoint, "status", Integer.toString(status));
+            });
+
+        final MetricId id = bounded.get("/a", 200);
+        assertSame(id, bounded.get("/a", 200));
+        assertEquals(1, loads.get());
+
+        for (int i = 0; i < 100; i++) {
+            bounded.get("/b", i);
+        }
+
+        assertEquals(101, loads.get());
+
+        bounded.invalidate("/b");
+        bounded.get("/b", 0);
+        assertEquals(102, loads.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNullLoadedValue() {
+        MetricIdCache2.<String, String>unbounded((id, a, b) -> null).get("a", "b");
+    }
+}
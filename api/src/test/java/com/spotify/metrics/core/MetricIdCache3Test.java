@@ -0,0 +1,67 @@
+package com.spotify.metrics.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class MetricIdCache3Test {
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final MetricIdCache3<String, String, Integer> cache =
+        MetricIdCache3.unbounded((id, method, endpoint, status) -> {
+            loads.incrementAndGet();
+            return id.tagged("method", method, "endpoint", endpoint, "status",
+                Integer.toString(status));
+        });
+
+    @Test
+    public void testGet() {
+        final MetricId id = cache.get("GET", "/a", 200);
+
+        assertEquals(
+            MetricId.EMPTY.tagged("method", "GET", "endpoint", "/a", "status", "200"), id);
+        assertSame(id, cache.get("GET", "/a", 200));
+        assertEquals(1, loads.get());
+
+        cache.get("GET", "/a", 500);
+        cache.get("GET", "/b", 200);
+        cache.get("PUT", "/a", 200);
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void testInvalidate() {
+        final MetricId id = cache.get("GET", "/a", 200);
+
+        cache.invalidate("GET", "/a", 200);
+        assertNotSame(id, cache.get("GET", "/a", 200));
+
+        cache.invalidate("GET");
+        cache.get("GET", "/a", 200);
+
+        cache.invalidateAll();
+        cache.get("GET", "/a", 200);
+
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void testBounded() {
+        final MetricIdCache3<String, String, Integer> bounded =
+            MetricIdCache3.bounded(2, (id, method, endpoint, status) -> {
+                loads.incrementAndGet();
+                return id.tagged("method", method, "endpoint", endpoint, "status",
+                    Integer.toString(status));
+            });
+
+        final MetricId id = bounded.get("GET", "/a", 200);
+        assertSame(id, bounded.get("GET", "/a", 200));
+
+        bounded.invalidate("GET", "/a", 200);
+        assertNotSame(id, bounded.get("GET", "/a", 200));
+        assertEquals(2, loads.get());
+    }
+}
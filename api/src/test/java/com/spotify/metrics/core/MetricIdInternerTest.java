@@ -0,0 +1,81 @@
+package com.spotify.metrics.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class MetricIdInternerTest {
+    private final MetricIdInterner interner = MetricIdInterner.create(1024);
+
+    @Test
+    public void testInternReturnsCanonicalInstance() {
+        final MetricId a = MetricId.build("foo").tagged("what", "requests", "endpoint", "/a");
+        final MetricId b = MetricId.build("foo").tagged("what", "requests", "endpoint", "/a");
+
+        assertNotSame(a, b);
+
+        final MetricId first = interner.intern(a);
+        final MetricId second = interner.intern(b);
+
+        assertEquals(a, first);
+        assertSame(first, second);
+        assertEquals(1, interner.hits());
+        assertEquals(1, interner.misses());
+        assertEquals(1, interner.size());
+    }
+
+    @Test
+    public void testInternSharesStrings() {
+        final MetricId a = MetricId.build("foo").tagged("what", new String("requests"));
+        final MetricId b = MetricId.build("bar").tagged("what", new String("requests"));
+
+        final MetricId ia = interner.intern(a);
+        final MetricId ib = interner.intern(b);
+
+        assertSame(ia.getTags().get("what"), ib.getTags().get("what"));
+    }
+
+    @Test
+    public void testInternString() {
+        final String a = new String("value");
+        final String b = new String("value");
+
+        assertSame(a, interner.intern(a));
+        assertSame(a, interner.intern(b));
+        assertNull(interner.intern((String) null));
+        assertEquals(1, interner.stringsSize());
+    }
+
+    @Test
+    public void testCapacity() {
+        assertEquals(1, MetricIdInterner.create(1).capacity());
+        assertEquals(16, MetricIdInterner.create(9).capacity());
+        assertEquals(16, MetricIdInterner.create(16).capacity());
+    }
+
+    @Test
+    public void testBounded() {
+        final MetricIdInterner small = MetricIdInterner.create(4);
+
+        for (int i = 0; i < 100; i++) {
+            small.intern(MetricId.build("foo").tagged("i", Integer.toString(i)));
+        }
+
+        assertEquals(4, small.capacity());
+        assertEquals(true, small.size() <= 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        MetricIdInterner.create(0);
+    }
+
+    @Test
+    public void testGlobal() {
+        final MetricId id = MetricId.build("global").tagged("k", "v");
+        assertSame(id.intern(), MetricId.build("global").tagged("k", "v").intern());
+    }
+}
@@ -0,0 +1,95 @@
+package com.spotify.metrics.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class MetricIdTemplateTest {
+    private final MetricId base = MetricId.build("foo").tagged("what", "requests");
+    private final MetricIdTemplate template =
+        MetricIdTemplate.of(base, "status", "method", "endpoint");
+
+    @Test
+    public void testBuild() {
+        assertEquals(base.tagged("status", "200", "method", "GET", "endpoint", "/a"),
+            template.build("200", "GET", "/a"));
+        assertEquals(Arrays.asList("status", "method", "endpoint"), template.getTagNames());
+    }
+
+    @Test
+    public void testIdIsCached() {
+        final MetricId id = template.id("200", "GET", "/a");
+
+        assertEquals(template.build("200", "GET", "/a"), id);
+        assertSame(id, template.id("200", "GET", "/a"));
+        assertSame(id, template.id(new String[]{"200", "GET", "/a"}));
+    }
+
+    @Test
+    public void testOverridesBaseTags() {
+        final MetricIdTemplate t = MetricIdTemplate.of(base, "what");
+        assertEquals(base.tagged("what", "errors"), t.id("errors"));
+    }
+
+    @Test
+    public void testNullValues() {
+        final MetricIdTemplate t = MetricIdTemplate.of(base, "a", "b");
+        assertEquals(base.tagged("a", null, "b", "x"), t.id(null, "x"));
+        assertSame(t.id(null, "x"), t.id(null, "x"));
+    }
+
+    @Test
+    public void testLookup() {
+        final AtomicInteger loads = new AtomicInteger();
+        final MetricIdTemplate t = MetricIdTemplate.of(base, "a");
+
+        final MetricIdTemplate.Lookup<String> lookup = t.lookup(id -> {
+            loads.incrementAndGet();
+            return id.getTags().get("a");
+        });
+
+        assertEquals("x", lookup.get("x"));
+        assertEquals("x", lookup.get("x"));
+        assertEquals("y", lookup.get("y"));
+        assertEquals(2, loads.get());
+
+        lookup.invalidateAll();
+
+        assertEquals("x", lookup.get("x"));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testManyTags() {
+        final MetricIdTemplate t = MetricIdTemplate.of(base, "e", "d", "c", "b", "a");
+        final MetricId id = t.id("5", "4", "3", "2", "1");
+
+        assertEquals(base.tagged("a", "1", "b", "2", "c", "3").tagged("d", "4", "e", "5"), id);
+        assertSame(id, t.id("5", "4", "3", "2", "1"));
+        assertNotSame(id, t.id("5", "4", "3", "2", "0"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongArity() {
+        template.id("200", "GET");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateTagName() {
+        MetricIdTemplate.of(base, "a", "b", "a");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoTagNames() {
+        MetricIdTemplate.of(base);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNullLoadedValue() {
+        MetricIdTemplate.of(base, "a").lookup(id -> null).get("x");
+    }
+}
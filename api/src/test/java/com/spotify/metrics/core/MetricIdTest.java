@@ -1,10 +1,16 @@
 package com.spotify.metrics.core;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.SortedMap;
@@ -119,26 +125,153 @@ public class MetricIdTest {
 
     @Test
     public void testEqualsAndHashCode() {
-        // a map which always returns the same hashCode, but is equal to nothing.
-        final SortedMap<String, String> tags = new TreeMap<String, String>() {
-            public boolean equals(Object o) {
-                return false;
-            }
+        // "Aa" and "BB" have the same hashCode, so the tags below collide.
+        final SortedMap<String, String> tagsA = new TreeMap<String, String>();
+        tagsA.put("k", "Aa");
+        final SortedMap<String, String> tagsB = new TreeMap<String, String>();
+        tagsB.put("k", "BB");
 
-            ;
+        final MetricId a = new MetricId(key, tagsA);
+        final MetricId b = new MetricId(key, tagsB);
 
-            public int hashCode() {
-                return 42;
-            }
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, b);
+        assertTrue(a.compareTo(b) != 0);
+    }
 
-            ;
-        };
+    @Test
+    public void testTagsAreSorted() {
+        final MetricId id = MetricId.EMPTY.tagged("c", "3", "a", "1").tagged("b", "2");
+        final SortedMap<String, String> tags = (SortedMap<String, String>) id.getTags();
+
+        assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<>(tags.keySet()));
+        assertEquals("a", tags.firstKey());
+        assertEquals("c", tags.lastKey());
+        assertEquals(ImmutableMap.of("b", "2"), tags.subMap("b", "c"));
+        assertEquals(ImmutableMap.of("a", "1"), tags.headMap("b"));
+        assertEquals(ImmutableMap.of("b", "2", "c", "3"), tags.tailMap("b"));
+        assertEquals("{a=1, b=2, c=3}", tags.toString());
+    }
+
+    @Test
+    public void testTaggedOverrides() {
+        final MetricId base = MetricId.EMPTY.tagged("a", "1", "b", "2");
+
+        assertEquals(ImmutableMap.of("a", "1", "b", "3"), base.tagged("b", "3").getTags());
+        assertEquals(ImmutableMap.of("a", "4", "b", "2", "c", "5"),
+            base.tagged("c", "5", "a", "4").getTags());
+        assertEquals(ImmutableMap.of("a", "1", "b", "2"), base.tagged("a", "1").getTags());
+        // later pairs win over earlier ones.
+        assertEquals(ImmutableMap.of("a", "2"),
+            MetricId.EMPTY.tagged("a", "1", "a", "2").getTags());
+    }
+
+    @Test
+    public void testTaggedDoesNotModifyArguments() {
+        final String[] pairs = new String[]{"b", "2", "a", "1"};
+        MetricId.EMPTY.tagged(pairs);
+        assertArrayEquals(new String[]{"b", "2", "a", "1"}, pairs);
+    }
+
+    @Test
+    public void testEqualsAcrossConstruction() {
+        final Map<String, String> refTags = new HashMap<String, String>();
+        refTags.put("b", "2");
+        refTags.put("a", "1");
 
-        final MetricId a = new MetricId(key, tags);
-        final MetricId b = new MetricId(key, tags);
+        final MetricId a = new MetricId("foo", refTags);
+        final MetricId b = MetricId.build("foo").tagged("a", "1").tagged("b", "2");
+        final MetricId c = MetricId.join(MetricId.build("foo").tagged("b", "2"),
+            MetricId.EMPTY.tagged("a", "1"));
 
+        assertEquals(a, b);
+        assertEquals(a, c);
         assertEquals(a.hashCode(), b.hashCode());
-        assertNotEquals(a, b);
+        assertEquals(0, a.compareTo(c));
+        assertEquals(new TreeMap<>(refTags).hashCode(), a.getTags().hashCode());
+    }
+
+    @Test
+    public void testTagLookup() {
+        final MetricId id = MetricId.EMPTY.tagged("a", "1", "b", null);
+
+        assertEquals("1", id.getTags().get("a"));
+        assertNull(id.getTags().get("b"));
+        assertTrue(id.getTags().containsKey("b"));
+        assertFalse(id.getTags().containsKey("c"));
+        assertNull(id.getTags().get(42));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullTagKey() {
+        MetricId.EMPTY.tagged(null, "v");
+    }
+
+    @Test
+    public void testBuilder() {
+        final MetricId.Builder builder = MetricId.builder();
+
+        assertEquals(MetricId.EMPTY, builder.build());
+        assertEquals(MetricId.build("foo.bar").tagged("a", "1", "b", "2"),
+            builder.resolve("foo").resolve("bar").tagged("b", "2").tagged("a", "1").build());
+        assertEquals(MetricId.build("foo").tagged("a", "3"),
+            builder.reset().resolve("foo").tagged("a", "1").tagged("a", "3").build());
+    }
+
+    @Test
+    public void testBuilderFrom() {
+        final MetricId base = MetricId.build("foo").tagged("what", "requests");
+        final MetricId.Builder builder = MetricId.builder();
+
+        assertSame(base, builder.from(base).build());
+        assertSame(base, builder.from(base).tagged("what", "requests").resolve(null).build());
+        assertEquals(base.resolve("bar").tagged("endpoint", "/a"),
+            builder.from(base).resolve("bar").tagged("endpoint", "/a").build());
+        assertEquals(MetricId.EMPTY.tagged("a", "b").resolve("x"),
+            builder.from(MetricId.EMPTY.tagged("a", "b")).resolve("x").build());
+        assertEquals(new MetricId("").resolve("x"),
+            builder.from(new MetricId("")).resolve("x").build());
+    }
+
+    @Test
+    public void testBuilderGrows() {
+        final MetricId.Builder builder = MetricId.builder();
+        MetricId expected = MetricId.EMPTY;
+
+        for (int i = 0; i < 20; i++) {
+            builder.resolve("p" + i).tagged("k" + i, "v" + i);
+            expected = expected.resolve("p" + i).tagged("k" + i, "v" + i);
+        }
+
+        assertEquals(expected, builder.build());
+    }
+
+    @Test
+    public void testBuilderLookupKey() {
+        final MetricId.Builder builder = MetricId.builder();
+        final Map<MetricId, String> map = new HashMap<>();
+
+        final MetricId[] ids = new MetricId[]{
+            MetricId.EMPTY,
+            new MetricId(""),
+            MetricId.build("foo"),
+            MetricId.build("foo.bar").tagged("a", "1"),
+            MetricId.build("foo").tagged("a", "1", "b", null),
+        };
+
+        for (final MetricId id : ids) {
+            map.put(id, id.toString());
+        }
+
+        assertEquals(ids[0].toString(), map.get(builder.reset().lookupKey()));
+        assertEquals(ids[1].toString(), map.get(builder.from(ids[1]).lookupKey()));
+        assertEquals(ids[2].toString(), map.get(builder.reset().resolve("foo").lookupKey()));
+        assertEquals(ids[3].toString(),
+            map.get(builder.from(ids[2]).resolve("bar").tagged("a", "1").lookupKey()));
+        assertEquals(ids[4].toString(),
+            map.get(builder.reset().resolve("foo").tagged("b", null).tagged("a", "1").lookupKey()));
+        assertNull(map.get(builder.reset().resolve("foo").tagged("a", "2").lookupKey()));
+        assertNull(map.get(builder.reset().resolve("fo").resolve("o").lookupKey()));
     }
 
     @Test(expected = UnsupportedOperationException.class)
@@ -172,4 +305,30 @@ public class MetricIdTest {
         other.put("k", "v");
         MetricId.EMPTY.tagged(other).getTags().put("x", "y");
     }
+
+    @Test
+    public void testFingerprint() {
+        final MetricId id = MetricId.build("foo").tagged("a", "1", "b", "2");
+
+        assertEquals(id.fingerprint(), new MetricId("foo", ImmutableMap.of("b", "2", "a", "1"))
+            .fingerprint());
+        assertEquals(id.fingerprint(), id.fingerprint());
+
+        assertNotEquals(id.fingerprint(), id.tagged("a", "2").fingerprint());
+        assertNotEquals(id.fingerprint(), id.tagged("c", "3").fingerprint());
+        assertNotEquals(id.fingerprint(), id.resolve("bar").fingerprint());
+        assertNotEquals(id.tagged("a", null).fingerprint(), id.tagged("a", "").fingerprint());
+        assertNotEquals(MetricId.build("ab").tagged("c", "d").fingerprint(),
+            MetricId.build("a").tagged("bc", "d").fingerprint());
+        assertNotEquals(MetricId.EMPTY.fingerprint(), MetricId.build("").fingerprint());
+    }
+
+    @Test
+    public void testFingerprintIsStable() {
+        // fingerprints identify series across processes, so they must never change.
+        assertEquals(8986273536555274931L, MetricId.EMPTY.fingerprint());
+        assertEquals(8669769111115255859L,
+            MetricId.build("foo.bar").tagged("what", "requests", "unit", "request")
+                .fingerprint());
+    }
 }
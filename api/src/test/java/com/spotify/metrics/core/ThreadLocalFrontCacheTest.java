@@ -0,0 +1,101 @@
+package com.spotify.metrics.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class ThreadLocalFrontCacheTest {
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final MetricIdCache.Loader<String> loader = (id, key) -> {
+        loads.incrementAndGet();
+        return id.tagged("key", key);
+    };
+
+    private final ThreadLocalFrontCache<String> cache =
+        new ThreadLocalFrontCache<>(counting(new TinyLfuCache<>(100, loader)), 16);
+
+    @Test
+    public void testGet() throws Exception {
+        final MetricId id = cache.get(MetricId.EMPTY, "a");
+
+        assertEquals(MetricId.EMPTY.tagged("key", "a"), id);
+        assertSame(id, cache.get(MetricId.EMPTY, "a"));
+        assertSame(id, cache.get(MetricId.EMPTY, "a"));
+
+        assertEquals(1, lookups.get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        final MetricId a = cache.get(MetricId.EMPTY, "a");
+        final MetricId b = cache.get(MetricId.EMPTY, "b");
+
+        cache.invalidate("a");
+
+        assertNotSame(a, cache.get(MetricId.EMPTY, "a"));
+        assertSame(b, cache.get(MetricId.EMPTY, "b"));
+        assertEquals(3, loads.get());
+
+        cache.invalidateAll();
+        cache.get(MetricId.EMPTY, "a");
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void testPerThread() throws Exception {
+        final MetricId id = cache.get(MetricId.EMPTY, "a");
+
+        final Thread thread = new Thread(() -> {
+            try {
+                assertSame(id, cache.get(MetricId.EMPTY, "a"));
+            } catch (final Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        thread.start();
+        thread.join();
+
+        // the other thread had to consult the shared cache.
+        assertEquals(2, lookups.get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testBuilder() {
+        final MetricIdCache<String> cache =
+            MetricIdCache.builder().unbounded(loader).frontCache(8).build();
+
+        final MetricId id = cache.get("a");
+        assertSame(id, cache.get("a"));
+        assertEquals(1, loads.get());
+    }
+
+    private MetricIdCache.Cache<String> counting(final MetricIdCache.Cache<String> delegate) {
+        return new MetricIdCache.Cache<String>() {
+            @Override
+            public MetricId get(final MetricId metricId, final String key)
+                throws ExecutionException {
+                lookups.incrementAndGet();
+                return delegate.get(metricId, key);
+            }
+
+            @Override
+            public void invalidate(final String key) {
+                delegate.invalidate(key);
+            }
+
+            @Override
+            public void invalidateAll() {
+                delegate.invalidateAll();
+            }
+        };
+    }
+}
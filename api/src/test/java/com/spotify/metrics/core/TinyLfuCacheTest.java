@@ -0,0 +1,154 @@
+package com.spotify.metrics.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class TinyLfuCacheTest {
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final MetricIdCache.Loader<Integer> loader = (id, key) -> {
+        loads.incrementAndGet();
+        return id.tagged("key", Integer.toString(key));
+    };
+
+    @Test
+    public void testGet() throws Exception {
+        final TinyLfuCache<Integer> cache = new TinyLfuCache<>(10, loader);
+
+        final MetricId id = cache.get(MetricId.EMPTY, 1);
+
+        assertEquals(MetricId.EMPTY.tagged("key", "1"), id);
+        assertSame(id, cache.get(MetricId.EMPTY, 1));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        final TinyLfuCache<Integer> cache = new TinyLfuCache<>(100, loader);
+
+        for (int i = 0; i < 10000; i++) {
+            cache.get(MetricId.EMPTY, i);
+            assertTrue(cache.size() <= 100);
+        }
+
+        assertEquals(10000 - cache.size(), cache.evictions());
+    }
+
+    @Test
+    public void testRetainsFrequentKeysDuringScan() throws Exception {
+        final TinyLfuCache<Integer> cache = new TinyLfuCache<>(100, loader);
+
+        for (int round = 0; round < 10; round++) {
+            for (int hot = 0; hot < 50; hot++) {
+                cache.get(MetricId.EMPTY, hot);
+            }
+
+            cache.cleanUp();
+        }
+
+        loads.set(0);
+
+        // a scan of one-off keys should not push out the frequently used ones.
+        for (int i = 0; i < 10000; i++) {
+            cache.get(MetricId.EMPTY, 1000 + i);
+
+            if (i % 100 == 0) {
+                for (int hot = 0; hot < 50; hot++) {
+                    cache.get(MetricId.EMPTY, hot);
+                }
+            }
+        }
+
+        assertEquals(10000, loads.get());
+    }
+
+    @Test
+    public void testReplaysReadsOfAllThreads() throws Exception {
+        final TinyLfuCache<Integer> cache = new TinyLfuCache<>(100, loader);
+
+        for (int hot = 0; hot < 50; hot++) {
+            cache.get(MetricId.EMPTY, hot);
+        }
+
+        // each thread reads every hot key a few times, through the stripe of its own thread.
+        for (int round = 0; round < 10; round++) {
+            final Thread[] threads = new Thread[4];
+
+            for (int t = 0; t < threads.length; t++) {
+                final int first = t * 50 / threads.length;
+                final int last = (t + 1) * 50 / threads.length;
+
+                threads[t] = new Thread(() -> {
+                    for (int hot = first; hot < last; hot++) {
+                        cache.get(MetricId.EMPTY, hot);
+                    }
+                });
+                threads[t].start();
+            }
+
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+
+            cache.cleanUp();
+        }
+
+        loads.set(0);
+
+        for (int i = 0; i < 10000; i++) {
+            cache.get(MetricId.EMPTY, 1000 + i);
+
+            if (i % 100 == 0) {
+                for (int hot = 0; hot < 50; hot++) {
+                    cache.get(MetricId.EMPTY, hot);
+                }
+            }
+        }
+
+        assertEquals(10000, loads.get());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        final TinyLfuCache<Integer> cache = new TinyLfuCache<>(10, loader);
+
+        cache.get(MetricId.EMPTY, 1);
+        cache.get(MetricId.EMPTY, 2);
+        cache.invalidate(1);
+        assertEquals(1, cache.size());
+
+        cache.get(MetricId.EMPTY, 1);
+        assertEquals(3, loads.get());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+
+        for (int i = 0; i < 100; i++) {
+            cache.get(MetricId.EMPTY, i);
+        }
+
+        assertEquals(10, cache.size());
+    }
+
+    @Test
+    public void testBuilder() {
+        final MetricIdCache<Integer> cache =
+            MetricIdCache.builder().metricId(MetricId.build("foo")).bounded(10, loader).build();
+
+        assertEquals(MetricId.build("foo").tagged("key", "1"), cache.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveSize() {
+        MetricIdCache.builder().bounded(0, loader);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNullLoadedValue() throws Exception {
+        new TinyLfuCache<Integer>(10, (id, key) -> null).get(MetricId.EMPTY, 1);
+    }
+}
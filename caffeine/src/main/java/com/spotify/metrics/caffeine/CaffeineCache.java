@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.caffeine;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.spotify.metrics.core.MetricId;
+import com.spotify.metrics.core.MetricIdCache;
+
+/**
+ * A {@link MetricIdCache.Cache} backed by a Caffeine cache.
+ * <p>
+ * Existing entries are looked up without allocating a loading function, which is only created
+ * when the key is missing.
+ */
+public final class CaffeineCache<T> implements MetricIdCache.Cache<T> {
+    private final MetricIdCache.Loader<T> loader;
+    private final Cache<T, MetricId> cache;
+
+    public CaffeineCache(MetricIdCache.Loader<T> loader, Cache<T, MetricId> cache) {
+        this.loader = loader;
+        this.cache = cache;
+    }
+
+    @Override
+    public MetricId get(final MetricId base, final T key) {
+        final MetricId candidate = cache.getIfPresent(key);
+
+        if (candidate != null) {
+            return candidate;
+        }
+
+        final MetricId value = cache.get(key, k -> loader.load(base, k));
+
+        if (value == null) {
+            throw new IllegalStateException("loader returned null value");
+        }
+
+        return value;
+    }
+
+    @Override
+    public void invalidate(T key) {
+        cache.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    public static MetricIdCache.Any setup(final Setup setup) {
+        return MetricIdCache.builder().cacheBuilder(cacheBuilder(setup));
+    }
+
+    /**
+     * Build a cache builder which can be used to wrap the Caffeine caches, for example to
+     * instrument them.
+     */
+    public static MetricIdCache.CacheBuilder cacheBuilder(final Setup setup) {
+        return new MetricIdCache.CacheBuilder() {
+            @Override
+            public <T> MetricIdCache.Cache<T> build(final MetricIdCache.Loader<T> loader) {
+                final Cache<T, MetricId> cache =
+                    setup.setup(Caffeine.newBuilder()).<T, MetricId>build();
+                return new CaffeineCache<T>(loader, cache);
+            }
+        };
+    }
+
+    public static interface Setup {
+        public <K, V> Caffeine<K, V> setup(Caffeine<K, V> builder);
+    }
+}
@@ -0,0 +1,68 @@
+package com.spotify.metrics.caffeine;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.spotify.metrics.core.MetricId;
+import com.spotify.metrics.core.MetricIdCache;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CaffeineCacheTest {
+    private final MetricIdCache.Any builder = CaffeineCache.setup(new CaffeineCache.Setup() {
+        @Override
+        public <K, V> Caffeine<K, V> setup(Caffeine<K, V> builder) {
+            return builder.maximumSize(1000);
+        }
+    });
+
+    private final MetricIdCache.Typed<String> addEndpoint =
+        builder.loader(new MetricIdCache.Loader<String>() {
+            @Override
+            public MetricId load(MetricId id, String endpoint) {
+                callCount.incrementAndGet();
+                return id.tagged("endpoint", endpoint);
+            }
+        });
+
+    private AtomicInteger callCount;
+    private MetricIdCache<String> endpointCache;
+
+    @Before
+    public void setup() {
+        callCount = new AtomicInteger();
+        endpointCache = addEndpoint.build();
+    }
+
+    @Test
+    public void testSomeCached() {
+        Assert.assertEquals(MetricId.EMPTY.tagged("endpoint", "foo"), endpointCache.get("foo"));
+        Assert.assertEquals(MetricId.EMPTY.tagged("endpoint", "foo"), endpointCache.get("foo"));
+        Assert.assertEquals(1, callCount.get());
+
+        Assert.assertEquals(MetricId.EMPTY.tagged("endpoint", "bar"), endpointCache.get("bar"));
+        Assert.assertEquals(2, callCount.get());
+    }
+
+    @Test
+    public void testInvalidate() {
+        endpointCache.get("foo");
+        endpointCache.invalidate("foo");
+        endpointCache.get("foo");
+        Assert.assertEquals(2, callCount.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNullLoadedValue() {
+        CaffeineCache.setup(new CaffeineCache.Setup() {
+            @Override
+            public <K, V> Caffeine<K, V> setup(Caffeine<K, V> builder) {
+                return builder;
+            }
+        })
+            .loader((id, key) -> null)
+            .build()
+            .get("foo");
+    }
+}
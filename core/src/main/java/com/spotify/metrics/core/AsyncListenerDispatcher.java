@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Delivers the listener events of a registry on a background thread.
+ * <p>
+ * While started, the registry enqueues its listener events instead of calling its listeners on
+ * the registering thread. A single thread delivers the events in the order they were enqueued,
+ * so listeners observe the same sequence of additions and removals as they would otherwise.
+ * <p>
+ * The queue is bounded by {@link Builder#queueSize(int)}. What happens to events which do not
+ * fit is decided by the {@link OverflowPolicy}. The dispatcher is a {@link SemanticMetricSet} of
+ * its queue depth, dispatch lag and discarded events, which can be registered like any other
+ * metric set.
+ * <p>
+ * A listener added while events are queued is first notified of all existing metrics, so it
+ * might receive a queued event for a metric it has already been told about.
+ */
+public class AsyncListenerDispatcher implements SemanticMetricSet, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(AsyncListenerDispatcher.class);
+
+    /**
+     * How long the dispatch thread waits for new events before checking if it was stopped.
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * How long a thread waits for room in a full queue before checking again.
+     */
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable);
+
+            thread.setName(String.format("listener-dispatcher-%d", count.getAndIncrement()));
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    };
+
+    /**
+     * What to do with an event when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Drop the event and count it as discarded. Listeners never learn about the change.
+         */
+        DISCARD,
+
+        /**
+         * Block the registering thread until there is room in the queue.
+         * <p>
+         * Events raised by listeners on the dispatch thread are always queued, since the
+         * dispatch thread would otherwise wait for itself.
+         */
+        BLOCK
+    }
+
+    private final SemanticMetricRegistry registry;
+    private final int queueSize;
+    private final OverflowPolicy overflowPolicy;
+    private final Clock clock;
+    private final MetricId metricId;
+
+    private final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Timer lag = new Timer();
+    private final Counter discarded = new Counter();
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    /**
+     * Held for reading while enqueueing, and for writing while stopping, so that no event is
+     * enqueued after the final drain of the queue.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean idle;
+    private volatile Thread thread;
+
+    private AsyncListenerDispatcher(
+        final SemanticMetricRegistry registry, final int queueSize,
+        final OverflowPolicy overflowPolicy, final Clock clock, final MetricId metricId
+    ) {
+        this.registry = registry;
+        this.queueSize = queueSize;
+        this.overflowPolicy = overflowPolicy;
+        this.clock = clock;
+        this.metricId = metricId;
+    }
+
+    public static Builder forRegistry(SemanticMetricRegistry registry) {
+        return new Builder(registry);
+    }
+
+    public static final class Builder {
+        private final SemanticMetricRegistry registry;
+        private int queueSize = 10000;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        private Clock clock = Clock.defaultClock();
+        private MetricId metricId = MetricId.build();
+
+        public Builder(SemanticMetricRegistry registry) {
+            this.registry = registry;
+        }
+
+        /**
+         * Set the maximum number of events waiting to be delivered.
+         */
+        public Builder queueSize(int queueSize) {
+            if (queueSize <= 0) {
+                throw new IllegalArgumentException("'queueSize' must be positive");
+            }
+
+            this.queueSize = queueSize;
+            return this;
+        }
+
+        /**
+         * Set what happens to events when the queue is full.
+         */
+        public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+            if (overflowPolicy == null) {
+                throw new IllegalArgumentException("'overflowPolicy' must not be null");
+            }
+
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Set the name which the names of the metrics of the dispatcher are based on.
+         */
+        public Builder metricId(MetricId metricId) {
+            this.metricId = metricId;
+            return this;
+        }
+
+        public AsyncListenerDispatcher build() {
+            return new AsyncListenerDispatcher(
+                registry, queueSize, overflowPolicy, clock, metricId);
+        }
+    }
+
+    /**
+     * Get the number of events waiting to be delivered.
+     */
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    /**
+     * Get the timer of how long events waited in the queue before they were delivered.
+     */
+    public Timer getLag() {
+        return lag;
+    }
+
+    /**
+     * Get the counter of events which were dropped because the queue was full.
+     */
+    public Counter getDiscarded() {
+        return discarded;
+    }
+
+    @Override
+    public Map<MetricId, Metric> getMetrics() {
+        final Map<MetricId, Metric> metrics = new HashMap<>();
+        metrics.put(metricId.tagged("what", "listener-queue-depth", "unit", "event"),
+            (Gauge<Integer>) this::getQueueDepth);
+        metrics.put(metricId.tagged("what", "listener-dispatch-lag", "unit", "ns"), lag);
+        metrics.put(metricId.tagged("what", "listener-events-discarded", "unit", "event"),
+            discarded);
+        return metrics;
+    }
+
+    /**
+     * Enqueue an event to be delivered on the dispatch thread.
+     *
+     * @return {@code false} if the caller must deliver the event itself
+     */
+    boolean enqueue(final Runnable event) {
+        if (Thread.currentThread() == thread) {
+            // the dispatch thread polls the queue until it is empty before it exits, and taking
+            // the lock here would deadlock with stop() waiting for it.
+            depth.incrementAndGet();
+            queue.offer(new Event(event, clock.getTick()));
+            return true;
+        }
+
+        lock.readLock().lock();
+
+        try {
+            if (!running.get()) {
+                return false;
+            }
+
+            while (depth.incrementAndGet() > queueSize) {
+                depth.decrementAndGet();
+
+                if (overflowPolicy == OverflowPolicy.DISCARD) {
+                    discarded.inc();
+                    return true;
+                }
+
+                LockSupport.unpark(thread);
+                LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+            }
+
+            queue.offer(new Event(event, clock.getTick()));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (idle) {
+            LockSupport.unpark(thread);
+        }
+
+        return true;
+    }
+
+    /**
+     * Start delivering the listener events of the registry on a background thread.
+     *
+     * @throws IllegalStateException if another dispatcher is already started for the registry
+     */
+    public synchronized void start() {
+        if (running.getAndSet(true)) {
+            return;
+        }
+
+        final Thread thread = THREAD_FACTORY.newThread(this::run);
+        this.thread = thread;
+        thread.start();
+
+        try {
+            registry.setListenerDispatcher(this);
+        } catch (final IllegalStateException e) {
+            running.set(false);
+            LockSupport.unpark(thread);
+            throw e;
+        }
+    }
+
+    /**
+     * Stop enqueueing listener events, and wait until the queued ones have been delivered.
+     * <p>
+     * Events raised while stopping wait until the queue has been drained, and are then delivered
+     * on the registering thread, like events raised after this returns.
+     */
+    public synchronized void stop() {
+        if (!running.get()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+
+        try {
+            running.set(false);
+
+            final Thread thread = this.thread;
+            LockSupport.unpark(thread);
+
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            // only left over if waiting for the dispatch thread was interrupted.
+            Event event;
+
+            while ((event = queue.poll()) != null) {
+                deliver(event);
+            }
+
+            registry.clearListenerDispatcher(this);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    private void run() {
+        while (true) {
+            final Event event = queue.poll();
+
+            if (event == null) {
+                if (!running.get()) {
+                    return;
+                }
+
+                idle = true;
+
+                // re-check after announcing that we are idle, to not miss a wakeup.
+                if (queue.isEmpty()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+
+                idle = false;
+                continue;
+            }
+
+            deliver(event);
+        }
+    }
+
+    private void deliver(final Event event) {
+        depth.decrementAndGet();
+        lag.update(clock.getTick() - event.enqueued, TimeUnit.NANOSECONDS);
+
+        try {
+            event.event.run();
+        } catch (final Exception e) {
+            log.error("Error when notifying listeners", e);
+        }
+    }
+
+    private static final class Event {
+        private final Runnable event;
+        private final long enqueued;
+
+        private Event(final Runnable event, final long enqueued) {
+            this.event = event;
+            this.enqueued = enqueued;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Metric;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Limits the number of distinct metrics which can be created through
+ * {@link SemanticMetricRegistry#getOrAdd(MetricId, SemanticMetricBuilder)}.
+ * <p>
+ * Metrics are grouped by their key and the values of a few tags, {@code what} by default, and
+ * each group is limited to a number of metrics, as is the registry as a whole. When a limit is
+ * reached, lookups of new metrics return a shared overflow metric of their group and type
+ * instead, named like the group with additional {@code overflow=true} and {@code metric-type}
+ * tags, and increment the {@link #getRejections() rejection counter}. Overflow metrics are
+ * recognized by the limiter when it names them, not by their tags, so they are not limited
+ * themselves while other metrics tagged {@code overflow=true} are.
+ * <p>
+ * Limits are checked before a new metric is added without any coordination between threads,
+ * so concurrent registrations might exceed them slightly. Looking up existing metrics is not
+ * affected by the limiter, and once the overflow metric of a group and type exists, a rejected
+ * lookup only costs a lookup of its group and an increment of the rejection counter.
+ */
+public final class CardinalityLimiter {
+    public static final String OVERFLOW_TAG = "overflow";
+    public static final String METRIC_TYPE_TAG = MetricTypes.TAG;
+
+    private final int perKeyLimit;
+    private final int globalLimit;
+    private final String[] groupBy;
+    private final MetricId rejectionsId;
+
+    private final Counter rejections = new Counter();
+    private final ConcurrentMap<Group, Integer> groups = new ConcurrentHashMap<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final ConcurrentMap<Group, Overflow> overflowGroups = new ConcurrentHashMap<>();
+    // ids of the overflow metrics which have been created, never forgotten so that removing and
+    // re-creating one can't race with its accounting.
+    private final ConcurrentMap<MetricId, Overflow> overflows = new ConcurrentHashMap<>();
+
+    private CardinalityLimiter(
+        final int perKeyLimit, final int globalLimit, final String[] groupBy,
+        final MetricId rejectionsId
+    ) {
+        this.perKeyLimit = perKeyLimit;
+        this.globalLimit = globalLimit;
+        this.groupBy = groupBy;
+        this.rejectionsId = rejectionsId;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private int perKeyLimit = Integer.MAX_VALUE;
+        private int globalLimit = Integer.MAX_VALUE;
+        private String[] groupBy = {"what"};
+        private MetricId rejectionsId = MetricId.build()
+            .tagged("what", "cardinality-limit-rejections", "unit", "registration");
+
+        private Builder() {
+        }
+
+        /**
+         * Set the maximum number of metrics in each group.
+         */
+        public Builder perKeyLimit(int perKeyLimit) {
+            if (perKeyLimit <= 0) {
+                throw new IllegalArgumentException("'perKeyLimit' must be positive");
+            }
+
+            this.perKeyLimit = perKeyLimit;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of metrics in the registry.
+         */
+        public Builder globalLimit(int globalLimit) {
+            if (globalLimit <= 0) {
+                throw new IllegalArgumentException("'globalLimit' must be positive");
+            }
+
+            this.globalLimit = globalLimit;
+            return this;
+        }
+
+        /**
+         * Set the tags which, in addition to the key, identify the group of a metric.
+         */
+        public Builder groupBy(String... tags) {
+            this.groupBy = tags.clone();
+            return this;
+        }
+
+        /**
+         * Set the name under which the rejection counter is registered.
+         */
+        public Builder rejectionsId(MetricId rejectionsId) {
+            this.rejectionsId = rejectionsId;
+            return this;
+        }
+
+        public CardinalityLimiter build() {
+            return new CardinalityLimiter(perKeyLimit, globalLimit, groupBy, rejectionsId);
+        }
+    }
+
+    /**
+     * Get the counter of lookups which were given an overflow metric.
+     */
+    public Counter getRejections() {
+        return rejections;
+    }
+
+    public MetricId getRejectionsId() {
+        return rejectionsId;
+    }
+
+    /**
+     * Check if a new metric with the given name can be added, and if not, count the rejection
+     * and get the overflow metrics of its group.
+     *
+     * @return {@code null} if the metric can be added, otherwise the overflow metrics to use.
+     */
+    Overflow reject(final MetricId name) {
+        if (isOverflow(name)) {
+            return null;
+        }
+
+        final Group group = group(name);
+
+        if (total.get() < globalLimit) {
+            final Integer count = groups.get(group);
+
+            if (count == null || count < perKeyLimit) {
+                return null;
+            }
+        }
+
+        rejections.inc();
+
+        final Overflow overflow = overflowGroups.get(group);
+
+        if (overflow != null) {
+            return overflow;
+        }
+
+        return overflowGroups.computeIfAbsent(group, g -> new Overflow(g.overflowId(groupBy)));
+    }
+
+    /**
+     * Mark the overflow metric of the given type as one which is not limited, before it is
+     * created.
+     *
+     * @param type the type of the metric, one of the constants of {@link MetricTypes}
+     * @return the name of the overflow metric
+     */
+    MetricId markOverflow(final Overflow overflow, final int type) {
+        final MetricId name = overflow.name.tagged(METRIC_TYPE_TAG, MetricTypes.name(type));
+        overflows.put(name, overflow);
+        return name;
+    }
+
+    void added(final MetricId name) {
+        if (isOverflow(name)) {
+            return;
+        }
+
+        total.incrementAndGet();
+        groups.merge(group(name), 1, Integer::sum);
+    }
+
+    void removed(final MetricId name, final Metric metric) {
+        final Overflow overflow = overflows.get(name);
+
+        if (overflow != null) {
+            // the overflow metric is re-created if it is needed again.
+            overflow.metrics.compareAndSet(MetricTypes.typeOf(metric), metric, null);
+            return;
+        }
+
+        total.decrementAndGet();
+        groups.computeIfPresent(group(name), (g, count) -> count <= 1 ? null : count - 1);
+    }
+
+    private Group group(final MetricId name) {
+        final Map<String, String> tags = name.getTags();
+        final String[] values = new String[groupBy.length];
+
+        for (int i = 0; i < groupBy.length; i++) {
+            values[i] = tags.get(groupBy[i]);
+        }
+
+        return new Group(name.getKey(), values);
+    }
+
+    private boolean isOverflow(final MetricId name) {
+        return overflows.containsKey(name);
+    }
+
+    /**
+     * The overflow metrics of a group, by type, once they have been created.
+     */
+    static final class Overflow {
+        private final MetricId name;
+        private final AtomicReferenceArray<Metric> metrics =
+            new AtomicReferenceArray<>(MetricTypes.COUNT);
+
+        private Overflow(final MetricId name) {
+            this.name = name;
+        }
+
+        Metric get(final int type) {
+            return metrics.get(type);
+        }
+
+        void set(final int type, final Metric metric) {
+            metrics.set(type, metric);
+        }
+    }
+
+    /**
+     * The key and the values of the grouping tags of a metric, which is cheaper to build and
+     * compare than the equivalent {@link MetricId}.
+     */
+    private static final class Group {
+        private final String key;
+        private final String[] values;
+        private final int hash;
+
+        private Group(final String key, final String[] values) {
+            this.key = key;
+            this.values = values;
+            this.hash = 31 * Objects.hashCode(key) + Arrays.hashCode(values);
+        }
+
+        private MetricId overflowId(final String[] groupBy) {
+            MetricId id = new MetricId(key);
+
+            for (int i = 0; i < groupBy.length; i++) {
+                if (values[i] != null) {
+                    id = id.tagged(groupBy[i], values[i]);
+                }
+            }
+
+            return id.tagged(OVERFLOW_TAG, "true");
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof Group)) {
+                return false;
+            }
+
+            final Group other = (Group) obj;
+            return hash == other.hash && Objects.equals(key, other.key) &&
+                Arrays.equals(values, other.values);
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A memory-mapped file of fixed-size slots holding the values of counters and gauges, which
+ * other processes can read while this one is running, like the JVM's hsperfdata.
+ * <p>
+ * The file starts with a header of {@link #HEADER_SIZE} bytes: a magic number, the format
+ * version, the slot size and the number of slots, as ints. Each slot holds an aligned long
+ * value, an int type ({@link #EMPTY}, {@link #COUNTER} or {@link #GAUGE}), the length of the
+ * encoded name as an int, and the encoded name itself. Numbers are in the native byte order of
+ * the writing process, which readers detect from the magic number.
+ * <p>
+ * Values are updated in place with atomic and ordered stores to the mapped memory, through
+ * {@code sun.misc.Unsafe}, so a counter has no other copy of its count. The type of a slot is
+ * written last with an ordered store, after its name, length and value, and is the point where
+ * the slot is published: readers should skip empty slots.
+ * <p>
+ * Slots are allocated when metrics are created through
+ * {@link SemanticMetricRegistry#counter(MetricId, CounterArena)} or
+ * {@link SemanticMetricRegistry#gauge(MetricId, CounterArena)}. There is one slot per name, and
+ * slots are never freed, so metrics removed from the registry keep their last value in the file
+ * until a metric with the same name is created again and takes over the slot.
+ *
+ * @see CounterArenaReader
+ */
+public final class CounterArena {
+    static final int MAGIC = 0x534d4341;
+    static final int VERSION = 2;
+
+    public static final int HEADER_SIZE = 64;
+    public static final int DEFAULT_SLOT_SIZE = 256;
+
+    public static final int EMPTY = 0;
+    public static final int COUNTER = 1;
+    public static final int GAUGE = 2;
+
+    static final int VALUE_OFFSET = 0;
+    static final int TYPE_OFFSET = 8;
+    static final int LENGTH_OFFSET = 12;
+    static final int NAME_OFFSET = 16;
+
+    private final MappedByteBuffer buffer;
+    private final long address;
+    private final int slotSize;
+    private final int slots;
+
+    private final AtomicInteger next = new AtomicInteger();
+    private final ConcurrentMap<MetricId, Integer> offsets = new ConcurrentHashMap<>();
+
+    private CounterArena(final MappedByteBuffer buffer, final int slotSize, final int slots) {
+        this.buffer = buffer;
+        this.address = Memory.address(buffer);
+        this.slotSize = slotSize;
+        this.slots = slots;
+    }
+
+    /**
+     * Create an arena with slots of the default size, replacing any existing file.
+     *
+     * @param file  the file to map
+     * @param slots the number of slots
+     * @return the arena
+     * @throws IOException if the file could not be mapped
+     */
+    public static CounterArena create(final Path file, final int slots) throws IOException {
+        return create(file, slots, DEFAULT_SLOT_SIZE);
+    }
+
+    /**
+     * Create an arena, replacing any existing file.
+     *
+     * @param file     the file to map
+     * @param slots    the number of slots
+     * @param slotSize the size of each slot in bytes, which limits the length of names
+     * @return the arena
+     * @throws IOException           if the file could not be mapped
+     * @throws IllegalStateException if the platform does not support updating mapped memory
+     */
+    public static CounterArena create(final Path file, final int slots, final int slotSize)
+        throws IOException {
+        Memory.check();
+
+        if (slots <= 0) {
+            throw new IllegalArgumentException("'slots' must be positive");
+        }
+
+        if (slotSize <= NAME_OFFSET || slotSize % 8 != 0) {
+            throw new IllegalArgumentException(
+                "'slotSize' must be a multiple of 8 larger than " + NAME_OFFSET);
+        }
+
+        final long size = HEADER_SIZE + (long) slots * slotSize;
+
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("arena of " + size + " bytes is too large");
+        }
+
+        final MappedByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        buffer.order(ByteOrder.nativeOrder());
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, slotSize);
+        buffer.putInt(12, slots);
+        buffer.putInt(0, MAGIC);
+        return new CounterArena(buffer, slotSize, slots);
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    /**
+     * Get the number of allocated slots.
+     */
+    public int getAllocated() {
+        return Math.min(next.get(), slots);
+    }
+
+    SemanticMetricBuilder<Counter> counterBuilder(final MetricId name) {
+        return new SemanticMetricBuilder<Counter>() {
+            @Override
+            public Counter newMetric() {
+                return new ArenaCounter(CounterArena.this, allocate(name, COUNTER));
+            }
+
+            @Override
+            public boolean isInstance(final com.codahale.metrics.Metric metric) {
+                return metric instanceof ArenaCounter;
+            }
+        };
+    }
+
+    SemanticMetricBuilder<ArenaGauge> gaugeBuilder(final MetricId name) {
+        return new SemanticMetricBuilder<ArenaGauge>() {
+            @Override
+            public ArenaGauge newMetric() {
+                return new ArenaGauge(CounterArena.this, allocate(name, GAUGE));
+            }
+
+            @Override
+            public boolean isInstance(final com.codahale.metrics.Metric metric) {
+                return metric instanceof ArenaGauge;
+            }
+        };
+    }
+
+    /**
+     * Get the slot of the given name, allocating and publishing it if the name has none.
+     * <p>
+     * Metrics are created before they are added to the registry, so threads racing to create
+     * the same metric all get here. Sharing the slot keeps the losers from publishing slots
+     * which are never updated.
+     *
+     * @return the offset of the value of the slot
+     * @throws IllegalArgumentException if the name does not fit in a slot, or its slot has a
+     *                                  different type
+     * @throws IllegalStateException    if all slots are allocated
+     */
+    int allocate(final MetricId name, final int type) {
+        Integer offset = offsets.get(name);
+
+        if (offset == null) {
+            offset = offsets.computeIfAbsent(name, n -> publish(n, type));
+        }
+
+        if (buffer.getInt(offset + TYPE_OFFSET) != type) {
+            throw new IllegalArgumentException(
+                name + " already has a slot for a different type of metric");
+        }
+
+        return offset;
+    }
+
+    private int publish(final MetricId name, final int type) {
+        final byte[] encoded = MetricIdEncoding.encode(name);
+
+        if (encoded.length > slotSize - NAME_OFFSET) {
+            throw new IllegalArgumentException(
+                "name of " + encoded.length + " bytes does not fit a slot: " + name);
+        }
+
+        final int index = next.getAndIncrement();
+
+        if (index >= slots) {
+            throw new IllegalStateException("all " + slots + " slots of the arena are in use");
+        }
+
+        final int offset = HEADER_SIZE + index * slotSize;
+        final ByteBuffer slot = buffer.duplicate();
+        slot.position(offset + NAME_OFFSET);
+        slot.put(encoded);
+
+        buffer.putLong(offset + VALUE_OFFSET, 0L);
+        buffer.putInt(offset + LENGTH_OFFSET, encoded.length);
+        // publishes the slot, ordered after the writes above.
+        Memory.putOrderedInt(address + offset + TYPE_OFFSET, type);
+        return offset;
+    }
+
+    long add(final int offset, final long delta) {
+        return Memory.getAndAddLong(address + offset + VALUE_OFFSET, delta) + delta;
+    }
+
+    void set(final int offset, final long value) {
+        Memory.putOrderedLong(address + offset + VALUE_OFFSET, value);
+    }
+
+    long get(final int offset) {
+        return Memory.getLongVolatile(address + offset + VALUE_OFFSET);
+    }
+
+    /**
+     * A counter whose count is kept in a slot of an arena.
+     * <p>
+     * Other processes read the count from a single word, so it is updated with an atomic add
+     * rather than striped across threads like the count of a {@link Counter}.
+     */
+    public static final class ArenaCounter extends Counter {
+        private final CounterArena arena;
+        private final int offset;
+
+        private ArenaCounter(final CounterArena arena, final int offset) {
+            this.arena = arena;
+            this.offset = offset;
+        }
+
+        @Override
+        public void inc() {
+            inc(1);
+        }
+
+        @Override
+        public void inc(final long n) {
+            arena.add(offset, n);
+        }
+
+        @Override
+        public void dec() {
+            dec(1);
+        }
+
+        @Override
+        public void dec(final long n) {
+            arena.add(offset, -n);
+        }
+
+        @Override
+        public long getCount() {
+            return arena.get(offset);
+        }
+    }
+
+    /**
+     * A gauge whose value is set explicitly and kept in a slot of an arena.
+     */
+    public static final class ArenaGauge implements Gauge<Long> {
+        private final CounterArena arena;
+        private final int offset;
+
+        private ArenaGauge(final CounterArena arena, final int offset) {
+            this.arena = arena;
+            this.offset = offset;
+        }
+
+        public void set(final long value) {
+            arena.set(offset, value);
+        }
+
+        @Override
+        public Long getValue() {
+            return arena.get(offset);
+        }
+    }
+
+    /**
+     * Atomic and ordered access to mapped memory through {@code sun.misc.Unsafe}, which is
+     * looked up reflectively since it is not part of the Java 8 platform the code is compiled
+     * against.
+     */
+    private static final class Memory {
+        private static final MethodHandle GET_AND_ADD_LONG;
+        private static final MethodHandle GET_LONG_VOLATILE;
+        private static final MethodHandle PUT_ORDERED_LONG;
+        private static final MethodHandle PUT_ORDERED_INT;
+        private static final MethodHandle GET_LONG;
+        private static final long ADDRESS_OFFSET;
+        private static final Throwable UNAVAILABLE;
+
+        static {
+            MethodHandle getAndAddLong = null;
+            MethodHandle getLongVolatile = null;
+            MethodHandle putOrderedLong = null;
+            MethodHandle putOrderedInt = null;
+            MethodHandle getLong = null;
+            long addressOffset = -1L;
+            Throwable unavailable = null;
+
+            try {
+                final Class<?> type = Class.forName("sun.misc.Unsafe");
+                final Field field = type.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                final Object unsafe = field.get(null);
+                final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+                getAndAddLong = lookup.findVirtual(type, "getAndAddLong",
+                    MethodType.methodType(long.class, Object.class, long.class, long.class))
+                    .bindTo(unsafe);
+                getLongVolatile = lookup.findVirtual(type, "getLongVolatile",
+                    MethodType.methodType(long.class, Object.class, long.class))
+                    .bindTo(unsafe);
+                putOrderedLong = lookup.findVirtual(type, "putOrderedLong",
+                    MethodType.methodType(void.class, Object.class, long.class, long.class))
+                    .bindTo(unsafe);
+                putOrderedInt = lookup.findVirtual(type, "putOrderedInt",
+                    MethodType.methodType(void.class, Object.class, long.class, int.class))
+                    .bindTo(unsafe);
+                getLong = lookup.findVirtual(type, "getLong",
+                    MethodType.methodType(long.class, Object.class, long.class))
+                    .bindTo(unsafe);
+                addressOffset = (long) lookup.findVirtual(type, "objectFieldOffset",
+                    MethodType.methodType(long.class, Field.class))
+                    .invoke(unsafe, Buffer.class.getDeclaredField("address"));
+            } catch (final Throwable e) {
+                unavailable = e;
+            }
+
+            GET_AND_ADD_LONG = getAndAddLong;
+            GET_LONG_VOLATILE = getLongVolatile;
+            PUT_ORDERED_LONG = putOrderedLong;
+            PUT_ORDERED_INT = putOrderedInt;
+            GET_LONG = getLong;
+            ADDRESS_OFFSET = addressOffset;
+            UNAVAILABLE = unavailable;
+        }
+
+        private Memory() {
+        }
+
+        static void check() {
+            if (UNAVAILABLE != null) {
+                throw new IllegalStateException(
+                    "sun.misc.Unsafe is required to update mapped memory", UNAVAILABLE);
+            }
+        }
+
+        static long address(final Buffer buffer) {
+            try {
+                return (long) GET_LONG.invokeExact((Object) buffer, ADDRESS_OFFSET);
+            } catch (final Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        static long getAndAddLong(final long address, final long delta) {
+            try {
+                return (long) GET_AND_ADD_LONG.invokeExact((Object) null, address, delta);
+            } catch (final Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        static long getLongVolatile(final long address) {
+            try {
+                return (long) GET_LONG_VOLATILE.invokeExact((Object) null, address);
+            } catch (final Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        static void putOrderedLong(final long address, final long value) {
+            try {
+                PUT_ORDERED_LONG.invokeExact((Object) null, address, value);
+            } catch (final Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        static void putOrderedInt(final long address, final int value) {
+            try {
+                PUT_ORDERED_INT.invokeExact((Object) null, address, value);
+            } catch (final Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads the values of a {@link CounterArena} written by another process.
+ * <p>
+ * The file is mapped read-only, so every call to {@link #read()} sees the current values.
+ * Running the class prints the values of the arena at the given path.
+ */
+public final class CounterArenaReader {
+    private final MappedByteBuffer buffer;
+    private final int slotSize;
+    private final int slots;
+
+    private CounterArenaReader(final MappedByteBuffer buffer, final int slotSize, final int slots) {
+        this.buffer = buffer;
+        this.slotSize = slotSize;
+        this.slots = slots;
+    }
+
+    /**
+     * Map the arena in the given file.
+     *
+     * @param file the file of the arena
+     * @return a reader of the arena
+     * @throws IOException if the file could not be mapped or is not an arena
+     */
+    public static CounterArenaReader open(final Path file) throws IOException {
+        final MappedByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.capacity() < CounterArena.HEADER_SIZE) {
+            throw new IOException("not a counter arena: " + file);
+        }
+
+        // numbers are in the byte order of the writer, which the magic number tells.
+        if (buffer.getInt(0) == Integer.reverseBytes(CounterArena.MAGIC)) {
+            buffer.order(buffer.order() == ByteOrder.BIG_ENDIAN
+                ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        }
+
+        if (buffer.getInt(0) != CounterArena.MAGIC) {
+            throw new IOException("not a counter arena: " + file);
+        }
+
+        if (buffer.getInt(4) != CounterArena.VERSION) {
+            throw new IOException("unsupported counter arena version: " + buffer.getInt(4));
+        }
+
+        final int slotSize = buffer.getInt(8);
+        final int slots = buffer.getInt(12);
+
+        if ((long) CounterArena.HEADER_SIZE + (long) slots * slotSize > buffer.capacity()) {
+            throw new IOException("truncated counter arena: " + file);
+        }
+
+        return new CounterArenaReader(buffer, slotSize, slots);
+    }
+
+    /**
+     * Read the values of all published slots.
+     *
+     * @return the values by name
+     */
+    public Map<MetricId, Long> read() {
+        final Map<MetricId, Long> values = new TreeMap<>();
+
+        for (int i = 0; i < slots; i++) {
+            final int offset = CounterArena.HEADER_SIZE + i * slotSize;
+
+            if (buffer.getInt(offset + CounterArena.TYPE_OFFSET) == CounterArena.EMPTY) {
+                continue;
+            }
+
+            final int length = buffer.getInt(offset + CounterArena.LENGTH_OFFSET);
+            final byte[] name = new byte[length];
+
+            for (int j = 0; j < length; j++) {
+                name[j] = buffer.get(offset + CounterArena.NAME_OFFSET + j);
+            }
+
+            values.put(MetricIdEncoding.decode(name),
+                buffer.getLong(offset + CounterArena.VALUE_OFFSET));
+        }
+
+        return values;
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: CounterArenaReader <file>");
+            System.exit(1);
+        }
+
+        for (final Map.Entry<MetricId, Long> entry : open(Paths.get(args[0])).read().entrySet()) {
+            System.out.println(entry.getKey() + " " + entry.getValue());
+        }
+    }
+}
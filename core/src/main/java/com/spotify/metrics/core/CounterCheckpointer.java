@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Periodically saves the counts of the counters of a registry to a memory-mapped file, and
+ * restores them when counters with the same names are added after a restart.
+ * <p>
+ * Each counter gets a record in the file the first time it is checkpointed, holding its name
+ * and count. Later checkpoints only overwrite the counts which changed, and records of the
+ * previous run are reused for counters with the same name. Counts are read on the checkpoint
+ * thread, so updating a counter costs the same as without checkpoints.
+ * <p>
+ * When started, the checkpointer reads the file and listens for counters being added to the
+ * registry, including those which already exist. A counter whose name has a record is
+ * incremented by the recorded count, once per process. Updates between the last checkpoint and
+ * a restart are lost.
+ * <p>
+ * Only plain counters are restored. Meters are not, since marking a restored count would
+ * distort their rates, and neither are deriving meters, which mirror a count kept elsewhere.
+ */
+public class CounterCheckpointer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(CounterCheckpointer.class);
+
+    private static final int MAGIC = 0x534d4350;
+    private static final int VERSION = 2;
+
+    // magic, version, the number of records and the end of the last record.
+    private static final int HEADER_SIZE = 16;
+    private static final int COUNT_OFFSET = 8;
+    private static final int END_OFFSET = 12;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable);
+
+            thread.setName(String.format("counter-checkpointer-%d", count.getAndIncrement()));
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    };
+
+    private final SemanticMetricRegistry registry;
+    private final Path file;
+    private final int capacity;
+    private final SemanticMetricFilter filter;
+    private final TimeUnit unit;
+    private final long interval;
+    private final ScheduledExecutorService executorService;
+    private final boolean executorOwner;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final ConcurrentMap<ByteBuffer, Long> restored = new ConcurrentHashMap<>();
+    private final SemanticMetricRegistryListener listener = new Restorer();
+    private ScheduledFuture<?> scheduledFuture;
+
+    // only accessed while holding the lock of the checkpointer.
+    private MappedByteBuffer buffer;
+    private final Map<MetricId, Record> records = new HashMap<>();
+    private final Map<ByteBuffer, Integer> previous = new HashMap<>();
+    private boolean full;
+
+    private CounterCheckpointer(
+        final SemanticMetricRegistry registry, final Path file, final int capacity,
+        final SemanticMetricFilter filter, final TimeUnit unit, final long interval,
+        final ScheduledExecutorService executorService, final boolean executorOwner
+    ) {
+        this.registry = registry;
+        this.file = file;
+        this.capacity = capacity;
+        this.filter = filter;
+        this.unit = unit;
+        this.interval = interval;
+        this.executorService = executorService;
+        this.executorOwner = executorOwner;
+    }
+
+    public static Builder forRegistry(SemanticMetricRegistry registry) {
+        return new Builder(registry);
+    }
+
+    public static final class Builder {
+        private final SemanticMetricRegistry registry;
+        private Path file;
+        private int capacity = 4 * 1024 * 1024;
+        private SemanticMetricFilter filter = SemanticMetricFilter.ALL;
+        private TimeUnit unit = TimeUnit.SECONDS;
+        private long time = 10;
+        private ScheduledExecutorService executorService;
+
+        public Builder(SemanticMetricRegistry registry) {
+            this.registry = registry;
+        }
+
+        /**
+         * Set the file to checkpoint to, which is created if it does not exist.
+         */
+        public Builder file(Path file) {
+            this.file = file;
+            return this;
+        }
+
+        /**
+         * Set the size in bytes of the file, which limits the number of counters it can hold.
+         */
+        public Builder capacity(int capacity) {
+            if (capacity <= HEADER_SIZE) {
+                throw new IllegalArgumentException(
+                    "'capacity' must be larger than " + HEADER_SIZE);
+            }
+
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Only checkpoint and restore counters which match the given filter.
+         */
+        public Builder filter(SemanticMetricFilter filter) {
+            this.filter = filter;
+            return this;
+        }
+
+        public Builder schedule(TimeUnit unit, long time) {
+            this.unit = unit;
+            this.time = time;
+            return this;
+        }
+
+        public Builder executorService(ScheduledExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        public CounterCheckpointer build() {
+            if (file == null) {
+                throw new IllegalArgumentException("'file' must not be null");
+            }
+
+            final boolean executorOwner;
+            final ScheduledExecutorService executorService;
+            if (this.executorService != null) {
+                executorService = this.executorService;
+                executorOwner = false;
+            } else {
+                executorService = Executors.newSingleThreadScheduledExecutor(THREAD_FACTORY);
+                executorOwner = true;
+            }
+            return new CounterCheckpointer(registry, file, capacity, filter, unit, time,
+                executorService, executorOwner);
+        }
+    }
+
+    /**
+     * Open the file, restore counters from it as they are added, and start checkpointing.
+     *
+     * @throws IOException if the file could not be opened
+     */
+    public void start() throws IOException {
+        if (running.getAndSet(true)) {
+            return;
+        }
+
+        try {
+            open();
+        } catch (final IOException e) {
+            running.set(false);
+            throw e;
+        }
+
+        registry.addListener(listener);
+
+        scheduledFuture = executorService.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (final Exception e) {
+                log.error("Error when trying to checkpoint counters", e);
+            }
+        }, interval, interval, unit);
+    }
+
+    /**
+     * Write the counts which changed since the last checkpoint to the file.
+     *
+     * @return the number of written counts
+     */
+    public synchronized int checkpoint() {
+        if (buffer == null) {
+            return 0;
+        }
+
+        final int[] written = {0};
+
+        registry.forEachCounter(filter, (name, counter) -> {
+            Record record = records.get(name);
+
+            if (record == null) {
+                record = allocate(name);
+
+                if (record == null) {
+                    return;
+                }
+
+                records.put(name, record);
+            }
+
+            final long count = counter.getCount();
+
+            if (count != record.count) {
+                buffer.putLong(record.position, count);
+                record.count = count;
+                written[0]++;
+            }
+        });
+
+        return written[0];
+    }
+
+    public void stop() {
+        if (!running.get()) {
+            return;
+        }
+
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(false);
+        }
+        if (executorOwner) {
+            executorService.shutdown();
+        }
+
+        registry.removeListener(listener);
+
+        synchronized (this) {
+            checkpoint();
+
+            if (buffer != null) {
+                buffer.force();
+                buffer = null;
+            }
+        }
+
+        running.set(false);
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    private synchronized void open() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final long size = Math.max(channel.size(), capacity);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        records.clear();
+        previous.clear();
+        restored.clear();
+        full = false;
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            if (buffer.getInt(0) != 0) {
+                log.warn("Ignoring counter checkpoints in {} with an unknown format", file);
+            }
+
+            buffer.putInt(COUNT_OFFSET, 0);
+            buffer.putInt(END_OFFSET, HEADER_SIZE);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(0, MAGIC);
+            return;
+        }
+
+        final int count = buffer.getInt(COUNT_OFFSET);
+        int position = HEADER_SIZE;
+
+        for (int i = 0; i < count; i++) {
+            final int length = buffer.getInt(position + 8);
+
+            if (length < 0 || position + 12 + length > buffer.capacity()) {
+                log.warn("Ignoring truncated counter checkpoints in {}", file);
+                buffer.putInt(COUNT_OFFSET, i);
+                buffer.putInt(END_OFFSET, position);
+                return;
+            }
+
+            final byte[] name = new byte[length];
+            buffer.position(position + 12);
+            buffer.get(name);
+
+            final ByteBuffer key = ByteBuffer.wrap(name);
+            previous.put(key, position);
+            restored.put(key, buffer.getLong(position));
+
+            position = align(position + 12 + length);
+        }
+    }
+
+    /**
+     * Find or append the record for the given name.
+     *
+     * @return the record, or {@code null} if the file is full
+     */
+    private Record allocate(final MetricId name) {
+        final byte[] encoded = MetricIdEncoding.encode(name);
+        final Integer existing = previous.remove(ByteBuffer.wrap(encoded));
+
+        if (existing != null) {
+            return new Record(existing, buffer.getLong(existing));
+        }
+
+        final int position = buffer.getInt(END_OFFSET);
+        final int end = align(position + 12 + encoded.length);
+
+        if (end > buffer.capacity()) {
+            if (!full) {
+                log.warn("Counter checkpoint file {} is full, new counters are not saved", file);
+                full = true;
+            }
+
+            return null;
+        }
+
+        buffer.putLong(position, 0L);
+        buffer.putInt(position + 8, encoded.length);
+        buffer.position(position + 12);
+        buffer.put(encoded);
+
+        // publish the record only once it is complete, in case the process dies meanwhile.
+        buffer.putInt(END_OFFSET, end);
+        buffer.putInt(COUNT_OFFSET, buffer.getInt(COUNT_OFFSET) + 1);
+        return new Record(position, 0L);
+    }
+
+    /**
+     * Align records to eight bytes, so that counts are never torn.
+     */
+    private static int align(final int position) {
+        return (position + 7) & ~7;
+    }
+
+    private final class Restorer extends SemanticMetricRegistryListener.Base {
+        @Override
+        public void onCounterAdded(final MetricId name, final Counter counter) {
+            if (restored.isEmpty() || !filter.matches(name, counter)) {
+                return;
+            }
+
+            final Long count = restored.remove(ByteBuffer.wrap(MetricIdEncoding.encode(name)));
+
+            if (count != null) {
+                counter.inc(count);
+            }
+        }
+    }
+
+    private static final class Record {
+        private final int position;
+        private long count;
+
+        private Record(final int position, final long count) {
+            this.position = position;
+            this.count = count;
+        }
+    }
+}
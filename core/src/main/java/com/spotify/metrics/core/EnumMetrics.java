@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Metric;
+
+/**
+ * Metrics for every constant of an enum, looked up by the ordinal of the constant.
+ *
+ * @param <E> The enum type keying the metrics.
+ * @param <T> The type of the metrics.
+ * @see SemanticMetricRegistry#enumMetrics(EnumMetricIdCache, SemanticMetricBuilder)
+ */
+public final class EnumMetrics<E extends Enum<E>, T extends Metric> {
+    private final EnumMetricIdCache<E> ids;
+    private final Object[] metrics;
+
+    EnumMetrics(final EnumMetricIdCache<E> ids, final Object[] metrics) {
+        this.ids = ids;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Get the metric for the given constant.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(final E key) {
+        return (T) metrics[key.ordinal()];
+    }
+
+    public EnumMetricIdCache<E> getIds() {
+        return ids;
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * An index of metric ids by their {@link MetricId#fingerprint() fingerprint}.
+ * <p>
+ * Each fingerprint maps to either a single id, or to an array of ids in the rare case that
+ * distinct ids share a fingerprint. Fingerprints are kept unboxed in open-addressed tables with
+ * linear probing, split into segments which are each guarded by a {@link StampedLock}, so that
+ * lookups neither allocate nor lock unless they race with a modification of their segment.
+ */
+final class FingerprintIndex {
+    private static final int SEGMENT_BITS = 4;
+    private static final int MIN_CAPACITY = 16;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    FingerprintIndex() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    void add(final MetricId id) {
+        final long fingerprint = id.fingerprint();
+        segment(fingerprint).add(fingerprint, id);
+    }
+
+    void remove(final MetricId id) {
+        final long fingerprint = id.fingerprint();
+        segment(fingerprint).remove(fingerprint, id);
+    }
+
+    /**
+     * Get the ids with the given fingerprint.
+     *
+     * @return The ids with the given fingerprint, or an empty list if there are none.
+     */
+    List<MetricId> get(final long fingerprint) {
+        final Object existing = segment(fingerprint).get(fingerprint);
+
+        if (existing == null) {
+            return Collections.emptyList();
+        }
+
+        if (existing instanceof MetricId) {
+            return Collections.singletonList((MetricId) existing);
+        }
+
+        return Collections.unmodifiableList(Arrays.asList((MetricId[]) existing));
+    }
+
+    private Segment segment(final long fingerprint) {
+        return segments[(int) (spread(fingerprint) >>> (64 - SEGMENT_BITS))];
+    }
+
+    private static long spread(final long fingerprint) {
+        return fingerprint * 0x9E3779B97F4A7C15L;
+    }
+
+    private static int home(final long fingerprint, final int mask) {
+        return (int) (spread(fingerprint) >>> 32) & mask;
+    }
+
+    private static final class Table {
+        // a slot is empty if its value is null, since any long is a valid fingerprint.
+        private final long[] keys;
+        private final Object[] values;
+
+        private Table(final int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+        }
+
+        /**
+         * Find the slot of a fingerprint.
+         *
+         * @return the slot, or {@code -(insertion slot) - 1} if the fingerprint is absent
+         */
+        private int find(final long fingerprint) {
+            final int mask = keys.length - 1;
+            int i = home(fingerprint, mask);
+
+            // bounded, since an optimistic reader might observe a table being modified.
+            for (int n = 0; n < keys.length; n++) {
+                if (values[i] == null) {
+                    return -i - 1;
+                }
+
+                if (keys[i] == fingerprint) {
+                    return i;
+                }
+
+                i = (i + 1) & mask;
+            }
+
+            return -1;
+        }
+    }
+
+    private static final class Segment {
+        private final StampedLock lock = new StampedLock();
+        private Table table = new Table(MIN_CAPACITY);
+        private int size;
+
+        private Object get(final long fingerprint) {
+            final long stamp = lock.tryOptimisticRead();
+
+            if (stamp != 0) {
+                final Object value = lookup(table, fingerprint);
+
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            }
+
+            final long read = lock.readLock();
+
+            try {
+                return lookup(table, fingerprint);
+            } finally {
+                lock.unlockRead(read);
+            }
+        }
+
+        private void add(final long fingerprint, final MetricId id) {
+            final long stamp = lock.writeLock();
+
+            try {
+                final Table t = table;
+                final int slot = t.find(fingerprint);
+
+                if (slot >= 0) {
+                    t.values[slot] = merge(t.values[slot], id);
+                    return;
+                }
+
+                t.keys[-slot - 1] = fingerprint;
+                t.values[-slot - 1] = id;
+
+                // keep the load factor at or below 3/4.
+                if (++size * 4 > t.keys.length * 3) {
+                    resize(t.keys.length * 2);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void remove(final long fingerprint, final MetricId id) {
+            final long stamp = lock.writeLock();
+
+            try {
+                final Table t = table;
+                final int slot = t.find(fingerprint);
+
+                if (slot < 0) {
+                    return;
+                }
+
+                final Object remaining = without(t.values[slot], id);
+
+                if (remaining != null) {
+                    t.values[slot] = remaining;
+                    return;
+                }
+
+                delete(t, slot);
+                size--;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void resize(final int capacity) {
+            final Table old = table;
+            final Table t = new Table(capacity);
+
+            for (int i = 0; i < old.keys.length; i++) {
+                if (old.values[i] != null) {
+                    final int slot = -t.find(old.keys[i]) - 1;
+                    t.keys[slot] = old.keys[i];
+                    t.values[slot] = old.values[i];
+                }
+            }
+
+            table = t;
+        }
+
+        private static Object lookup(final Table t, final long fingerprint) {
+            final int slot = t.find(fingerprint);
+            return slot >= 0 ? t.values[slot] : null;
+        }
+
+        /**
+         * Empty a slot, shifting back the entries which follow it in its probe sequence so that
+         * lookups do not stop early.
+         */
+        private static void delete(final Table t, final int slot) {
+            final int mask = t.keys.length - 1;
+            int i = slot;
+            int j = slot;
+
+            while (true) {
+                j = (j + 1) & mask;
+
+                if (t.values[j] == null) {
+                    break;
+                }
+
+                final int home = home(t.keys[j], mask);
+
+                // an entry whose home lies cyclically in (i, j] is still reachable.
+                final boolean reachable =
+                    i <= j ? (i < home && home <= j) : (i < home || home <= j);
+
+                if (!reachable) {
+                    t.keys[i] = t.keys[j];
+                    t.values[i] = t.values[j];
+                    i = j;
+                }
+            }
+
+            t.keys[i] = 0L;
+            t.values[i] = null;
+        }
+    }
+
+    private static Object merge(final Object existing, final MetricId id) {
+        if (existing instanceof MetricId) {
+            if (existing.equals(id)) {
+                return existing;
+            }
+
+            return new MetricId[]{(MetricId) existing, id};
+        }
+
+        final MetricId[] collisions = (MetricId[]) existing;
+
+        for (final MetricId c : collisions) {
+            if (c.equals(id)) {
+                return existing;
+            }
+        }
+
+        final MetricId[] result = Arrays.copyOf(collisions, collisions.length + 1);
+        result[collisions.length] = id;
+        return result;
+    }
+
+    private static Object without(final Object existing, final MetricId id) {
+        if (existing instanceof MetricId) {
+            return existing.equals(id) ? null : existing;
+        }
+
+        final List<MetricId> remaining = new ArrayList<>();
+
+        for (final MetricId c : (MetricId[]) existing) {
+            if (!c.equals(id)) {
+                remaining.add(c);
+            }
+        }
+
+        if (remaining.size() == 1) {
+            return remaining.get(0);
+        }
+
+        return remaining.toArray(new MetricId[0]);
+    }
+}
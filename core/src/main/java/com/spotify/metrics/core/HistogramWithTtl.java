@@ -24,12 +24,24 @@ package com.spotify.metrics.core;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Reservoir;
 
-public class HistogramWithTtl extends Histogram {
+public class HistogramWithTtl extends Histogram implements MemoryEstimable {
+    private final ReservoirWithTtl reservoir;
+
     public HistogramWithTtl() {
-        super(new ReservoirWithTtl());
+        this(new ReservoirWithTtl());
     }
 
     public HistogramWithTtl(final Reservoir delegate, final int ttlSeconds, final int minimumRate) {
-        super(new ReservoirWithTtl(delegate, ttlSeconds, minimumRate));
+        this(new ReservoirWithTtl(delegate, ttlSeconds, minimumRate));
+    }
+
+    private HistogramWithTtl(final ReservoirWithTtl reservoir) {
+        super(reservoir);
+        this.reservoir = reservoir;
+    }
+
+    @Override
+    public long estimateRetainedBytes() {
+        return MemoryEstimator.HISTOGRAM_BYTES + reservoir.estimateRetainedBytes();
     }
 }
@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Counting;
+import com.codahale.metrics.Metric;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Removes metrics from a registry which have not been updated for a while.
+ * <p>
+ * Updates are not tracked as they happen. Instead, the sweeper periodically visits a batch of
+ * metrics and compares their count to the count it saw the last time, so a metric is considered
+ * idle once its count has not changed for the idle timeout. Only metrics which are
+ * {@link Counting} are expired, which excludes gauges.
+ * <p>
+ * Each run visits at most {@link Builder#batchSize(int)} metrics, continuing where the previous
+ * run stopped. For every metric to be visited within the idle timeout, the batch size times the
+ * number of runs per idle timeout should exceed the number of metrics in the registry.
+ * <p>
+ * Metrics are removed through the registry, so listeners are notified of their removal. Code
+ * which holds on to a removed metric will keep updating it without it being reported, so idle
+ * metrics should be looked up through the registry rather than cached. Since many metrics are
+ * held on to, such as the ones created by templates, scopes and metric sets, the metrics to
+ * expire must be selected with {@link Builder#filter(SemanticMetricFilter)}.
+ */
+public class IdleMetricSweeper implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(IdleMetricSweeper.class);
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable);
+
+            thread.setName(String.format("idle-metric-sweeper-%d", count.getAndIncrement()));
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    };
+
+    private final SemanticMetricRegistry registry;
+    private final long idleTimeoutNanos;
+    private final int batchSize;
+    private final SemanticMetricFilter filter;
+    private final Clock clock;
+    private final TimeUnit unit;
+    private final long interval;
+    private final ScheduledExecutorService executorService;
+    private final boolean executorOwner;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private ScheduledFuture<?> scheduledFuture;
+
+    // only accessed while holding the lock of the sweeper.
+    private final ActivityTable activity = new ActivityTable();
+    private Iterator<Map.Entry<MetricId, Metric>> iterator;
+    private int pass;
+
+    private IdleMetricSweeper(
+        final SemanticMetricRegistry registry, final long idleTimeoutNanos, final int batchSize,
+        final SemanticMetricFilter filter, final Clock clock, final TimeUnit unit,
+        final long interval, final ScheduledExecutorService executorService,
+        final boolean executorOwner
+    ) {
+        this.registry = registry;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.batchSize = batchSize;
+        this.filter = filter;
+        this.clock = clock;
+        this.unit = unit;
+        this.interval = interval;
+        this.executorService = executorService;
+        this.executorOwner = executorOwner;
+    }
+
+    public static Builder forRegistry(SemanticMetricRegistry registry) {
+        return new Builder(registry);
+    }
+
+    public static final class Builder {
+        private final SemanticMetricRegistry registry;
+        private long idleTimeout = 1;
+        private TimeUnit idleTimeoutUnit = TimeUnit.HOURS;
+        private int batchSize = 10000;
+        private SemanticMetricFilter filter;
+        private Clock clock = Clock.defaultClock();
+        private TimeUnit unit = TimeUnit.SECONDS;
+        private long time = 10;
+        private ScheduledExecutorService executorService;
+
+        public Builder(SemanticMetricRegistry registry) {
+            this.registry = registry;
+        }
+
+        /**
+         * Set how long the count of a metric must stay unchanged before it is removed.
+         */
+        public Builder idleTimeout(long idleTimeout, TimeUnit unit) {
+            if (idleTimeout <= 0) {
+                throw new IllegalArgumentException("'idleTimeout' must be positive");
+            }
+
+            this.idleTimeout = idleTimeout;
+            this.idleTimeoutUnit = unit;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of metrics visited by each run.
+         */
+        public Builder batchSize(int batchSize) {
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("'batchSize' must be positive");
+            }
+
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Only expire metrics which match the given filter. This is required, and should only
+         * match metrics which are always looked up through the registry.
+         */
+        public Builder filter(SemanticMetricFilter filter) {
+            if (filter == null) {
+                throw new IllegalArgumentException("'filter' must not be null");
+            }
+
+            this.filter = filter;
+            return this;
+        }
+
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public Builder schedule(TimeUnit unit, long time) {
+            this.unit = unit;
+            this.time = time;
+            return this;
+        }
+
+        public Builder executorService(ScheduledExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        public IdleMetricSweeper build() {
+            if (filter == null) {
+                throw new IllegalStateException("a filter for the metrics to expire is required");
+            }
+
+            final boolean executorOwner;
+            final ScheduledExecutorService executorService;
+            if (this.executorService != null) {
+                executorService = this.executorService;
+                executorOwner = false;
+            } else {
+                executorService = Executors.newSingleThreadScheduledExecutor(THREAD_FACTORY);
+                executorOwner = true;
+            }
+            return new IdleMetricSweeper(registry, idleTimeoutUnit.toNanos(idleTimeout),
+                batchSize, filter, clock, unit, time, executorService, executorOwner);
+        }
+    }
+
+    /**
+     * Visit the next batch of metrics, and remove the ones which have been idle for too long.
+     *
+     * @return the number of removed metrics
+     */
+    public synchronized int sweep() {
+        final long now = clock.getTick();
+        boolean restarted = false;
+        int removed = 0;
+
+        for (int i = 0; i < batchSize; i++) {
+            if (iterator == null || !iterator.hasNext()) {
+                // visit every metric at most once per run.
+                if (restarted) {
+                    break;
+                }
+
+                restart();
+                restarted = true;
+
+                if (!iterator.hasNext()) {
+                    break;
+                }
+            }
+
+            final Map.Entry<MetricId, Metric> entry = iterator.next();
+            final MetricId name = entry.getKey();
+            final Metric metric = entry.getValue();
+
+            if (!(metric instanceof Counting) || !filter.matches(name, metric)) {
+                continue;
+            }
+
+            final long count = ((Counting) metric).getCount();
+            final int slot = activity.find(metric);
+
+            if (slot < 0) {
+                activity.insert(-slot - 1, metric, count, now, pass);
+                continue;
+            }
+
+            activity.passes[slot] = pass;
+
+            if (activity.counts[slot] != count) {
+                activity.counts[slot] = count;
+                activity.lastActive[slot] = now;
+                continue;
+            }
+
+            if (now - activity.lastActive[slot] >= idleTimeoutNanos) {
+                // forgotten when the next pass starts.
+                activity.passes[slot] = pass - 1;
+
+                if (registry.remove(name, metric)) {
+                    removed++;
+                }
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Start a new pass over the registry, forgetting about metrics which were not seen in the
+     * previous one since they have been removed.
+     */
+    private void restart() {
+        if (iterator != null) {
+            activity.retain(pass);
+        }
+
+        iterator = registry.getMetrics().entrySet().iterator();
+        pass++;
+    }
+
+    public void start() {
+        if (running.getAndSet(true)) {
+            return;
+        }
+
+        scheduledFuture = executorService.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (final Exception e) {
+                log.error("Error when trying to remove idle metrics", e);
+            }
+        }, interval, interval, unit);
+    }
+
+    public void stop() {
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(false);
+        }
+        if (executorOwner) {
+            executorService.shutdown();
+        }
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * The last seen count of metrics, in an open-addressed table keyed on the identity of the
+     * metric, so that a metric which is replaced under the same name is tracked anew.
+     * <p>
+     * Kept in parallel arrays since it has an entry for every expirable metric of the registry.
+     */
+    private static final class ActivityTable {
+        private static final int MIN_CAPACITY = 16;
+
+        private Metric[] metrics = new Metric[MIN_CAPACITY];
+        private long[] counts = new long[MIN_CAPACITY];
+        private long[] lastActive = new long[MIN_CAPACITY];
+        private int[] passes = new int[MIN_CAPACITY];
+        private int size;
+
+        /**
+         * Find the slot of a metric.
+         *
+         * @return the slot, or {@code -(insertion slot) - 1} if the metric is not in the table
+         */
+        private int find(final Metric metric) {
+            final int mask = metrics.length - 1;
+            int i = spread(System.identityHashCode(metric)) & mask;
+
+            while (true) {
+                final Metric m = metrics[i];
+
+                if (m == metric) {
+                    return i;
+                }
+
+                if (m == null) {
+                    return -i - 1;
+                }
+
+                i = (i + 1) & mask;
+            }
+        }
+
+        private void insert(
+            final int slot, final Metric metric, final long count, final long lastActive,
+            final int pass
+        ) {
+            put(slot, metric, count, lastActive, pass);
+
+            // keep the load factor at or below 3/4.
+            if (++size * 4 > metrics.length * 3) {
+                rehash(metrics.length * 2, pass, true);
+            }
+        }
+
+        /**
+         * Drop the metrics which were not seen in the given pass.
+         */
+        private void retain(final int pass) {
+            int live = 0;
+
+            for (int i = 0; i < metrics.length; i++) {
+                if (metrics[i] != null && passes[i] == pass) {
+                    live++;
+                }
+            }
+
+            int capacity = MIN_CAPACITY;
+
+            while (live * 4 > capacity * 3) {
+                capacity *= 2;
+            }
+
+            rehash(capacity, pass, false);
+        }
+
+        private void rehash(final int capacity, final int pass, final boolean all) {
+            final Metric[] oldMetrics = metrics;
+            final long[] oldCounts = counts;
+            final long[] oldLastActive = lastActive;
+            final int[] oldPasses = passes;
+
+            metrics = new Metric[capacity];
+            counts = new long[capacity];
+            lastActive = new long[capacity];
+            passes = new int[capacity];
+            size = 0;
+
+            for (int i = 0; i < oldMetrics.length; i++) {
+                if (oldMetrics[i] != null && (all || oldPasses[i] == pass)) {
+                    put(-find(oldMetrics[i]) - 1, oldMetrics[i], oldCounts[i], oldLastActive[i],
+                        oldPasses[i]);
+                    size++;
+                }
+            }
+        }
+
+        private void put(
+            final int slot, final Metric metric, final long count, final long lastActive,
+            final int pass
+        ) {
+            this.metrics[slot] = metric;
+            this.counts[slot] = count;
+            this.lastActive[slot] = lastActive;
+            this.passes[slot] = pass;
+        }
+
+        private static int spread(final int h) {
+            return h ^ (h >>> 16);
+        }
+    }
+}
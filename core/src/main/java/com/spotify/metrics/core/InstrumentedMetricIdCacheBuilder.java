@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Timer;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MetricIdCache.CacheBuilder} which instruments the caches built by another builder.
+ * <p>
+ * It will register the metrics with the provided base metric ID and a "what" tag to identify the
+ * metric object: "lookups" and "misses" count calls to the cache and to its loader, "hits" and
+ * "hit-ratio" are derived from them, "load-time" times the loader, and "size" and "evictions" are
+ * the total number of entries in, and evicted from, all live caches built, if they keep track of
+ * it. If no base metric ID is provided a base metric with tag "cache" set to a sequential
+ * "cache-N" value is used.
+ * <p>
+ * A hit only costs an increment of a {@link Counter}, which is striped across threads. Built
+ * caches are only weakly referenced, so discarding them lets them be collected.
+ */
+public class InstrumentedMetricIdCacheBuilder implements MetricIdCache.CacheBuilder {
+    private static final AtomicLong NAME_COUNTER = new AtomicLong();
+
+    private final MetricIdCache.CacheBuilder delegate;
+    private final Counter lookups;
+    private final Counter misses;
+    private final Timer loadTime;
+    private final Set<Reference<MetricIdCache.Cache<?>>> caches = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<MetricIdCache.Cache<?>> collected = new ReferenceQueue<>();
+
+    public InstrumentedMetricIdCacheBuilder(
+        MetricIdCache.CacheBuilder delegate, SemanticMetricRegistry registry
+    ) {
+        this(delegate, registry,
+            new MetricId().tagged("cache", "cache-" + NAME_COUNTER.incrementAndGet()));
+    }
+
+    public InstrumentedMetricIdCacheBuilder(
+        MetricIdCache.CacheBuilder delegate,
+        SemanticMetricRegistry registry,
+        MetricId baseMetricId) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("'delegate' must not be null");
+        }
+
+        final MetricId base = baseMetricId.tagged("unit", "lookup");
+        this.delegate = delegate;
+        this.lookups = registry.counter(base.tagged("what", "lookups"));
+        this.misses = registry.counter(base.tagged("what", "misses"));
+        this.loadTime = registry.timer(baseMetricId.tagged("what", "load-time"));
+
+        registry.register(base.tagged("what", "hits"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return hits();
+            }
+        });
+
+        registry.register(baseMetricId.tagged("what", "hit-ratio", "unit", "%"),
+            new Gauge<Double>() {
+                @Override
+                public Double getValue() {
+                    final long total = lookups.getCount();
+                    return total == 0 ? 0D : (double) hits() / total;
+                }
+            });
+
+        registry.register(baseMetricId.tagged("what", "size", "unit", "id"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return size();
+            }
+        });
+
+        registry.register(baseMetricId.tagged("what", "evictions", "unit", "id"),
+            new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return evictions();
+                }
+            });
+    }
+
+    /**
+     * Instrument caches holding at most the given number of entries.
+     *
+     * @see MetricIdCache.Typed#bounded(long, MetricIdCache.Loader)
+     */
+    public static InstrumentedMetricIdCacheBuilder bounded(
+        final long maximumSize, SemanticMetricRegistry registry, MetricId baseMetricId
+    ) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("'maximumSize' must be positive");
+        }
+
+        return new InstrumentedMetricIdCacheBuilder(new MetricIdCache.CacheBuilder() {
+            @Override
+            public <T> MetricIdCache.Cache<T> build(final MetricIdCache.Loader<T> loader) {
+                return new TinyLfuCache<T>(maximumSize, loader);
+            }
+        }, registry, baseMetricId);
+    }
+
+    @Override
+    public <T> MetricIdCache.Cache<T> build(final MetricIdCache.Loader<T> loader) {
+        final MetricIdCache.Cache<T> cache = delegate.build(new MetricIdCache.Loader<T>() {
+            @Override
+            public MetricId load(MetricId id, T key) {
+                misses.inc();
+
+                final Timer.Context context = loadTime.time();
+
+                try {
+                    return loader.load(id, key);
+                } finally {
+                    context.stop();
+                }
+            }
+        });
+
+        if (cache == null) {
+            throw new IllegalStateException("'delegate' must return non-null values");
+        }
+
+        final InstrumentedCache<T> instrumented = new InstrumentedCache<T>(cache);
+        expunge();
+        caches.add(new WeakReference<MetricIdCache.Cache<?>>(cache, collected));
+        return instrumented;
+    }
+
+    private long hits() {
+        // the counters are not read atomically, so a concurrent miss could make this negative.
+        return Math.max(0L, lookups.getCount() - misses.getCount());
+    }
+
+    private long size() {
+        expunge();
+
+        long size = 0;
+
+        for (final Reference<MetricIdCache.Cache<?>> reference : caches) {
+            final MetricIdCache.Cache<?> cache = reference.get();
+
+            if (cache != null) {
+                size += Math.max(0L, cache.size());
+            }
+        }
+
+        return size;
+    }
+
+    private long evictions() {
+        expunge();
+
+        long evictions = 0;
+
+        for (final Reference<MetricIdCache.Cache<?>> reference : caches) {
+            final MetricIdCache.Cache<?> cache = reference.get();
+
+            if (cache != null) {
+                evictions += Math.max(0L, cache.evictions());
+            }
+        }
+
+        return evictions;
+    }
+
+    /**
+     * Forget about caches which have been collected.
+     */
+    private void expunge() {
+        Reference<? extends MetricIdCache.Cache<?>> reference;
+
+        while ((reference = collected.poll()) != null) {
+            caches.remove(reference);
+        }
+    }
+
+    private final class InstrumentedCache<T> implements MetricIdCache.Cache<T> {
+        private final MetricIdCache.Cache<T> delegate;
+
+        private InstrumentedCache(final MetricIdCache.Cache<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public MetricId get(final MetricId metricId, final T key) throws ExecutionException {
+            lookups.inc();
+            return delegate.get(metricId, key);
+        }
+
+        @Override
+        public void invalidate(final T key) {
+            delegate.invalidate(key);
+        }
+
+        @Override
+        public void invalidateAll() {
+            delegate.invalidateAll();
+        }
+
+        @Override
+        public long size() {
+            return delegate.size();
+        }
+
+        @Override
+        public long evictions() {
+            return delegate.evictions();
+        }
+    }
+}
@@ -42,7 +42,7 @@ import java.util.function.BiConsumer;
  *
  * @author <a href="mailto:ckozak@ckozak.net">Carter Kozak</a>
  */
-final class LockFreeExponentiallyDecayingReservoir implements Reservoir {
+final class LockFreeExponentiallyDecayingReservoir implements Reservoir, MemoryEstimable {
 
     private static final double SECONDS_PER_NANO = .000_000_001D;
     private static final AtomicReferenceFieldUpdater<LockFreeExponentiallyDecayingReservoir, State> stateUpdater =
@@ -176,6 +176,11 @@ final class LockFreeExponentiallyDecayingReservoir implements Reservoir {
         return Math.min(size, state.count);
     }
 
+    @Override
+    public long estimateRetainedBytes() {
+        return MemoryEstimator.RESERVOIR_BYTES + size() * MemoryEstimator.SKIP_LIST_SAMPLE_BYTES;
+    }
+
     @Override
     public void update(long value) {
         long now = clock.getTick();
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Timer;
+
+/**
+ * Rough estimates of the heap retained by metrics, their reservoirs and names.
+ * <p>
+ * Metrics and reservoirs which implement {@link MemoryEstimable} report their own size, which
+ * all the histograms, timers and distributions built by the registry do. Other metrics are
+ * assumed to have the size of the plain codahale implementation of their type, and histograms
+ * with an unknown reservoir the size of a full default reservoir.
+ * <p>
+ * The estimates assume a 64-bit JVM with compressed references, and do not account for strings
+ * since the keys and tag values of names are typically shared between many metrics.
+ */
+public final class MemoryEstimator {
+    /**
+     * A counter and its {@link java.util.concurrent.atomic.LongAdder}.
+     */
+    static final long COUNTER_BYTES = 48;
+
+    /**
+     * A meter, its three moving averages and their adders.
+     */
+    static final long METER_BYTES = 336;
+
+    /**
+     * A gauge whose value is computed on demand.
+     */
+    static final long GAUGE_BYTES = 16;
+
+    /**
+     * A histogram and its count, excluding the reservoir.
+     */
+    static final long HISTOGRAM_BYTES = 56;
+
+    /**
+     * A timer, its meter and its histogram, excluding the reservoir.
+     */
+    static final long TIMER_BYTES = 24 + METER_BYTES + HISTOGRAM_BYTES;
+
+    /**
+     * A sample in a skip list based reservoir: the list node, its share of index nodes, the boxed
+     * priority and the weighted sample.
+     */
+    static final long SKIP_LIST_SAMPLE_BYTES = 88;
+
+    /**
+     * A reservoir without its samples.
+     */
+    static final long RESERVOIR_BYTES = 96;
+
+    /**
+     * The samples a reservoir of unknown type is assumed to retain, which is the size of the
+     * default reservoir.
+     */
+    static final int DEFAULT_RESERVOIR_SAMPLES = 1028;
+
+    /**
+     * A registry entry and a name without tags: the map node, the entries in the type indexes
+     * and the name with its tag map.
+     */
+    static final long ENTRY_BYTES = 160;
+
+    /**
+     * Each tag of a name, which is two references in its tag map.
+     */
+    static final long TAG_BYTES = 8;
+
+    private MemoryEstimator() {
+    }
+
+    /**
+     * Estimate the heap retained by the given metric.
+     *
+     * @param metric the metric to estimate
+     * @return the estimated size in bytes
+     */
+    public static long estimate(final Metric metric) {
+        if (metric instanceof MemoryEstimable) {
+            return ((MemoryEstimable) metric).estimateRetainedBytes();
+        }
+
+        if (metric instanceof Gauge) {
+            return GAUGE_BYTES;
+        } else if (metric instanceof Counter) {
+            return COUNTER_BYTES;
+        } else if (metric instanceof Histogram) {
+            return HISTOGRAM_BYTES + unknownReservoir();
+        } else if (metric instanceof Meter) {
+            return METER_BYTES;
+        } else if (metric instanceof Timer) {
+            return TIMER_BYTES + unknownReservoir();
+        } else if (metric instanceof DerivingMeter) {
+            return METER_BYTES + COUNTER_BYTES;
+        } else if (metric instanceof Distribution) {
+            return SemanticMetricDistribution.ESTIMATED_BYTES;
+        }
+
+        return GAUGE_BYTES;
+    }
+
+    /**
+     * Estimate the heap retained by the given reservoir.
+     *
+     * @param reservoir the reservoir to estimate
+     * @return the estimated size in bytes
+     */
+    public static long estimate(final Reservoir reservoir) {
+        if (reservoir instanceof MemoryEstimable) {
+            return ((MemoryEstimable) reservoir).estimateRetainedBytes();
+        }
+
+        if (reservoir instanceof ExponentiallyDecayingReservoir) {
+            return RESERVOIR_BYTES + reservoir.size() * SKIP_LIST_SAMPLE_BYTES;
+        }
+
+        // array based reservoirs, such as the uniform and sliding window ones.
+        return RESERVOIR_BYTES + reservoir.size() * 8L;
+    }
+
+    /**
+     * Estimate the heap retained by a registry entry with the given name, excluding the metric.
+     *
+     * @param name the name of the entry
+     * @return the estimated size in bytes
+     */
+    public static long estimate(final MetricId name) {
+        return ENTRY_BYTES + name.getTags().size() * TAG_BYTES;
+    }
+
+    private static long unknownReservoir() {
+        return RESERVOIR_BYTES + DEFAULT_RESERVOIR_SAMPLES * SKIP_LIST_SAMPLE_BYTES;
+    }
+}
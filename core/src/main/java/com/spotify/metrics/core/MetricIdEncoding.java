@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A compact binary encoding of metric ids for files shared across processes and restarts.
+ * <p>
+ * An id is encoded as its key followed by each tag key and value, sorted by tag key. Each of
+ * them is encoded as the length of its UTF-8 bytes as a big-endian int, followed by the bytes.
+ * A missing key or tag value is encoded as a length of {@code -1}, so that it can't be confused
+ * with an empty string or the string {@code "null"}.
+ */
+final class MetricIdEncoding {
+    private static final int ABSENT = -1;
+
+    private MetricIdEncoding() {
+    }
+
+    static byte[] encode(final MetricId id) {
+        final TagMap tags = id.tags();
+        final byte[][] parts = new byte[1 + 2 * tags.size()][];
+        int size = 0;
+
+        parts[0] = bytes(id.getKey());
+
+        for (int i = 0; i < tags.size(); i++) {
+            parts[1 + 2 * i] = bytes(tags.keyAt(i));
+            parts[2 + 2 * i] = bytes(tags.valueAt(i));
+        }
+
+        for (final byte[] part : parts) {
+            size += 4 + (part == null ? 0 : part.length);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+
+        for (final byte[] part : parts) {
+            if (part == null) {
+                buffer.putInt(ABSENT);
+            } else {
+                buffer.putInt(part.length).put(part);
+            }
+        }
+
+        return buffer.array();
+    }
+
+    static MetricId decode(final byte[] bytes) {
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        final String key = string(buffer);
+        final Map<String, String> tags = new HashMap<>();
+
+        while (buffer.hasRemaining()) {
+            final String tag = string(buffer);
+            tags.put(tag, string(buffer));
+        }
+
+        return new MetricId(key, tags);
+    }
+
+    private static byte[] bytes(final String string) {
+        return string == null ? null : string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+
+        if (length == ABSENT) {
+            return null;
+        }
+
+        final String string =
+            new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+}
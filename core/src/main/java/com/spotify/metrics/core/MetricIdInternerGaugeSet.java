@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A set of gauges for the effectiveness and size of a {@link MetricIdInterner}.
+ */
+public class MetricIdInternerGaugeSet implements SemanticMetricSet {
+    private final MetricIdInterner interner;
+
+    /**
+     * Creates a new set of gauges for the global interner.
+     */
+    public MetricIdInternerGaugeSet() {
+        this(MetricIdInterner.global());
+    }
+
+    /**
+     * Creates a new set of gauges for the given interner.
+     *
+     * @param interner the interner to report on
+     */
+    public MetricIdInternerGaugeSet(final MetricIdInterner interner) {
+        this.interner = interner;
+    }
+
+    @Override
+    public Map<MetricId, Metric> getMetrics() {
+        final Map<MetricId, Metric> gauges = new HashMap<MetricId, Metric>();
+        final MetricId base = MetricId.build().tagged("component", "metric-id-interner");
+
+        gauges.put(base.tagged("what", "interner-hit-ratio", "unit", "%"), new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                final long hits = interner.hits();
+                final long total = hits + interner.misses();
+                return total == 0 ? 0D : (double) hits / total;
+            }
+        });
+
+        gauges.put(base.tagged("what", "interner-size", "unit", "id"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return interner.size();
+            }
+        });
+
+        gauges.put(base.tagged("what", "interner-strings-size", "unit", "string"),
+            new Gauge<Integer>() {
+                @Override
+                public Integer getValue() {
+                    return interner.stringsSize();
+                }
+            });
+
+        gauges.put(base.tagged("what", "interner-capacity", "unit", "id"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return interner.capacity();
+            }
+        });
+
+        return Collections.unmodifiableMap(gauges);
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A set of gauges for the estimated heap retained by the metrics of a registry.
+ * <p>
+ * The set contains a gauge for the total and one per metric type, tagged with
+ * {@code metric-type}. In addition, {@link #updateGroupGauges()} registers a gauge per group of
+ * metrics with the same value of a tag, {@code what} by default, directly in the registry under
+ * the base name of the set, and removes the ones of groups which no longer contain metrics. The
+ * group gauges are tagged with the name of the grouping tag prefixed by {@code metric-}, such as
+ * {@code metric-what}, and metrics without the tag are grouped under the empty value.
+ * <p>
+ * Estimating visits every metric in the registry, so the estimate is computed at most once per
+ * refresh interval and shared by all gauges. The metrics of the set itself are not part of the
+ * estimate. See {@link MemoryEstimator} for how metrics are estimated.
+ */
+public class MetricMemoryGaugeSet implements SemanticMetricSet {
+    private final SemanticMetricRegistry registry;
+    private final String groupBy;
+    private final String groupTag;
+    private final MetricId base;
+    private final Supplier<Usage> usage;
+    private final Map<MetricId, Metric> gauges;
+    private final ConcurrentMap<String, Gauge<Long>> groupGauges = new ConcurrentHashMap<>();
+    // the gauges of this set, which are skipped when estimating.
+    private final Set<Metric> own = Collections.synchronizedSet(
+        Collections.newSetFromMap(new IdentityHashMap<Metric, Boolean>()));
+
+    /**
+     * Creates a new set of gauges for the given registry, refreshed every minute.
+     *
+     * @param registry the registry to estimate
+     */
+    public MetricMemoryGaugeSet(final SemanticMetricRegistry registry) {
+        this(registry, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Creates a new set of gauges for the given registry, grouping metrics by {@code what}.
+     *
+     * @param registry the registry to estimate
+     * @param refresh  how long an estimate is reused
+     * @param unit     the unit of {@code refresh}
+     */
+    public MetricMemoryGaugeSet(
+        final SemanticMetricRegistry registry, final long refresh, final TimeUnit unit
+    ) {
+        this(registry, "what", refresh, unit);
+    }
+
+    /**
+     * Creates a new set of gauges for the given registry.
+     *
+     * @param registry the registry to estimate
+     * @param groupBy  the tag whose values group metrics
+     * @param refresh  how long an estimate is reused
+     * @param unit     the unit of {@code refresh}
+     */
+    public MetricMemoryGaugeSet(
+        final SemanticMetricRegistry registry, final String groupBy, final long refresh,
+        final TimeUnit unit
+    ) {
+        if (groupBy == null) {
+            throw new IllegalArgumentException("'groupBy' must not be null");
+        }
+
+        this.registry = registry;
+        this.groupBy = groupBy;
+        this.groupTag = "metric-" + groupBy;
+        this.base = MetricId.build().tagged("what", "metric-memory-usage", "unit", "B");
+        this.usage = Suppliers.memoizeWithExpiration(this::estimate, refresh, unit);
+
+        final Map<MetricId, Metric> gauges = new HashMap<MetricId, Metric>();
+
+        gauges.put(base, (Gauge<Long>) () -> usage.get().total);
+
+        for (int i = 0; i < MetricTypes.COUNT; i++) {
+            final int type = i;
+            gauges.put(base.tagged(MetricTypes.TAG, MetricTypes.name(type)),
+                (Gauge<Long>) () -> usage.get().byType[type]);
+        }
+
+        own.addAll(gauges.values());
+        this.gauges = Collections.unmodifiableMap(gauges);
+    }
+
+    @Override
+    public Map<MetricId, Metric> getMetrics() {
+        return gauges;
+    }
+
+    /**
+     * Register gauges for the groups which appeared since the last update, and remove the ones of
+     * groups which disappeared.
+     * <p>
+     * This modifies the registry, so it is not done when the gauges are read. Call it
+     * periodically instead, for example on the executor of a reporter.
+     */
+    public synchronized void updateGroupGauges() {
+        final Usage usage = this.usage.get();
+
+        for (final String group : usage.byGroup.keySet()) {
+            if (groupGauges.containsKey(group)) {
+                continue;
+            }
+
+            final Gauge<Long> gauge = () -> getBytes(group);
+            own.add(gauge);
+
+            try {
+                registry.register(base.tagged(groupTag, group), gauge);
+                groupGauges.put(group, gauge);
+            } catch (final IllegalArgumentException e) {
+                // registered by another set for the same registry.
+                own.remove(gauge);
+            }
+        }
+
+        final Iterator<Map.Entry<String, Gauge<Long>>> it = groupGauges.entrySet().iterator();
+
+        while (it.hasNext()) {
+            final Map.Entry<String, Gauge<Long>> entry = it.next();
+
+            if (!usage.byGroup.containsKey(entry.getKey())) {
+                registry.remove(base.tagged(groupTag, entry.getKey()), entry.getValue());
+                own.remove(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the estimated heap retained by the metrics of the given group, including their names.
+     *
+     * @param group the value of the grouping tag of the metrics, or the empty string for the
+     *              metrics without it
+     * @return the estimated size in bytes
+     */
+    public long getBytes(final String group) {
+        final long[] bytes = usage.get().byGroup.get(group);
+        return bytes == null ? 0L : bytes[0];
+    }
+
+    private Usage estimate() {
+        final Usage usage = new Usage();
+
+        for (final Map.Entry<MetricId, Metric> entry : registry.getMetrics().entrySet()) {
+            final MetricId name = entry.getKey();
+            final Metric metric = entry.getValue();
+
+            if (own.contains(metric)) {
+                continue;
+            }
+
+            final long bytes = MemoryEstimator.estimate(name) + MemoryEstimator.estimate(metric);
+            final int type = MetricTypes.typeOf(metric);
+            final String group = name.getTags().get(groupBy);
+
+            usage.total += bytes;
+
+            if (type != MetricTypes.UNKNOWN) {
+                usage.byType[type] += bytes;
+            }
+
+            usage.byGroup.computeIfAbsent(group == null ? "" : group, g -> new long[1])[0] += bytes;
+        }
+
+        return usage;
+    }
+
+    private static final class Usage {
+        private final long[] byType = new long[MetricTypes.COUNT];
+        private final Map<String, long[]> byGroup = new HashMap<>();
+        private long total;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Timer;
+
+/**
+ * The types of metrics which a registry knows about, in the order in which they are checked.
+ * <p>
+ * Metrics which are tagged with their type use the names of this class as the values of the
+ * {@link #TAG} tag.
+ */
+final class MetricTypes {
+    static final String TAG = "metric-type";
+
+    static final int GAUGE = 0;
+    static final int COUNTER = 1;
+    static final int HISTOGRAM = 2;
+    static final int METER = 3;
+    static final int TIMER = 4;
+    static final int DERIVING_METER = 5;
+    static final int DISTRIBUTION = 6;
+    static final int UNKNOWN = -1;
+
+    static final int COUNT = 7;
+
+    private static final String[] NAMES = {
+        "gauge", "counter", "histogram", "meter", "timer", "deriving-meter", "distribution"
+    };
+
+    private static final Class<?>[] CLASSES = {
+        Gauge.class, Counter.class, Histogram.class, Meter.class, Timer.class,
+        DerivingMeter.class, Distribution.class
+    };
+
+    private MetricTypes() {
+    }
+
+    /**
+     * Get the type of the given metric.
+     *
+     * @return one of the type constants, or {@link #UNKNOWN} if the type is not known.
+     */
+    static int typeOf(final Metric metric) {
+        if (metric instanceof Gauge) {
+            return GAUGE;
+        } else if (metric instanceof Counter) {
+            return COUNTER;
+        } else if (metric instanceof Histogram) {
+            return HISTOGRAM;
+        } else if (metric instanceof Meter) {
+            return METER;
+        } else if (metric instanceof Timer) {
+            return TIMER;
+        } else if (metric instanceof DerivingMeter) {
+            return DERIVING_METER;
+        } else if (metric instanceof Distribution) {
+            return DISTRIBUTION;
+        } else {
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * Get the name of the given type, as used in the values of the {@link #TAG} tag.
+     */
+    static String name(final int type) {
+        return NAMES[type];
+    }
+
+    /**
+     * Get the class which the metrics of the given type are instances of.
+     */
+    static Class<?> type(final int type) {
+        return CLASSES[type];
+    }
+}
@@ -101,6 +101,21 @@ public class OverwritingFixedConcurrentRingBuffer<T> {
         return res;
     }
 
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of elements which have been added and not evicted, up to the capacity.
+     *
+     * @return the number of slots which no longer hold the sentinel element
+     */
+    public int size() {
+        final int written = position.get();
+        // the position wraps around after overflowing.
+        return written < 0 ? capacity : Math.min(written, capacity);
+    }
+
     /**
      * Adds an element to the buffer. Exactly one other element (the oldest) will be evicted.
      *
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Timer;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A set of metrics about the operations of a {@link SemanticMetricRegistry}.
+ * <p>
+ * The set counts lookups through {@link SemanticMetricRegistry#getOrAdd(MetricId,
+ * SemanticMetricBuilder)} which had to create a metric, and registrations which lost a race
+ * against a concurrent registration of the same name. It times the snapshots taken by methods
+ * such as {@link SemanticMetricRegistry#getCounters()}, and has a gauge per metric type for the
+ * number of metrics in the registry, tagged with {@code metric-type}.
+ * <p>
+ * The counters are striped, so recording in them does not contend between threads. Lookups of
+ * existing metrics are not recorded. Statistics are only recorded once the set is installed
+ * with {@link SemanticMetricRegistry#recordStats(RegistryStatsMetricSet)}:
+ * <pre>
+ * final RegistryStatsMetricSet stats = new RegistryStatsMetricSet(registry);
+ * registry.recordStats(stats);
+ * registry.register(MetricId.build(), stats);
+ * </pre>
+ */
+public class RegistryStatsMetricSet implements SemanticMetricSet {
+    private final SemanticMetricRegistry registry;
+    private final Counter misses = new Counter();
+    private final Counter races = new Counter();
+    private final Timer snapshots = new Timer();
+
+    /**
+     * Creates a new set for the given registry.
+     *
+     * @param registry the registry to report on
+     */
+    public RegistryStatsMetricSet(final SemanticMetricRegistry registry) {
+        if (registry == null) {
+            throw new IllegalArgumentException("'registry' must not be null");
+        }
+
+        this.registry = registry;
+    }
+
+    @Override
+    public Map<MetricId, Metric> getMetrics() {
+        final Map<MetricId, Metric> metrics = new HashMap<MetricId, Metric>();
+        final MetricId base = MetricId.build().tagged("component", "semantic-metric-registry");
+
+        metrics.put(base.tagged("what", "get-or-add-misses", "unit", "lookup"), misses);
+        metrics.put(base.tagged("what", "registration-races", "unit", "registration"), races);
+        metrics.put(base.tagged("what", "snapshot-duration", "unit", "ns"), snapshots);
+
+        final MetricId count = base.tagged("what", "metric-count", "unit", "metric");
+
+        for (int i = 0; i < MetricTypes.COUNT; i++) {
+            final int type = i;
+            metrics.put(count.tagged(MetricTypes.TAG, MetricTypes.name(type)),
+                (Gauge<Integer>) () -> registry.count(type));
+        }
+
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * Get the counter of lookups which had to create a metric.
+     */
+    public Counter getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the counter of registrations which found a metric registered concurrently.
+     */
+    public Counter getRaces() {
+        return races;
+    }
+
+    /**
+     * Get the timer of snapshots of the metrics of one type.
+     */
+    public Timer getSnapshots() {
+        return snapshots;
+    }
+
+    void miss() {
+        misses.inc();
+    }
+
+    void race() {
+        races.inc();
+    }
+
+    void snapshot(final long nanos) {
+        snapshots.update(nanos, TimeUnit.NANOSECONDS);
+    }
+}
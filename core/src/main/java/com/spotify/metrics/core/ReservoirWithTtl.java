@@ -31,7 +31,7 @@ import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
-public class ReservoirWithTtl implements Reservoir {
+public class ReservoirWithTtl implements Reservoir, MemoryEstimable {
     private static class ValueAndTimestamp {
         public long value;
         public Instant timestamp;
@@ -52,6 +52,8 @@ public class ReservoirWithTtl implements Reservoir {
 
     private static final int DEFAULT_MINIMUM_RATE = 10;
 
+    private static final long VALUE_AND_TIMESTAMP_BYTES = 48;
+
     private static Constructor snapshotConstructor;
 
     private final int ttlSeconds;
@@ -118,6 +120,14 @@ public class ReservoirWithTtl implements Reservoir {
         return delegate.size();
     }
 
+    @Override
+    public long estimateRetainedBytes() {
+        // a reference per slot of the buffer, and a value with its timestamp per written slot.
+        return MemoryEstimator.RESERVOIR_BYTES + valueBuffer.capacity() * 4L
+               + valueBuffer.size() * VALUE_AND_TIMESTAMP_BYTES
+               + MemoryEstimator.estimate(delegate);
+    }
+
     @Override
     public void update(final long value) {
         valueBuffer.add(new ValueAndTimestamp(value, now.get()));
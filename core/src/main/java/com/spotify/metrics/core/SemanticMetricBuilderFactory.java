@@ -42,7 +42,7 @@ public class SemanticMetricBuilderFactory {
         return new SemanticMetricBuilder<Timer>() {
             @Override
             public Timer newMetric() {
-                return new Timer(reservoirSupplier.get());
+                return new ReservoirTimer(reservoirSupplier.get());
             }
 
             @Override
@@ -57,7 +57,7 @@ public class SemanticMetricBuilderFactory {
         return new SemanticMetricBuilder<Histogram>() {
             @Override
             public Histogram newMetric() {
-                return new Histogram(reservoirSupplier.get());
+                return new ReservoirHistogram(reservoirSupplier.get());
             }
 
             @Override
@@ -66,4 +66,38 @@ public class SemanticMetricBuilderFactory {
             }
         };
     }
+
+    /**
+     * A histogram which keeps a reference to its reservoir to estimate its size.
+     */
+    private static final class ReservoirHistogram extends Histogram implements MemoryEstimable {
+        private final Reservoir reservoir;
+
+        private ReservoirHistogram(final Reservoir reservoir) {
+            super(reservoir);
+            this.reservoir = reservoir;
+        }
+
+        @Override
+        public long estimateRetainedBytes() {
+            return MemoryEstimator.HISTOGRAM_BYTES + MemoryEstimator.estimate(reservoir);
+        }
+    }
+
+    /**
+     * A timer which keeps a reference to its reservoir to estimate its size.
+     */
+    private static final class ReservoirTimer extends Timer implements MemoryEstimable {
+        private final Reservoir reservoir;
+
+        private ReservoirTimer(final Reservoir reservoir) {
+            super(reservoir);
+            this.reservoir = reservoir;
+        }
+
+        @Override
+        public long estimateRetainedBytes() {
+            return MemoryEstimator.TIMER_BYTES + MemoryEstimator.estimate(reservoir);
+        }
+    }
 }
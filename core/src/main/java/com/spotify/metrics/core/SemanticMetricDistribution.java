@@ -47,9 +47,17 @@ import java.util.concurrent.atomic.AtomicReference;
  * From P99.9 to P99.999 the error rate is slightly higher than 2%.
  *
  */
-public class SemanticMetricDistribution implements Distribution {
+public class SemanticMetricDistribution implements Distribution, MemoryEstimable {
 
     private static final int COMPRESSION_DEFAULT_LEVEL = 100;
+
+    /**
+     * The merging digest allocates its centroids and its buffer of unmerged values up front, as
+     * arrays of {@code 2 * compression + 10} centroids and {@code 5 * compression} values.
+     */
+    static final long ESTIMATED_BYTES =
+        (2 * COMPRESSION_DEFAULT_LEVEL + 10) * 16 + 5 * COMPRESSION_DEFAULT_LEVEL * 20 + 256;
+
     private final AtomicReference<TDigest> distRef;
 
     SemanticMetricDistribution() {
@@ -79,6 +87,11 @@ public class SemanticMetricDistribution implements Distribution {
         return distRef.get().size();
     }
 
+    @Override
+    public long estimateRetainedBytes() {
+        return ESTIMATED_BYTES;
+    }
+
     @VisibleForTesting
     TDigest tDigest() {
         return distRef.get();
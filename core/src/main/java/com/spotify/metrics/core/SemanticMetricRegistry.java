@@ -37,9 +37,13 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.Reservoir;
 import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
@@ -49,6 +53,7 @@ import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 
 /**
@@ -58,9 +63,25 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
     private final ConcurrentMap<MetricId, Metric> metrics;
     private final List<SemanticMetricRegistryListener> listeners;
     private final Supplier<Reservoir> defaultReservoirSupplier;
+    private final SemanticMetricBuilder<Histogram> defaultHistogramBuilder;
+    private final SemanticMetricBuilder<Timer> defaultTimerBuilder;
+    // null if the map of metrics was provided by the caller, who might modify it directly.
+    private final TypeIndex types;
+    // created on first lookup by fingerprint.
+    private volatile FingerprintIndex fingerprints;
+    // created on first use of a TagQuery, if the map of metrics is owned by the registry.
+    private volatile TagIndex tags;
+    private volatile CardinalityLimiter limiter;
+    // delivers listener events on a background thread while set.
+    private volatile AsyncListenerDispatcher dispatcher;
+
+    private volatile RegistryStatsMetricSet stats;
 
     /**
      * Creates a new {@link SemanticMetricRegistry}.
+     * <p>
+     * Since the given map might be modified without going through the registry, typed getters
+     * such as {@link #getCounters()} visit every metric in it.
      */
     public SemanticMetricRegistry(final ConcurrentMap<MetricId, Metric> metrics) {
         this(metrics, () -> LockFreeExponentiallyDecayingReservoir.builder().build());
@@ -72,23 +93,39 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
     public SemanticMetricRegistry() {
         // This is only for backward compatibility purpose. After removing the "buildMap" method
         // we should call this(new ConcurrentHashMap<MetricId, Metric>()) instead.
-        this(new ConcurrentHashMap<MetricId, Metric>(),
-            () -> LockFreeExponentiallyDecayingReservoir.builder().build());
+        this(() -> LockFreeExponentiallyDecayingReservoir.builder().build());
     }
 
     public SemanticMetricRegistry(final Supplier<Reservoir> defaultReservoirSupplier) {
-        this.metrics = new ConcurrentHashMap<MetricId, Metric>();
-        this.listeners = new CopyOnWriteArrayList<>();
-        this.defaultReservoirSupplier = defaultReservoirSupplier;
+        this(new ConcurrentHashMap<MetricId, Metric>(), defaultReservoirSupplier,
+            new TypeIndex());
     }
 
+    /**
+     * Creates a new {@link SemanticMetricRegistry}.
+     *
+     * @see #SemanticMetricRegistry(ConcurrentMap)
+     */
     public SemanticMetricRegistry(
         final ConcurrentMap<MetricId, Metric> metrics,
         final Supplier<Reservoir> defaultReservoirSupplier
+    ) {
+        this(metrics, defaultReservoirSupplier, null);
+    }
+
+    private SemanticMetricRegistry(
+        final ConcurrentMap<MetricId, Metric> metrics,
+        final Supplier<Reservoir> defaultReservoirSupplier,
+        final TypeIndex types
     ) {
         this.metrics = metrics;
+        this.types = types;
         this.listeners = new CopyOnWriteArrayList<>();
         this.defaultReservoirSupplier = defaultReservoirSupplier;
+        this.defaultHistogramBuilder =
+            SemanticMetricBuilderFactory.histogramWithReservoir(defaultReservoirSupplier);
+        this.defaultTimerBuilder =
+            SemanticMetricBuilderFactory.timerWithReservoir(defaultReservoirSupplier);
     }
 
     /**
@@ -105,6 +142,16 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
         return new ConcurrentHashMap<MetricId, Metric>();
     }
 
+    /**
+     * Get a view of this registry which prefixes the names of all metrics it looks up.
+     *
+     * @param prefix the key and tags to join with every name looked up through the scope
+     * @return a scope storing metrics in this registry
+     */
+    public SemanticMetricScope scoped(final MetricId prefix) {
+        return new SemanticMetricScope(this, prefix);
+    }
+
     /**
      * Given a {@link Metric}, registers it under the given name.
      *
@@ -122,7 +169,7 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
         if (metric instanceof SemanticMetricSet) {
             registerAll(name, (SemanticMetricSet) metric);
         } else {
-            final Metric existing = metrics.putIfAbsent(name, metric);
+            final Metric existing = putIfAbsent(name, metric);
             if (existing == null) {
                 onMetricAdded(name, metric);
             } else {
@@ -142,6 +189,46 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
         registerAll(MetricId.EMPTY, metrics);
     }
 
+    /**
+     * Given a map of metrics, registers them in a single pass.
+     * <p>
+     * Metric sets in the map are expanded, prefixing the names of their metrics with the name they
+     * are mapped to. Listeners implementing {@link SemanticMetricRegistryBatchListener} are
+     * notified of all added metrics at once, other listeners through the per-metric callbacks.
+     * <p>
+     * If a name is already registered, the metrics before it remain registered and listeners are
+     * notified of them before the exception is thrown.
+     *
+     * @param metrics the metrics to register by name
+     * @throws IllegalArgumentException if any of the names are already registered
+     */
+    public void registerAll(final Map<MetricId, ? extends Metric> metrics)
+        throws IllegalArgumentException {
+        if (metrics == null) {
+            throw new IllegalArgumentException("'metrics' must not be null");
+        }
+
+        final Map<MetricId, Metric> expanded = new LinkedHashMap<>(metrics.size());
+        expand(MetricId.EMPTY, metrics, expanded);
+
+        final Map<MetricId, Metric> added = new LinkedHashMap<>(expanded.size());
+
+        try {
+            for (final Map.Entry<MetricId, Metric> entry : expanded.entrySet()) {
+                if (putIfAbsent(entry.getKey(), entry.getValue()) != null) {
+                    throw new IllegalArgumentException(
+                        "A metric named " + entry.getKey() + " already exists");
+                }
+
+                added.put(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            if (!added.isEmpty()) {
+                onMetricsAdded(added);
+            }
+        }
+    }
+
     /**
      * Creates a new {@link Counter} and registers it under the given name.
      *
@@ -152,6 +239,45 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
         return getOrAdd(name, SemanticMetricBuilder.COUNTERS);
     }
 
+    /**
+     * Same as {@link #counter(MetricId)}, but takes the name from a {@link MetricId.Builder}.
+     *
+     * @param name a builder holding the name of the metric
+     * @return a new or existing {@link Counter}
+     * @see #getOrAdd(MetricId.Builder, SemanticMetricBuilder)
+     */
+    public Counter counter(final MetricId.Builder name) {
+        return getOrAdd(name, SemanticMetricBuilder.COUNTERS);
+    }
+
+    /**
+     * Return the arena counter registered under this name, or create and register a new one
+     * which mirrors its count to a slot of the given arena.
+     *
+     * @param name  the name of the metric
+     * @param arena the arena to allocate a slot from when the counter is created
+     * @return a new or pre-existing {@link Counter}
+     * @throws IllegalArgumentException if the name is used for a metric which is not an arena
+     *                                  counter
+     * @throws IllegalStateException    if a new counter is needed and the arena is full
+     */
+    public Counter counter(final MetricId name, final CounterArena arena) {
+        return getOrAdd(name, arena.counterBuilder(name));
+    }
+
+    /**
+     * Return the arena gauge registered under this name, or create and register a new one
+     * which mirrors its value to a slot of the given arena.
+     *
+     * @param name  the name of the metric
+     * @param arena the arena to allocate a slot from when the gauge is created
+     * @return a new or pre-existing gauge
+     * @throws IllegalStateException if a new gauge is needed and the arena is full
+     */
+    public CounterArena.ArenaGauge gauge(final MetricId name, final CounterArena arena) {
+        return getOrAdd(name, arena.gaugeBuilder(name));
+    }
+
     /**
      * Creates a new {@link Histogram} and registers it under the given name.
      *
@@ -159,8 +285,18 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
      * @return a new {@link Histogram}
      */
     public Histogram histogram(final MetricId name) {
-        return getOrAdd(name,
-            SemanticMetricBuilderFactory.histogramWithReservoir(defaultReservoirSupplier));
+        return getOrAdd(name, defaultHistogramBuilder);
+    }
+
+    /**
+     * Same as {@link #histogram(MetricId)}, but takes the name from a {@link MetricId.Builder}.
+     *
+     * @param name a builder holding the name of the metric
+     * @return a new or existing {@link Histogram}
+     * @see #getOrAdd(MetricId.Builder, SemanticMetricBuilder)
+     */
+    public Histogram histogram(final MetricId.Builder name) {
+        return getOrAdd(name, defaultHistogramBuilder);
     }
 
     /**
@@ -196,6 +332,17 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
         return getOrAdd(name, SemanticMetricBuilder.METERS);
     }
 
+    /**
+     * Same as {@link #meter(MetricId)}, but takes the name from a {@link MetricId.Builder}.
+     *
+     * @param name a builder holding the name of the metric
+     * @return a new or existing {@link Meter}
+     * @see #getOrAdd(MetricId.Builder, SemanticMetricBuilder)
+     */
+    public Meter meter(final MetricId.Builder name) {
+        return getOrAdd(name, SemanticMetricBuilder.METERS);
+    }
+
     /**
      * Creates a new {@link Timer} and registers it under the given name.
      *
@@ -203,8 +350,18 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
      * @return a new {@link Timer}
      */
     public Timer timer(final MetricId name) {
-        return getOrAdd(name,
-            SemanticMetricBuilderFactory.timerWithReservoir(defaultReservoirSupplier));
+        return getOrAdd(name, defaultTimerBuilder);
+    }
+
+    /**
+     * Same as {@link #timer(MetricId)}, but takes the name from a {@link MetricId.Builder}.
+     *
+     * @param name a builder holding the name of the metric
+     * @return a new or existing {@link Timer}
+     * @see #getOrAdd(MetricId.Builder, SemanticMetricBuilder)
+     */
+    public Timer timer(final MetricId.Builder name) {
+        return getOrAdd(name, defaultTimerBuilder);
     }
 
 
@@ -224,6 +381,185 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
         return getOrAdd(name, SemanticMetricBuilder.DERIVING_METERS);
     }
 
+    /**
+     * Creates a lookup of metrics for the ids of the given template, which are created and
+     * registered on first access.
+     * <p>
+     * Metrics are cached by the lookup, and will not be looked up again if they are removed from
+     * this registry. Call {@link MetricIdTemplate.Lookup#invalidateAll()} after removing metrics
+     * belonging to the template.
+     *
+     * @param template the template to build names of metrics from
+     * @param builder  the builder used to create metrics which do not exist
+     * @param <T>      the type of the metrics
+     * @return a new lookup of metrics
+     */
+    public <T extends Metric> MetricIdTemplate.Lookup<T> template(
+        final MetricIdTemplate template, final SemanticMetricBuilder<T> builder
+    ) {
+        return template.lookup(id -> getOrAdd(id, builder));
+    }
+
+    /**
+     * Creates a lookup of {@link Counter}s for the ids of the given template.
+     *
+     * @see #template(MetricIdTemplate, SemanticMetricBuilder)
+     */
+    public MetricIdTemplate.Lookup<Counter> counters(final MetricIdTemplate template) {
+        return template(template, SemanticMetricBuilder.COUNTERS);
+    }
+
+    /**
+     * Creates a lookup of {@link Meter}s for the ids of the given template.
+     *
+     * @see #template(MetricIdTemplate, SemanticMetricBuilder)
+     */
+    public MetricIdTemplate.Lookup<Meter> meters(final MetricIdTemplate template) {
+        return template(template, SemanticMetricBuilder.METERS);
+    }
+
+    /**
+     * Creates a lookup of {@link Histogram}s for the ids of the given template.
+     *
+     * @see #template(MetricIdTemplate, SemanticMetricBuilder)
+     */
+    public MetricIdTemplate.Lookup<Histogram> histograms(final MetricIdTemplate template) {
+        return template(template, defaultHistogramBuilder);
+    }
+
+    /**
+     * Creates a lookup of {@link Timer}s for the ids of the given template.
+     *
+     * @see #template(MetricIdTemplate, SemanticMetricBuilder)
+     */
+    public MetricIdTemplate.Lookup<Timer> timers(final MetricIdTemplate template) {
+        return template(template, defaultTimerBuilder);
+    }
+
+    /**
+     * Creates or gets the metrics for every constant of an enum.
+     * <p>
+     * All metrics are registered up front. Like with templates, metrics which are removed from
+     * this registry afterwards are still returned by the enum metrics.
+     *
+     * @param ids     the ids of the metrics
+     * @param builder the builder used to create metrics which do not exist
+     * @param <E>     the enum type keying the metrics
+     * @param <T>     the type of the metrics
+     * @return the metrics for every constant
+     */
+    public <E extends Enum<E>, T extends Metric> EnumMetrics<E, T> enumMetrics(
+        final EnumMetricIdCache<E> ids, final SemanticMetricBuilder<T> builder
+    ) {
+        final E[] constants = ids.getType().getEnumConstants();
+        final Object[] metrics = new Object[constants.length];
+
+        for (final E constant : constants) {
+            metrics[constant.ordinal()] = getOrAdd(ids.get(constant), builder);
+        }
+
+        return new EnumMetrics<E, T>(ids, metrics);
+    }
+
+    /**
+     * Creates or gets a {@link Counter} for every constant of an enum.
+     *
+     * @see #enumMetrics(EnumMetricIdCache, SemanticMetricBuilder)
+     */
+    public <E extends Enum<E>> EnumMetrics<E, Counter> counters(final EnumMetricIdCache<E> ids) {
+        return enumMetrics(ids, SemanticMetricBuilder.COUNTERS);
+    }
+
+    /**
+     * Creates or gets a {@link Meter} for every constant of an enum.
+     *
+     * @see #enumMetrics(EnumMetricIdCache, SemanticMetricBuilder)
+     */
+    public <E extends Enum<E>> EnumMetrics<E, Meter> meters(final EnumMetricIdCache<E> ids) {
+        return enumMetrics(ids, SemanticMetricBuilder.METERS);
+    }
+
+    /**
+     * Creates or gets a {@link Histogram} for every constant of an enum.
+     *
+     * @see #enumMetrics(EnumMetricIdCache, SemanticMetricBuilder)
+     */
+    public <E extends Enum<E>> EnumMetrics<E, Histogram> histograms(
+        final EnumMetricIdCache<E> ids
+    ) {
+        return enumMetrics(ids, defaultHistogramBuilder);
+    }
+
+    /**
+     * Creates or gets a {@link Timer} for every constant of an enum.
+     *
+     * @see #enumMetrics(EnumMetricIdCache, SemanticMetricBuilder)
+     */
+    public <E extends Enum<E>> EnumMetrics<E, Timer> timers(final EnumMetricIdCache<E> ids) {
+        return enumMetrics(ids, defaultTimerBuilder);
+    }
+
+    /**
+     * Get the metric with the given {@link MetricId#fingerprint() fingerprint}.
+     * <p>
+     * The first lookup by fingerprint builds an index of all metrics in the registry, which is
+     * then maintained as metrics are added and removed.
+     *
+     * @param fingerprint the fingerprint of the name of the metric
+     * @return the metric, or {@code null} if no metric has a name with the given fingerprint
+     * @throws IllegalStateException if the names of multiple metrics share the fingerprint, use
+     *                               {@link #getNames(long)} to tell them apart
+     */
+    public Metric getMetric(final long fingerprint) {
+        final List<MetricId> names = fingerprintIndex().get(fingerprint);
+
+        if (names.isEmpty()) {
+            return null;
+        }
+
+        if (names.size() == 1) {
+            final Metric metric = metrics.get(names.get(0));
+
+            if (metric == null) {
+                unindexFingerprint(names.get(0));
+            }
+
+            return metric;
+        }
+
+        final List<MetricId> existing = getNames(fingerprint);
+
+        if (existing.size() > 1) {
+            throw new IllegalStateException(
+                "fingerprint " + fingerprint + " is shared by multiple metrics: " + existing);
+        }
+
+        return existing.isEmpty() ? null : metrics.get(existing.get(0));
+    }
+
+    /**
+     * Get the names of all metrics with the given {@link MetricId#fingerprint() fingerprint}.
+     *
+     * @param fingerprint the fingerprint of the names
+     * @return the names with the given fingerprint, which has more than one element only if the
+     * fingerprints of distinct names collide
+     * @see #getMetric(long)
+     */
+    public List<MetricId> getNames(final long fingerprint) {
+        final List<MetricId> names = new ArrayList<>();
+
+        for (final MetricId name : fingerprintIndex().get(fingerprint)) {
+            if (metrics.containsKey(name)) {
+                names.add(name);
+            } else {
+                // drop ids which linger after racing with a removal.
+                unindexFingerprint(name);
+            }
+        }
+
+        return Collections.unmodifiableList(names);
+    }
+
     /**
      * Removes the metric with the given name.
      *
@@ -231,7 +567,7 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
      * @return whether or not the metric was removed
      */
     public boolean remove(final MetricId name) {
-        final Metric metric = metrics.remove(name);
+        final Metric metric = removeMetric(name, null);
         if (metric != null) {
             onMetricRemoved(name, metric);
             return true;
@@ -239,12 +575,92 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
         return false;
     }
 
+    /**
+     * Removes the metric with the given name, if it is the given metric.
+     *
+     * @param name   the name of the metric
+     * @param metric the metric expected to be registered under the name
+     * @return whether or not the metric was removed
+     */
+    public boolean remove(final MetricId name, final Metric metric) {
+        if (removeMetric(name, metric) != null) {
+            onMetricRemoved(name, metric);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Limits the number of metrics which can be created through
+     * {@link #getOrAdd(MetricId, SemanticMetricBuilder)} and the methods using it, such as
+     * {@link #counter(MetricId)}.
+     * <p>
+     * The limiter should be installed before metrics are registered, existing metrics are
+     * counted when it is installed. Its rejection counter is registered in this registry.
+     *
+     * @param limiter the limiter to use
+     * @see CardinalityLimiter
+     */
+    public void limitCardinality(final CardinalityLimiter limiter) {
+        if (limiter == null) {
+            throw new IllegalArgumentException("'limiter' must not be null");
+        }
+
+        synchronized (this) {
+            if (this.limiter != null) {
+                throw new IllegalStateException("cardinality is already limited");
+            }
+
+            for (final MetricId name : metrics.keySet()) {
+                limiter.added(name);
+            }
+
+            this.limiter = limiter;
+        }
+
+        register(limiter.getRejectionsId(), limiter.getRejections());
+    }
+
+    /**
+     * Records statistics about the operations of this registry in the given set.
+     * <p>
+     * The set is not registered by this method, register it to report the statistics. Until
+     * statistics are recorded, the registry does not pay for them.
+     *
+     * @param stats the set to record statistics in
+     * @see RegistryStatsMetricSet
+     */
+    public void recordStats(final RegistryStatsMetricSet stats) {
+        if (stats == null) {
+            throw new IllegalArgumentException("'stats' must not be null");
+        }
+
+        synchronized (this) {
+            if (this.stats != null) {
+                throw new IllegalStateException("stats are already recorded");
+            }
+
+            this.stats = stats;
+        }
+    }
+
     /**
      * Removes all metrics which match the given filter.
      *
      * @param filter a filter
      */
     public void removeMatching(final SemanticMetricFilter filter) {
+        if (filter instanceof TagQuery && types != null) {
+            final List<MetricId> names = new ArrayList<>();
+            forEachTagged((TagQuery) filter, (name, metric) -> names.add(name));
+
+            for (final MetricId name : names) {
+                remove(name);
+            }
+
+            return;
+        }
+
         for (final Map.Entry<MetricId, Metric> entry : metrics.entrySet()) {
             if (filter.matches(entry.getKey(), entry.getValue())) {
                 remove(entry.getKey());
@@ -252,6 +668,40 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
         }
     }
 
+    /**
+     * Removes all metrics which have the given tag.
+     * <p>
+     * Unless this registry was created on a provided map, this is answered from an index of tags
+     * which is built the first time a {@link TagQuery} is used.
+     *
+     * @param key   the key of the tag
+     * @param value the value of the tag
+     * @see #removeMatching(SemanticMetricFilter)
+     */
+    public void removeByTag(final String key, final String value) {
+        removeMatching(TagQuery.of(key, value));
+    }
+
+    /**
+     * Deliver listener events through the given dispatcher, called when it is started.
+     */
+    synchronized void setListenerDispatcher(final AsyncListenerDispatcher dispatcher) {
+        if (this.dispatcher != null) {
+            throw new IllegalStateException("A listener dispatcher is already started");
+        }
+
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Stop delivering listener events through the given dispatcher, called when it is stopped.
+     */
+    synchronized void clearListenerDispatcher(final AsyncListenerDispatcher dispatcher) {
+        if (this.dispatcher == dispatcher) {
+            this.dispatcher = null;
+        }
+    }
+
     /**
      * Adds a {@link SemanticMetricRegistryListener} to a collection of listeners that will be
      * notified on
@@ -264,6 +714,17 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
     public void addListener(final SemanticMetricRegistryListener listener) {
         listeners.add(listener);
 
+        if (listener instanceof SemanticMetricRegistryBatchListener) {
+            final Map<MetricId, Metric> existing = new LinkedHashMap<>(metrics);
+
+            if (!existing.isEmpty()) {
+                ((SemanticMetricRegistryBatchListener) listener)
+                    .onMetricsAdded(Collections.unmodifiableMap(existing));
+            }
+
+            return;
+        }
+
         for (final Map.Entry<MetricId, Metric> entry : metrics.entrySet()) {
             notifyListenerOfAddedMetric(listener, entry.getValue(), entry.getKey());
         }
@@ -285,6 +746,10 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
      * @return the names of all the metrics
      */
     public SortedSet<MetricId> getNames() {
+        if (types != null) {
+            return ImmutableSortedSet.copyOfSorted(types.names());
+        }
+
         return Collections.unmodifiableSortedSet(new TreeSet<MetricId>(metrics.keySet()));
     }
 
@@ -409,38 +874,189 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
         return getMetrics(Distribution.class, filter);
     }
 
-
     /**
-     * Atomically adds the given metric to the set of metrics.
-     * <p>
-     * A side effect of this method is the calling of {@link #onMetricAdded(MetricId, Metric)} if
-     * a new
-     * metric is added.
+     * Calls the given consumer with every gauge in the registry and its name, in no particular
+     * order.
      * <p>
-     * This method should only be used on non-{@code SemanticMetricSet} metrics.
+     * Unlike {@link #getGauges()}, this neither copies nor sorts the gauges.
      *
-     * @param name   Name of the metric to atomically add if absent.
-     * @param metric The metric to atomically add if absent.
-     * @return {@code null} if the metric was added, or the previously mapped metric.
+     * @param consumer the consumer to call for every gauge
      */
-    protected Metric addIfAbsent(final MetricId name, final Metric metric) {
-        final Metric previous = metrics.putIfAbsent(name, metric);
+    @SuppressWarnings("rawtypes")
+    public void forEachGauge(final BiConsumer<MetricId, Gauge> consumer) {
+        forEachGauge(SemanticMetricFilter.ALL, consumer);
+    }
 
-        if (previous == null) {
-            onMetricAdded(name, metric);
-            return null;
-        }
+    /**
+     * Calls the given consumer with every gauge in the registry and its name which match the
+     * given filter, in no particular order.
+     *
+     * @param filter   the metric filter to match
+     * @param consumer the consumer to call for every gauge
+     */
+    @SuppressWarnings("rawtypes")
+    public void forEachGauge(
+        final SemanticMetricFilter filter, final BiConsumer<MetricId, Gauge> consumer
+    ) {
+        forEachMetric(Gauge.class, filter, consumer);
+    }
 
-        return previous;
+    /**
+     * Calls the given consumer with every counter in the registry and its name, in no particular
+     * order.
+     *
+     * @param consumer the consumer to call for every counter
+     */
+    public void forEachCounter(final BiConsumer<MetricId, Counter> consumer) {
+        forEachCounter(SemanticMetricFilter.ALL, consumer);
     }
 
-    @SuppressWarnings("unchecked")
-    public <T extends Metric> T getOrAdd(
-        final MetricId name, final SemanticMetricBuilder<T> builder
+    /**
+     * Calls the given consumer with every counter in the registry and its name which match the
+     * given filter, in no particular order.
+     *
+     * @param filter   the metric filter to match
+     * @param consumer the consumer to call for every counter
+     */
+    public void forEachCounter(
+        final SemanticMetricFilter filter, final BiConsumer<MetricId, Counter> consumer
     ) {
-        final Metric metric = metrics.get(name);
+        forEachMetric(Counter.class, filter, consumer);
+    }
 
-        if (metric != null) {
+    /**
+     * Calls the given consumer with every histogram in the registry and its name, in no
+     * particular order.
+     *
+     * @param consumer the consumer to call for every histogram
+     */
+    public void forEachHistogram(final BiConsumer<MetricId, Histogram> consumer) {
+        forEachHistogram(SemanticMetricFilter.ALL, consumer);
+    }
+
+    /**
+     * Calls the given consumer with every histogram in the registry and its name which match the
+     * given filter, in no particular order.
+     *
+     * @param filter   the metric filter to match
+     * @param consumer the consumer to call for every histogram
+     */
+    public void forEachHistogram(
+        final SemanticMetricFilter filter, final BiConsumer<MetricId, Histogram> consumer
+    ) {
+        forEachMetric(Histogram.class, filter, consumer);
+    }
+
+    /**
+     * Calls the given consumer with every meter in the registry and its name, in no particular
+     * order.
+     *
+     * @param consumer the consumer to call for every meter
+     */
+    public void forEachMeter(final BiConsumer<MetricId, Meter> consumer) {
+        forEachMeter(SemanticMetricFilter.ALL, consumer);
+    }
+
+    /**
+     * Calls the given consumer with every meter in the registry and its name which match the
+     * given filter, in no particular order.
+     *
+     * @param filter   the metric filter to match
+     * @param consumer the consumer to call for every meter
+     */
+    public void forEachMeter(
+        final SemanticMetricFilter filter, final BiConsumer<MetricId, Meter> consumer
+    ) {
+        forEachMetric(Meter.class, filter, consumer);
+    }
+
+    /**
+     * Calls the given consumer with every timer in the registry and its name, in no particular
+     * order.
+     *
+     * @param consumer the consumer to call for every timer
+     */
+    public void forEachTimer(final BiConsumer<MetricId, Timer> consumer) {
+        forEachTimer(SemanticMetricFilter.ALL, consumer);
+    }
+
+    /**
+     * Calls the given consumer with every timer in the registry and its name which match the
+     * given filter, in no particular order.
+     *
+     * @param filter   the metric filter to match
+     * @param consumer the consumer to call for every timer
+     */
+    public void forEachTimer(
+        final SemanticMetricFilter filter, final BiConsumer<MetricId, Timer> consumer
+    ) {
+        forEachMetric(Timer.class, filter, consumer);
+    }
+
+    /**
+     * Calls the given consumer with every deriving meter in the registry and its name which match
+     * the given filter, in no particular order.
+     *
+     * @param filter   the metric filter to match
+     * @param consumer the consumer to call for every deriving meter
+     */
+    public void forEachDerivingMeter(
+        final SemanticMetricFilter filter, final BiConsumer<MetricId, DerivingMeter> consumer
+    ) {
+        forEachMetric(DerivingMeter.class, filter, consumer);
+    }
+
+    /**
+     * Calls the given consumer with every distribution in the registry and its name which match
+     * the given filter, in no particular order.
+     *
+     * @param filter   the metric filter to match
+     * @param consumer the consumer to call for every distribution
+     */
+    public void forEachDistribution(
+        final SemanticMetricFilter filter, final BiConsumer<MetricId, Distribution> consumer
+    ) {
+        forEachMetric(Distribution.class, filter, consumer);
+    }
+
+
+    /**
+     * Atomically adds the given metric to the set of metrics.
+     * <p>
+     * A side effect of this method is the calling of {@link #onMetricAdded(MetricId, Metric)} if
+     * a new
+     * metric is added.
+     * <p>
+     * This method should only be used on non-{@code SemanticMetricSet} metrics.
+     *
+     * @param name   Name of the metric to atomically add if absent.
+     * @param metric The metric to atomically add if absent.
+     * @return {@code null} if the metric was added, or the previously mapped metric.
+     */
+    protected Metric addIfAbsent(final MetricId name, final Metric metric) {
+        final Metric previous = putIfAbsent(name, metric);
+
+        if (previous == null) {
+            onMetricAdded(name, metric);
+            return null;
+        }
+
+        final RegistryStatsMetricSet stats = this.stats;
+
+        if (stats != null) {
+            stats.race();
+        }
+
+        return previous;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Metric> T getOrAdd(
+        final MetricId name, final SemanticMetricBuilder<T> builder
+    ) {
+        final Metric metric = metrics.get(name);
+
+        if (metric != null) {
             if (!builder.isInstance(metric)) {
                 throw new IllegalArgumentException(
                     name + " is already used for a different type of metric");
@@ -449,6 +1065,22 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
             return (T) metric;
         }
 
+        final CardinalityLimiter limiter = this.limiter;
+
+        if (limiter != null) {
+            final CardinalityLimiter.Overflow overflow = limiter.reject(name);
+
+            if (overflow != null) {
+                return getOrAddOverflow(limiter, overflow, builder);
+            }
+        }
+
+        final RegistryStatsMetricSet stats = this.stats;
+
+        if (stats != null) {
+            stats.miss();
+        }
+
         final T addition = builder.newMetric();
 
         if (addition instanceof SemanticMetricSet) {
@@ -476,10 +1108,160 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
         return (T) previous;
     }
 
+    /**
+     * Get or add the overflow metric of the type built by the given builder.
+     * <p>
+     * The type is only known once a metric is built, so the existing overflow metrics of all
+     * types are checked first.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Metric> T getOrAddOverflow(
+        final CardinalityLimiter limiter, final CardinalityLimiter.Overflow overflow,
+        final SemanticMetricBuilder<T> builder
+    ) {
+        for (int type = 0; type < MetricTypes.COUNT; type++) {
+            final Metric existing = overflow.get(type);
+
+            if (existing != null && builder.isInstance(existing)) {
+                return (T) existing;
+            }
+        }
+
+        final T addition = builder.newMetric();
+        final int type = MetricTypes.typeOf(addition);
+
+        if (type == MetricTypes.UNKNOWN) {
+            throw new IllegalArgumentException("Unknown metric type: " + addition.getClass());
+        }
+        final MetricId name = limiter.markOverflow(overflow, type);
+
+        final T metric = getOrAdd(name, new SemanticMetricBuilder<T>() {
+            @Override
+            public T newMetric() {
+                return addition;
+            }
+
+            @Override
+            public boolean isInstance(final Metric metric) {
+                return builder.isInstance(metric);
+            }
+        });
+
+        overflow.set(type, metric);
+        return metric;
+    }
+
+    /**
+     * Same as {@link #getOrAdd(MetricId, SemanticMetricBuilder)}, but takes the id from a
+     * {@link MetricId.Builder}.
+     * <p>
+     * If the metric is already registered, it is looked up without building a {@link MetricId},
+     * unless the map of metrics was given to the registry, since only the map created by the
+     * registry is known to accept the lookup key in place of an id.
+     *
+     * @param name    a builder holding the name of the metric
+     * @param builder the builder used to create the metric if it does not exist
+     * @param <T>     the type of the metric
+     * @return the existing or newly created metric
+     */
     @SuppressWarnings("unchecked")
+    public <T extends Metric> T getOrAdd(
+        final MetricId.Builder name, final SemanticMetricBuilder<T> builder
+    ) {
+        if (types == null) {
+            return getOrAdd(name.build(), builder);
+        }
+
+        final Metric metric = metrics.get(name.lookupKey());
+
+        if (metric != null) {
+            if (!builder.isInstance(metric)) {
+                throw new IllegalArgumentException(
+                    name.build() + " is already used for a different type of metric");
+            }
+
+            return (T) metric;
+        }
+
+        return getOrAdd(name.build(), builder);
+    }
+
     protected <T extends Metric> SortedMap<MetricId, T> getMetrics(
         final Class<T> klass, final SemanticMetricFilter filter
     ) {
+        final RegistryStatsMetricSet stats = this.stats;
+
+        if (stats == null) {
+            return snapshot(klass, filter);
+        }
+
+        final long start = System.nanoTime();
+
+        try {
+            return snapshot(klass, filter);
+        } finally {
+            stats.snapshot(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Count the metrics of the given type.
+     * <p>
+     * Takes constant time, or time linear in the number of metrics if the registry does not
+     * index metrics by type.
+     *
+     * @param type one of the constants of {@link MetricTypes}
+     */
+    int count(final int type) {
+        if (types != null) {
+            return (int) types.count(type);
+        }
+
+        final Class<?> klass = MetricTypes.type(type);
+        int count = 0;
+
+        for (final Metric metric : metrics.values()) {
+            if (klass.isInstance(metric)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Metric> SortedMap<MetricId, T> snapshot(
+        final Class<T> klass, final SemanticMetricFilter filter
+    ) {
+        if (filter instanceof TagQuery && types != null) {
+            final ImmutableSortedMap.Builder<MetricId, T> builder =
+                ImmutableSortedMap.orderedBy(TypeIndex.ORDER);
+
+            forEachTagged((TagQuery) filter, (name, metric) -> {
+                if (klass.isInstance(metric)) {
+                    builder.put(name, (T) metric);
+                }
+            });
+
+            return builder.build();
+        }
+
+        final SortedMap<MetricId, Metric> indexed = indexed(klass);
+
+        if (indexed != null) {
+            // the index is sorted already, which makes sorting the copy take linear time.
+            final ImmutableSortedMap.Builder<MetricId, T> builder =
+                ImmutableSortedMap.orderedBy(TypeIndex.ORDER);
+
+            indexed.forEach((name, metric) -> {
+                if (filter.matches(name, metric)) {
+                    builder.put(name, (T) metric);
+                }
+            });
+
+            return builder.build();
+        }
+
         final TreeMap<MetricId, T> metrics = new TreeMap<MetricId, T>();
 
         for (final Map.Entry<MetricId, Metric> entry : this.metrics.entrySet()) {
@@ -492,36 +1274,366 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
         return Collections.unmodifiableSortedMap(metrics);
     }
 
+    /**
+     * Visits every metric in the registry.
+     *
+     * @param visitor the visitor to call for each metric
+     * @see #accept(SemanticMetricVisitor, SemanticMetricFilter)
+     */
+    public void accept(final SemanticMetricVisitor visitor) {
+        accept(visitor, SemanticMetricFilter.ALL);
+    }
+
+    /**
+     * Visits every metric in the registry which matches the given filter.
+     * <p>
+     * Unlike the typed getters, this visits all types in a single pass over the metrics without
+     * copying or sorting them, so metrics are visited in no particular order. Each metric is
+     * passed to a single callback, checking its types in the order of the callbacks of
+     * {@link SemanticMetricVisitor}, the same dispatch as for listeners. Metrics of other types
+     * are skipped, where registering them with a listener fails.
+     *
+     * @param visitor the visitor to call for each metric
+     * @param filter  the filter to apply
+     */
+    public void accept(final SemanticMetricVisitor visitor, final SemanticMetricFilter filter) {
+        if (filter instanceof TagQuery && types != null) {
+            forEachTagged((TagQuery) filter, (name, metric) -> visit(visitor, name, metric));
+            return;
+        }
+
+        metrics.forEach((name, metric) -> {
+            if (filter.matches(name, metric)) {
+                visit(visitor, name, metric);
+            }
+        });
+    }
+
+    /**
+     * Calls the given consumer with every metric of the given type which matches the filter.
+     */
+    protected <T extends Metric> void forEachMetric(
+        final Class<T> klass, final SemanticMetricFilter filter,
+        final BiConsumer<MetricId, ? super T> consumer
+    ) {
+        if (filter instanceof TagQuery && types != null) {
+            forEachTagged((TagQuery) filter, (name, metric) -> {
+                if (klass.isInstance(metric)) {
+                    consumer.accept(name, klass.cast(metric));
+                }
+            });
+
+            return;
+        }
+
+        final Map<MetricId, Metric> indexed = indexed(klass);
+        final Map<MetricId, Metric> candidates = indexed != null ? indexed : metrics;
+
+        candidates.forEach((name, metric) -> {
+            if (klass.isInstance(metric) && filter.matches(name, metric)) {
+                consumer.accept(name, klass.cast(metric));
+            }
+        });
+    }
+
+    /**
+     * Call the callback of the given visitor for the type of the given metric.
+     * <p>
+     * This is the only place which dispatches on the type of a metric, both for visitors and for
+     * listeners, so that they all agree on the type of a metric.
+     *
+     * @return {@code false} if the type of the metric is not known, and no callback was called
+     */
+    private static boolean visit(
+        final SemanticMetricVisitor visitor, final MetricId name, final Metric metric
+    ) {
+        switch (MetricTypes.typeOf(metric)) {
+            case MetricTypes.GAUGE:
+                visitor.visitGauge(name, (Gauge<?>) metric);
+                return true;
+            case MetricTypes.COUNTER:
+                visitor.visitCounter(name, (Counter) metric);
+                return true;
+            case MetricTypes.HISTOGRAM:
+                visitor.visitHistogram(name, (Histogram) metric);
+                return true;
+            case MetricTypes.METER:
+                visitor.visitMeter(name, (Meter) metric);
+                return true;
+            case MetricTypes.TIMER:
+                visitor.visitTimer(name, (Timer) metric);
+                return true;
+            case MetricTypes.DERIVING_METER:
+                visitor.visitDerivingMeter(name, (DerivingMeter) metric);
+                return true;
+            case MetricTypes.DISTRIBUTION:
+                visitor.visitDistribution(name, (Distribution) metric);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Calls the given consumer with every metric matching the query, as found through the index
+     * of tags.
+     */
+    private void forEachTagged(
+        final TagQuery query, final BiConsumer<MetricId, Metric> consumer
+    ) {
+        final TagIndex index = tagIndex();
+
+        for (final MetricId name : index.candidates(query)) {
+            final Metric metric = metrics.get(name);
+
+            if (metric == null) {
+                // drop ids which linger in the index after racing with a removal, unless the
+                // metric has been added again in the meantime.
+                metrics.compute(name, (n, existing) -> {
+                    if (existing == null) {
+                        index.remove(n);
+                    }
+
+                    return existing;
+                });
+
+                continue;
+            }
+
+            if (query.matches(name, metric)) {
+                consumer.accept(name, metric);
+            }
+        }
+    }
+
+    /**
+     * Get the indexed metrics of the given type.
+     *
+     * @return The metrics of the given type, or {@code null} if the type is not indexed.
+     */
+    private SortedMap<MetricId, Metric> indexed(final Class<?> klass) {
+        return types != null ? types.get(klass) : null;
+    }
+
+    /**
+     * Put a metric into the map of metrics if there is none with the given name, while keeping
+     * the indexes in sync with the map.
+     *
+     * @return {@code null} if the metric was added, or the previously mapped metric.
+     */
+    private Metric putIfAbsent(final MetricId name, final Metric metric) {
+        final TypeIndex index = types;
+
+        if (index == null) {
+            final Metric existing = metrics.putIfAbsent(name, metric);
+
+            if (existing == null) {
+                indexFingerprint(name);
+            }
+
+            return existing;
+        }
+
+        final Metric existing = metrics.get(name);
+
+        if (existing != null) {
+            return existing;
+        }
+
+        final boolean[] added = new boolean[1];
+
+        // the index is updated while the entry is locked, so that it can't race with a removal.
+        final Metric current = metrics.computeIfAbsent(name, n -> {
+            index.add(n, metric);
+            added[0] = true;
+            return metric;
+        });
+
+        if (!added[0]) {
+            return current;
+        }
+
+        // since removals from the index of tags happen while the entry is locked, adding the id
+        // afterwards can at worst leave an id of a removed metric behind.
+        final TagIndex tagIndex = tags;
+
+        if (tagIndex != null) {
+            tagIndex.add(name);
+        }
+
+        indexFingerprint(name);
+        return null;
+    }
+
+    /**
+     * Remove the metric with the given name, while keeping the indexes in sync with the map.
+     *
+     * @param expected the metric to remove, or {@code null} to remove any metric
+     * @return The removed metric, or {@code null} if there was none.
+     */
+    private Metric removeMetric(final MetricId name, final Metric expected) {
+        final TypeIndex index = types;
+
+        if (index == null) {
+            final Metric removed;
+
+            if (expected == null) {
+                removed = metrics.remove(name);
+            } else {
+                removed = metrics.remove(name, expected) ? expected : null;
+            }
+
+            if (removed != null) {
+                unindexFingerprint(name);
+            }
+
+            return removed;
+        }
+
+        final Metric[] removed = new Metric[1];
+
+        metrics.computeIfPresent(name, (n, existing) -> {
+            if (expected != null && existing != expected) {
+                return existing;
+            }
+
+            index.remove(n, existing);
+
+            final TagIndex tagIndex = tags;
+
+            if (tagIndex != null) {
+                tagIndex.remove(n);
+            }
+
+            removed[0] = existing;
+            return null;
+        });
+
+        if (removed[0] != null) {
+            unindexFingerprint(name);
+        }
+
+        return removed[0];
+    }
+
+    /**
+     * Add an id to the index of fingerprints after its metric was added.
+     * <p>
+     * Since this happens after the map was updated, the id of a metric which was removed
+     * concurrently might linger in the index. Lookups check that the names they find exist.
+     */
+    private void indexFingerprint(final MetricId name) {
+        final FingerprintIndex index = fingerprints;
+
+        if (index != null) {
+            index.add(name);
+        }
+    }
+
+    /**
+     * Remove an id from the index of fingerprints after its metric was removed.
+     * <p>
+     * A metric with the same name might have been added again and indexed before the id is
+     * removed, so it is added back if the name exists once more.
+     */
+    private void unindexFingerprint(final MetricId name) {
+        final FingerprintIndex index = fingerprints;
+
+        if (index != null) {
+            index.remove(name);
+
+            if (metrics.containsKey(name)) {
+                index.add(name);
+            }
+        }
+    }
+
     protected void onMetricAdded(final MetricId name, final Metric metric) {
+        trackAdded(name);
+
+        final AsyncListenerDispatcher dispatcher = this.dispatcher;
+
+        if (dispatcher != null && dispatcher.enqueue(() -> notifyAdded(name, metric))) {
+            return;
+        }
+
+        notifyAdded(name, metric);
+    }
+
+    private void notifyAdded(final MetricId name, final Metric metric) {
         for (final SemanticMetricRegistryListener listener : listeners) {
             notifyListenerOfAddedMetric(listener, metric, name);
         }
     }
 
+    /**
+     * Called once for all metrics added by {@link #registerAll(Map)}, instead of
+     * {@link #onMetricAdded(MetricId, Metric)} for each of them.
+     *
+     * @param added the added metrics by name, in the order they were registered
+     */
+    protected void onMetricsAdded(final Map<MetricId, Metric> added) {
+        for (final MetricId name : added.keySet()) {
+            trackAdded(name);
+        }
+
+        final Map<MetricId, Metric> batch = Collections.unmodifiableMap(added);
+        final AsyncListenerDispatcher dispatcher = this.dispatcher;
+
+        if (dispatcher != null && dispatcher.enqueue(() -> notifyAdded(batch))) {
+            return;
+        }
+
+        notifyAdded(batch);
+    }
+
+    private void notifyAdded(final Map<MetricId, Metric> batch) {
+        for (final SemanticMetricRegistryListener listener : listeners) {
+            if (listener instanceof SemanticMetricRegistryBatchListener) {
+                ((SemanticMetricRegistryBatchListener) listener).onMetricsAdded(batch);
+                continue;
+            }
+
+            for (final Map.Entry<MetricId, Metric> entry : batch.entrySet()) {
+                notifyListenerOfAddedMetric(listener, entry.getValue(), entry.getKey());
+            }
+        }
+    }
+
+    private void trackAdded(final MetricId name) {
+        final CardinalityLimiter limiter = this.limiter;
+
+        if (limiter != null) {
+            limiter.added(name);
+        }
+    }
+
     private void notifyListenerOfAddedMetric(
         final SemanticMetricRegistryListener listener, final Metric metric, final MetricId name
     ) {
-        if (metric instanceof Gauge) {
-            listener.onGaugeAdded(name, (Gauge<?>) metric);
-        } else if (metric instanceof Counter) {
-            listener.onCounterAdded(name, (Counter) metric);
-        } else if (metric instanceof Histogram) {
-            listener.onHistogramAdded(name, (Histogram) metric);
-        } else if (metric instanceof Meter) {
-            listener.onMeterAdded(name, (Meter) metric);
-        } else if (metric instanceof Timer) {
-            listener.onTimerAdded(name, (Timer) metric);
-        } else if (metric instanceof DerivingMeter) {
-            listener.onDerivingMeterAdded(name, (DerivingMeter) metric);
-        } else if (metric instanceof Distribution) {
-            listener.onDistributionAdded(name, (Distribution) metric);
-        } else {
+        if (!visit(new AddedNotifier(listener), name, metric)) {
             throw new IllegalArgumentException("Unknown metric type: " + metric.getClass());
         }
     }
 
 
     protected void onMetricRemoved(final MetricId name, final Metric metric) {
+        final CardinalityLimiter limiter = this.limiter;
+
+        if (limiter != null) {
+            limiter.removed(name, metric);
+        }
+
+        final AsyncListenerDispatcher dispatcher = this.dispatcher;
+
+        if (dispatcher != null && dispatcher.enqueue(() -> notifyRemoved(name, metric))) {
+            return;
+        }
+
+        notifyRemoved(name, metric);
+    }
+
+    private void notifyRemoved(final MetricId name, final Metric metric) {
         for (final SemanticMetricRegistryListener listener : listeners) {
             notifyListenerOfRemovedMetric(name, metric, listener);
         }
@@ -530,25 +1642,61 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
     private void notifyListenerOfRemovedMetric(
         final MetricId name, final Metric metric, final SemanticMetricRegistryListener listener
     ) {
-        if (metric instanceof Gauge) {
-            listener.onGaugeRemoved(name);
-        } else if (metric instanceof Counter) {
-            listener.onCounterRemoved(name);
-        } else if (metric instanceof Histogram) {
-            listener.onHistogramRemoved(name);
-        } else if (metric instanceof Meter) {
-            listener.onMeterRemoved(name);
-        } else if (metric instanceof Timer) {
-            listener.onTimerRemoved(name);
-        } else if (metric instanceof DerivingMeter) {
-            listener.onDerivingMeterRemoved(name);
-        } else if (metric instanceof Distribution) {
-            listener.onDistributionRemoved(name);
-        } else {
+        if (!visit(new RemovedNotifier(listener), name, metric)) {
             throw new IllegalArgumentException("Unknown metric type: " + metric.getClass());
         }
     }
 
+    private FingerprintIndex fingerprintIndex() {
+        FingerprintIndex index = fingerprints;
+
+        if (index != null) {
+            return index;
+        }
+
+        synchronized (this) {
+            index = fingerprints;
+
+            if (index == null) {
+                index = new FingerprintIndex();
+                // publish before populating, so that concurrently added metrics are not missed.
+                // ids of metrics removed concurrently might linger in the index, which is why
+                // lookups check that the names still exist.
+                fingerprints = index;
+
+                for (final MetricId name : metrics.keySet()) {
+                    index.add(name);
+                }
+            }
+        }
+
+        return index;
+    }
+
+    private TagIndex tagIndex() {
+        TagIndex index = tags;
+
+        if (index != null) {
+            return index;
+        }
+
+        synchronized (this) {
+            index = tags;
+
+            if (index == null) {
+                index = new TagIndex();
+                // publish before populating, so that metrics added concurrently are not missed.
+                tags = index;
+
+                for (final MetricId name : metrics.keySet()) {
+                    index.add(name);
+                }
+            }
+        }
+
+        return index;
+    }
+
     protected void registerAll(final MetricId prefix, final SemanticMetricSet metrics)
         throws IllegalArgumentException {
         for (final Map.Entry<MetricId, Metric> entry : metrics.getMetrics().entrySet()) {
@@ -561,8 +1709,120 @@ public class SemanticMetricRegistry implements SemanticMetricSet {
         }
     }
 
+    private static void expand(
+        final MetricId prefix, final Map<MetricId, ? extends Metric> metrics,
+        final Map<MetricId, Metric> into
+    ) {
+        for (final Map.Entry<MetricId, ? extends Metric> entry : metrics.entrySet()) {
+            final MetricId name = MetricId.join(prefix, entry.getKey());
+            final Metric metric = entry.getValue();
+
+            if (metric == null) {
+                throw new IllegalArgumentException("A metric cannot be null");
+            }
+
+            if (metric instanceof SemanticMetricSet) {
+                expand(name, ((SemanticMetricSet) metric).getMetrics(), into);
+            } else if (into.putIfAbsent(name, metric) != null) {
+                throw new IllegalArgumentException("A metric named " + name + " is given twice");
+            }
+        }
+    }
+
     @Override
     public Map<MetricId, Metric> getMetrics() {
         return Collections.unmodifiableMap(metrics);
     }
+
+    /**
+     * Notifies a listener of the metrics it visits being added.
+     */
+    private static final class AddedNotifier implements SemanticMetricVisitor {
+        private final SemanticMetricRegistryListener listener;
+
+        private AddedNotifier(final SemanticMetricRegistryListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void visitGauge(final MetricId name, final Gauge<?> gauge) {
+            listener.onGaugeAdded(name, gauge);
+        }
+
+        @Override
+        public void visitCounter(final MetricId name, final Counter counter) {
+            listener.onCounterAdded(name, counter);
+        }
+
+        @Override
+        public void visitHistogram(final MetricId name, final Histogram histogram) {
+            listener.onHistogramAdded(name, histogram);
+        }
+
+        @Override
+        public void visitMeter(final MetricId name, final Meter meter) {
+            listener.onMeterAdded(name, meter);
+        }
+
+        @Override
+        public void visitTimer(final MetricId name, final Timer timer) {
+            listener.onTimerAdded(name, timer);
+        }
+
+        @Override
+        public void visitDerivingMeter(final MetricId name, final DerivingMeter derivingMeter) {
+            listener.onDerivingMeterAdded(name, derivingMeter);
+        }
+
+        @Override
+        public void visitDistribution(final MetricId name, final Distribution distribution) {
+            listener.onDistributionAdded(name, distribution);
+        }
+    }
+
+    /**
+     * Notifies a listener of the metrics it visits being removed.
+     */
+    private static final class RemovedNotifier implements SemanticMetricVisitor {
+        private final SemanticMetricRegistryListener listener;
+
+        private RemovedNotifier(final SemanticMetricRegistryListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void visitGauge(final MetricId name, final Gauge<?> gauge) {
+            listener.onGaugeRemoved(name);
+        }
+
+        @Override
+        public void visitCounter(final MetricId name, final Counter counter) {
+            listener.onCounterRemoved(name);
+        }
+
+        @Override
+        public void visitHistogram(final MetricId name, final Histogram histogram) {
+            listener.onHistogramRemoved(name);
+        }
+
+        @Override
+        public void visitMeter(final MetricId name, final Meter meter) {
+            listener.onMeterRemoved(name);
+        }
+
+        @Override
+        public void visitTimer(final MetricId name, final Timer timer) {
+            listener.onTimerRemoved(name);
+        }
+
+        @Override
+        public void visitDerivingMeter(final MetricId name, final DerivingMeter derivingMeter) {
+            listener.onDerivingMeterRemoved(name);
+        }
+
+        @Override
+        public void visitDistribution(final MetricId name, final Distribution distribution) {
+            listener.onDistributionRemoved(name);
+        }
+    }
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Metric;
+
+import java.util.Map;
+
+/**
+ * A {@link SemanticMetricRegistryListener} which is notified of bulk registrations as a whole.
+ * <p>
+ * Metrics added through {@link SemanticMetricRegistry#registerAll(Map)} are delivered to
+ * {@link #onMetricsAdded(Map)} in a single call instead of the per-metric callbacks, which are
+ * still used for metrics added one at a time.
+ */
+public interface SemanticMetricRegistryBatchListener extends SemanticMetricRegistryListener {
+    /**
+     * Called when a batch of metrics is added to the registry.
+     *
+     * @param metrics the added metrics by name, in the order they were registered
+     */
+    void onMetricsAdded(Map<MetricId, Metric> metrics);
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * A view of a registry which prefixes the names of all metrics it looks up.
+ * <p>
+ * The key and tags of the prefix are joined with every name passed to the scope, where tags of
+ * the name take precedence, and the metrics are stored in the registry the scope was created
+ * from, so reporters of the registry see them like any other metric.
+ * <p>
+ * Joined names are cached per scope, so looking up an existing metric with a name that has
+ * been used before does not allocate. Names are expected to come from a bounded set, such as
+ * constants, and the cache stops growing once it holds {@link #MAX_CACHED_NAMES} names.
+ *
+ * @see SemanticMetricRegistry#scoped(MetricId)
+ */
+public final class SemanticMetricScope {
+    static final int MAX_CACHED_NAMES = 10000;
+
+    private final SemanticMetricRegistry registry;
+    private final MetricId prefix;
+    private final ConcurrentMap<MetricId, MetricId> names = new ConcurrentHashMap<>();
+
+    SemanticMetricScope(final SemanticMetricRegistry registry, final MetricId prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("'prefix' must not be null");
+        }
+
+        this.registry = registry;
+        this.prefix = prefix;
+    }
+
+    public SemanticMetricRegistry getRegistry() {
+        return registry;
+    }
+
+    public MetricId getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Create a scope of this scope, whose prefix is joined with the prefix of this one.
+     *
+     * @param prefix the prefix relative to this scope
+     * @return a scope storing metrics in the same registry
+     */
+    public SemanticMetricScope scoped(final MetricId prefix) {
+        return new SemanticMetricScope(registry, MetricId.join(this.prefix, prefix));
+    }
+
+    /**
+     * Get the full name of a metric in this scope.
+     *
+     * @param name the name relative to this scope
+     * @return the name joined with the prefix of this scope
+     */
+    public MetricId resolve(final MetricId name) {
+        final MetricId cached = names.get(name);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        final MetricId joined = MetricId.join(prefix, name);
+
+        if (names.size() < MAX_CACHED_NAMES) {
+            names.putIfAbsent(name, joined);
+        }
+
+        return joined;
+    }
+
+    /**
+     * @see SemanticMetricRegistry#register(MetricId, Metric)
+     */
+    public <T extends Metric> T register(final MetricId name, final T metric) {
+        return registry.register(resolve(name), metric);
+    }
+
+    /**
+     * @see SemanticMetricRegistry#remove(MetricId)
+     */
+    public boolean remove(final MetricId name) {
+        return registry.remove(resolve(name));
+    }
+
+    /**
+     * @see SemanticMetricRegistry#getOrAdd(MetricId, SemanticMetricBuilder)
+     */
+    public <T extends Metric> T getOrAdd(
+        final MetricId name, final SemanticMetricBuilder<T> builder
+    ) {
+        return registry.getOrAdd(resolve(name), builder);
+    }
+
+    public Counter counter(final MetricId name) {
+        return registry.counter(resolve(name));
+    }
+
+    public Histogram histogram(final MetricId name) {
+        return registry.histogram(resolve(name));
+    }
+
+    public Histogram histogram(final MetricId name, final Supplier<Reservoir> reservoirSupplier) {
+        return registry.histogram(resolve(name), reservoirSupplier);
+    }
+
+    public Distribution distribution(final MetricId name) {
+        return registry.distribution(resolve(name));
+    }
+
+    public Meter meter(final MetricId name) {
+        return registry.meter(resolve(name));
+    }
+
+    public Timer timer(final MetricId name) {
+        return registry.timer(resolve(name));
+    }
+
+    public Timer timer(final MetricId name, final Supplier<Reservoir> reservoirSupplier) {
+        return registry.timer(resolve(name), reservoirSupplier);
+    }
+
+    public DerivingMeter derivingMeter(final MetricId name) {
+        return registry.derivingMeter(resolve(name));
+    }
+
+    @Override
+    public String toString() {
+        return "SemanticMetricScope(" + prefix + ")";
+    }
+}
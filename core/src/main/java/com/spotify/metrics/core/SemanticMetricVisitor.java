@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+
+/**
+ * Visits the metrics of a registry, with one callback per metric type.
+ *
+ * @see SemanticMetricRegistry#accept(SemanticMetricVisitor, SemanticMetricFilter)
+ */
+public interface SemanticMetricVisitor {
+    /**
+     * A no-op implementation of {@link SemanticMetricVisitor}.
+     */
+    abstract class Base implements SemanticMetricVisitor {
+        @Override
+        public void visitGauge(MetricId name, Gauge<?> gauge) {
+        }
+
+        @Override
+        public void visitCounter(MetricId name, Counter counter) {
+        }
+
+        @Override
+        public void visitHistogram(MetricId name, Histogram histogram) {
+        }
+
+        @Override
+        public void visitMeter(MetricId name, Meter meter) {
+        }
+
+        @Override
+        public void visitTimer(MetricId name, Timer timer) {
+        }
+
+        @Override
+        public void visitDerivingMeter(MetricId name, DerivingMeter derivingMeter) {
+        }
+
+        @Override
+        public void visitDistribution(MetricId name, Distribution distribution) {
+        }
+    }
+
+    /**
+     * Called for each {@link Gauge}.
+     *
+     * @param name  the gauge's name
+     * @param gauge the gauge
+     */
+    void visitGauge(MetricId name, Gauge<?> gauge);
+
+    /**
+     * Called for each {@link Counter}.
+     *
+     * @param name    the counter's name
+     * @param counter the counter
+     */
+    void visitCounter(MetricId name, Counter counter);
+
+    /**
+     * Called for each {@link Histogram}.
+     *
+     * @param name      the histogram's name
+     * @param histogram the histogram
+     */
+    void visitHistogram(MetricId name, Histogram histogram);
+
+    /**
+     * Called for each {@link Meter}.
+     *
+     * @param name  the meter's name
+     * @param meter the meter
+     */
+    void visitMeter(MetricId name, Meter meter);
+
+    /**
+     * Called for each {@link Timer}.
+     *
+     * @param name  the timer's name
+     * @param timer the timer
+     */
+    void visitTimer(MetricId name, Timer timer);
+
+    /**
+     * Called for each {@link DerivingMeter}.
+     *
+     * @param name          the deriving meter's name
+     * @param derivingMeter the deriving meter
+     */
+    void visitDerivingMeter(MetricId name, DerivingMeter derivingMeter);
+
+    /**
+     * Called for each {@link Distribution}.
+     *
+     * @param name         the distribution's name
+     * @param distribution the distribution
+     */
+    void visitDistribution(MetricId name, Distribution distribution);
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An inverted index from tags to the ids of the metrics which have them.
+ * <p>
+ * Sets of ids are created and dropped while holding the lock of their entry, so that ids are
+ * never added to a set which is being dropped.
+ */
+final class TagIndex {
+    private final ConcurrentMap<String, ConcurrentMap<String, Set<MetricId>>> byKey =
+        new ConcurrentHashMap<>();
+
+    void add(final MetricId name) {
+        final TagMap tags = name.tags();
+
+        for (int i = 0; i < tags.size(); i++) {
+            final String value = tags.valueAt(i);
+
+            if (value == null) {
+                continue;
+            }
+
+            byKey.computeIfAbsent(tags.keyAt(i), k -> new ConcurrentHashMap<>())
+                .compute(value, (v, ids) -> {
+                    final Set<MetricId> result = ids != null ? ids : ConcurrentHashMap.newKeySet();
+                    result.add(name);
+                    return result;
+                });
+        }
+    }
+
+    void remove(final MetricId name) {
+        final TagMap tags = name.tags();
+
+        for (int i = 0; i < tags.size(); i++) {
+            final String value = tags.valueAt(i);
+            final ConcurrentMap<String, Set<MetricId>> byValue = byKey.get(tags.keyAt(i));
+
+            if (value == null || byValue == null) {
+                continue;
+            }
+
+            byValue.computeIfPresent(value, (v, ids) -> {
+                ids.remove(name);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    /**
+     * Get the ids of metrics which might match the given query, which are the ids with the
+     * rarest of its tags.
+     * <p>
+     * The returned set is live, and might include ids which no longer exist.
+     */
+    Set<MetricId> candidates(final TagQuery query) {
+        final TagMap tags = query.tags();
+        Set<MetricId> smallest = null;
+
+        for (int i = 0; i < tags.size(); i++) {
+            final Map<String, Set<MetricId>> byValue = byKey.get(tags.keyAt(i));
+            final Set<MetricId> ids = byValue != null ? byValue.get(tags.valueAt(i)) : null;
+
+            if (ids == null) {
+                return Collections.emptySet();
+            }
+
+            if (smallest == null || ids.size() < smallest.size()) {
+                smallest = ids;
+            }
+        }
+
+        return smallest != null ? smallest : Collections.emptySet();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Metric;
+
+import java.util.Map;
+
+/**
+ * A filter matching metrics which have all of the given tags.
+ * <p>
+ * Registries answer queries by looking up the metrics with each tag in an index, in time
+ * proportional to the number of metrics with the rarest of the tags instead of the number of
+ * metrics in the registry.
+ * <p>
+ * The query can also be used as a plain {@link SemanticMetricFilter}, in which case it is
+ * evaluated against every metric.
+ */
+public final class TagQuery implements SemanticMetricFilter {
+    private final TagMap tags;
+
+    private TagQuery(final TagMap tags) {
+        this.tags = tags;
+    }
+
+    /**
+     * Create a query for metrics with the given tag.
+     *
+     * @param key   the key of the tag
+     * @param value the value of the tag
+     * @return a new query
+     */
+    public static TagQuery of(final String key, final String value) {
+        return new TagQuery(TagMap.EMPTY.with(requireKey(key), requireValue(value)));
+    }
+
+    /**
+     * Create a query for metrics which have the given tag in addition to the tags of this query.
+     * <p>
+     * If this query already has a tag with the given key, its value is replaced.
+     *
+     * @param key   the key of the tag
+     * @param value the value of the tag
+     * @return a new query
+     */
+    public TagQuery and(final String key, final String value) {
+        return new TagQuery(tags.with(requireKey(key), requireValue(value)));
+    }
+
+    /**
+     * Get the tags which matching metrics must have.
+     */
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    TagMap tags() {
+        return tags;
+    }
+
+    @Override
+    public boolean matches(final MetricId name, final Metric metric) {
+        final Map<String, String> actual = name.getTags();
+
+        for (int i = 0; i < tags.size(); i++) {
+            if (!tags.valueAt(i).equals(actual.get(tags.keyAt(i)))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return o instanceof TagQuery && tags.equals(((TagQuery) o).tags);
+    }
+
+    @Override
+    public int hashCode() {
+        return tags.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "TagQuery(" + tags + ")";
+    }
+
+    private static String requireKey(final String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("'key' must not be null");
+        }
+
+        return key;
+    }
+
+    private static String requireValue(final String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("'value' must not be null");
+        }
+
+        return value;
+    }
+}
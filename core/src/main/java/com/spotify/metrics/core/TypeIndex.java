@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Metric;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An index of metrics by each of the metric types known to the registry.
+ * <p>
+ * A metric is part of every index of a type it is an instance of, so that a typed lookup sees
+ * the same metrics as an {@link Class#isInstance(Object)} check over all of them would.
+ * <p>
+ * The indexes are sorted as metrics are added, so that sorted views of the registry can be
+ * copied from them without sorting. They are sorted by {@link #ORDER} rather than the natural
+ * ordering of ids, which considers a {@code null} tag value equal to any other value.
+ * <p>
+ * The number of metrics of each type is counted as well, since the size of a skip list takes
+ * linear time.
+ */
+final class TypeIndex {
+
+    /**
+     * The natural ordering of ids, where distinct ids which the natural ordering considers equal
+     * since they only differ in {@code null} tag values are ordered by where those are.
+     */
+    static final Comparator<MetricId> ORDER = (left, right) -> {
+        final int c = left.compareTo(right);
+
+        if (c != 0 || left.equals(right)) {
+            return c;
+        }
+
+        return compareNulls(left.tags(), right.tags());
+    };
+
+    private final Map<Class<?>, ConcurrentSkipListMap<MetricId, Metric>> byType = new HashMap<>();
+    private final ConcurrentSkipListSet<MetricId> names = new ConcurrentSkipListSet<>(ORDER);
+    private final LongAdder[] counts = new LongAdder[MetricTypes.COUNT];
+
+    TypeIndex() {
+        for (int i = 0; i < MetricTypes.COUNT; i++) {
+            byType.put(MetricTypes.type(i), new ConcurrentSkipListMap<>(ORDER));
+            counts[i] = new LongAdder();
+        }
+    }
+
+    void add(final MetricId name, final Metric metric) {
+        names.add(name);
+
+        for (int i = 0; i < MetricTypes.COUNT; i++) {
+            final Class<?> type = MetricTypes.type(i);
+
+            if (type.isInstance(metric) && byType.get(type).put(name, metric) == null) {
+                counts[i].increment();
+            }
+        }
+    }
+
+    void remove(final MetricId name, final Metric metric) {
+        names.remove(name);
+
+        for (int i = 0; i < MetricTypes.COUNT; i++) {
+            final Class<?> type = MetricTypes.type(i);
+
+            if (type.isInstance(metric) && byType.get(type).remove(name, metric)) {
+                counts[i].decrement();
+            }
+        }
+    }
+
+    /**
+     * Count the metrics of the given type.
+     *
+     * @param type one of the constants of {@link MetricTypes}
+     */
+    long count(final int type) {
+        return counts[type].sum();
+    }
+
+    /**
+     * Get the metrics of the given type.
+     *
+     * @return The metrics of the given type, or {@code null} if the type is not indexed.
+     */
+    SortedMap<MetricId, Metric> get(final Class<?> type) {
+        return byType.get(type);
+    }
+
+    /**
+     * Get the sorted names of all metrics.
+     */
+    NavigableSet<MetricId> names() {
+        return names;
+    }
+
+    /**
+     * Compare tags which are equal apart from {@code null} values, ordering a {@code null} value
+     * before any other.
+     */
+    private static int compareNulls(final TagMap left, final TagMap right) {
+        final int n = Math.min(left.size(), right.size());
+
+        for (int i = 0; i < n; i++) {
+            final boolean l = left.valueAt(i) == null;
+            final boolean r = right.valueAt(i) == null;
+
+            if (l != r) {
+                return l ? -1 : 1;
+            }
+        }
+
+        return Integer.compare(left.size(), right.size());
+    }
+}
@@ -0,0 +1,182 @@
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Counter;
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncListenerDispatcherTest {
+    private final MetricId a = MetricId.build("a");
+    private final MetricId b = MetricId.build("b");
+    private final MetricId c = MetricId.build("c");
+
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private SemanticMetricRegistry registry;
+    private AsyncListenerDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        registry = new SemanticMetricRegistry();
+        registry.addListener(new SemanticMetricRegistryListener.Base() {
+            @Override
+            public void onCounterAdded(final MetricId name, final Counter counter) {
+                events.add("added " + name.getKey());
+                threads.add(Thread.currentThread());
+
+                // the first event blocks the dispatch thread until the test releases it.
+                if (blocked.getCount() > 0) {
+                    blocked.countDown();
+                    await(release);
+                }
+            }
+
+            @Override
+            public void onCounterRemoved(final MetricId name) {
+                events.add("removed " + name.getKey());
+                threads.add(Thread.currentThread());
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        dispatcher.stop();
+    }
+
+    @Test
+    public void testDeliversInOrder() {
+        dispatcher = AsyncListenerDispatcher.forRegistry(registry).build();
+        dispatcher.start();
+        release.countDown();
+
+        registry.counter(a);
+        registry.counter(b);
+        registry.remove(a);
+        dispatcher.stop();
+
+        assertEquals(ImmutableList.of("added a", "added b", "removed a"), events);
+
+        for (final Thread thread : threads) {
+            assertTrue(thread != Thread.currentThread());
+        }
+
+        assertEquals(0, dispatcher.getQueueDepth());
+        assertEquals(3, dispatcher.getLag().getCount());
+
+        // events are delivered on the registering thread again once stopped.
+        registry.counter(c);
+        assertEquals(Thread.currentThread(), threads.get(threads.size() - 1));
+    }
+
+    @Test
+    public void testDiscardOnOverflow() {
+        dispatcher = AsyncListenerDispatcher.forRegistry(registry)
+            .queueSize(1)
+            .overflowPolicy(AsyncListenerDispatcher.OverflowPolicy.DISCARD)
+            .build();
+        dispatcher.start();
+
+        registry.counter(a);
+        await(blocked);
+
+        registry.counter(b);
+        registry.counter(c);
+        assertEquals(1, dispatcher.getQueueDepth());
+        assertEquals(1, dispatcher.getDiscarded().getCount());
+
+        release.countDown();
+        dispatcher.stop();
+
+        assertEquals(ImmutableList.of("added a", "added b"), events);
+    }
+
+    @Test
+    public void testBlockOnOverflowKeepsOrder() throws Exception {
+        dispatcher = AsyncListenerDispatcher.forRegistry(registry)
+            .queueSize(1)
+            .overflowPolicy(AsyncListenerDispatcher.OverflowPolicy.BLOCK)
+            .build();
+        dispatcher.start();
+
+        registry.counter(a);
+        await(blocked);
+        registry.counter(b);
+
+        // the queue is full, so these wait for room instead of overtaking the queued event.
+        final Thread registering = new Thread(() -> {
+            registry.counter(c);
+            registry.remove(b);
+            registry.remove(c);
+        });
+        registering.start();
+
+        registering.join(100);
+        assertTrue(registering.isAlive());
+        assertEquals(ImmutableList.of("added a"), events);
+
+        release.countDown();
+        registering.join(10000);
+        dispatcher.stop();
+
+        assertEquals(
+            ImmutableList.of("added a", "added b", "added c", "removed b", "removed c"), events);
+        assertTrue(!threads.contains(registering));
+        assertEquals(0, dispatcher.getDiscarded().getCount());
+    }
+
+    @Test
+    public void testStopDeliversRacingEvents() throws Exception {
+        dispatcher = AsyncListenerDispatcher.forRegistry(registry).queueSize(1).build();
+        dispatcher.start();
+
+        registry.counter(a);
+        await(blocked);
+        registry.counter(b);
+
+        final Thread stopping = new Thread(dispatcher::stop);
+        stopping.start();
+
+        // registering while stopping waits for the queue to be drained, and is not lost.
+        final Thread registering = new Thread(() -> registry.counter(c));
+        registering.start();
+
+        release.countDown();
+        stopping.join(10000);
+        registering.join(10000);
+
+        assertEquals(ImmutableList.of("added a", "added b", "added c"), events);
+    }
+
+    @Test
+    public void testRegisterMetrics() {
+        dispatcher = AsyncListenerDispatcher.forRegistry(registry).build();
+        release.countDown();
+        registry.register(MetricId.build("dispatcher"), dispatcher);
+
+        assertEquals(1, registry.getGauges().size());
+        assertEquals(1, registry.getTimers().size());
+        assertEquals(1, registry.getCounters().size());
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (final InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CardinalityLimiterTest {
+    private final MetricId requests = MetricId.build().tagged("what", "requests");
+    private final MetricId errors = MetricId.build().tagged("what", "errors");
+    private final MetricId overflow = requests.tagged(
+        CardinalityLimiter.OVERFLOW_TAG, "true", CardinalityLimiter.METRIC_TYPE_TAG, "counter");
+
+    @Test
+    public void testPerKeyLimit() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        final CardinalityLimiter limiter = CardinalityLimiter.builder().perKeyLimit(2).build();
+        registry.limitCardinality(limiter);
+
+        final Counter first = registry.counter(requests.tagged("id", "1"));
+        registry.counter(requests.tagged("id", "2"));
+
+        final Counter rejected = registry.counter(requests.tagged("id", "3"));
+        assertSame(registry.getCounters().get(overflow), rejected);
+        assertSame(rejected, registry.counter(requests.tagged("id", "4")));
+        assertEquals(2, limiter.getRejections().getCount());
+
+        // existing metrics and other groups are unaffected.
+        assertSame(first, registry.counter(requests.tagged("id", "1")));
+        assertNotSame(rejected, registry.counter(errors.tagged("id", "3")));
+
+        // removing a metric frees up room in its group.
+        registry.remove(requests.tagged("id", "2"));
+        assertNotSame(rejected, registry.counter(requests.tagged("id", "3")));
+
+        assertSame(limiter.getRejections(),
+            registry.getCounters().get(limiter.getRejectionsId()));
+    }
+
+    @Test
+    public void testGlobalLimit() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        registry.counter(errors);
+
+        // the existing metric and the rejection counter count against the limit.
+        final CardinalityLimiter limiter = CardinalityLimiter.builder().globalLimit(3).build();
+        registry.limitCardinality(limiter);
+
+        registry.counter(requests.tagged("id", "1"));
+        assertEquals(0, limiter.getRejections().getCount());
+
+        registry.counter(requests.tagged("id", "2"));
+        assertTrue(registry.getCounters().containsKey(overflow));
+        assertEquals(1, limiter.getRejections().getCount());
+    }
+
+    @Test
+    public void testOverflowPerType() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        final CardinalityLimiter limiter = CardinalityLimiter.builder().perKeyLimit(1).build();
+        registry.limitCardinality(limiter);
+
+        registry.counter(requests.tagged("id", "1"));
+
+        // a timer sharing the group of the counters overflows into a metric of its own type.
+        final Counter counter = registry.counter(requests.tagged("id", "2"));
+        final Timer timer = registry.timer(requests.tagged("id", "3"));
+        assertSame(counter, registry.getCounters().get(overflow));
+        assertSame(timer, registry.getTimers().get(requests.tagged(
+            CardinalityLimiter.OVERFLOW_TAG, "true",
+            CardinalityLimiter.METRIC_TYPE_TAG, "timer")));
+        assertSame(counter, registry.counter(requests.tagged("id", "4")));
+        assertEquals(3, limiter.getRejections().getCount());
+
+        // a removed overflow metric is re-created rather than handed out again.
+        registry.remove(overflow);
+        final Counter recreated = registry.counter(requests.tagged("id", "5"));
+        assertNotSame(counter, recreated);
+        assertSame(recreated, registry.getCounters().get(overflow));
+        assertSame(timer, registry.timer(requests.tagged("id", "6")));
+    }
+
+    @Test
+    public void testOverflowTagIsLimited() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        final CardinalityLimiter limiter = CardinalityLimiter.builder().perKeyLimit(1).build();
+        registry.limitCardinality(limiter);
+
+        registry.counter(requests.tagged("id", "1"));
+
+        // metrics which are merely tagged like overflow metrics don't bypass the limits.
+        final Counter tagged =
+            registry.counter(requests.tagged("id", "2", CardinalityLimiter.OVERFLOW_TAG, "true"));
+        assertSame(registry.getCounters().get(overflow), tagged);
+        assertEquals(1, limiter.getRejections().getCount());
+    }
+}
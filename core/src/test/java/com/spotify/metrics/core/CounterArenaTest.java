@@ -0,0 +1,93 @@
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Counter;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class CounterArenaTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadsValues() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("arena");
+        final CounterArena arena = CounterArena.create(file, 2);
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+
+        final MetricId requests = MetricId.build("requests").tagged("endpoint", "get");
+        final MetricId connections = MetricId.build("connections");
+
+        final Counter counter = registry.counter(requests, arena);
+        counter.inc(3);
+        counter.dec();
+        registry.gauge(connections, arena).set(17);
+
+        assertSame(counter, registry.counter(requests, arena));
+        assertSame(counter, registry.getCounters().get(requests));
+        assertEquals(2, arena.getAllocated());
+
+        final CounterArenaReader reader = CounterArenaReader.open(file);
+        assertEquals(ImmutableMap.of(requests, 2L, connections, 17L), reader.read());
+
+        // the mapping is shared, so updates are visible to an open reader.
+        counter.inc();
+        assertEquals(3L, (long) reader.read().get(requests));
+
+        try {
+            registry.counter(MetricId.build("other"), arena);
+            fail("expected exception");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRacingCreationsShareSlot() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("arena");
+        final CounterArena arena = CounterArena.create(file, 2);
+        final MetricId name = MetricId.build("requests");
+
+        // both threads of a race create a metric before one of them is registered.
+        final Counter winner = arena.counterBuilder(name).newMetric();
+        final Counter loser = arena.counterBuilder(name).newMetric();
+        assertEquals(1, arena.getAllocated());
+
+        winner.inc(5);
+        assertEquals(5L, (long) CounterArenaReader.open(file).read().get(name));
+
+        try {
+            arena.gaugeBuilder(name).newMetric();
+            fail("expected exception");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+
+        // the count is kept in the shared slot.
+        assertEquals(5, loser.getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPlainCounterIsNotExported() throws IOException {
+        final CounterArena arena = CounterArena.create(folder.getRoot().toPath().resolve("a"), 1);
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+
+        registry.counter(MetricId.build("requests"));
+        registry.counter(MetricId.build("requests"), arena);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNameTooLong() throws IOException {
+        final CounterArena arena =
+            CounterArena.create(folder.getRoot().toPath().resolve("arena"), 1, 24);
+        new SemanticMetricRegistry().counter(MetricId.build("a-name-longer-than-8"), arena);
+    }
+}
@@ -0,0 +1,91 @@
+package com.spotify.metrics.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+
+public class CounterCheckpointerTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final MetricId a = MetricId.build("a").tagged("shard", "1");
+    private final MetricId b = MetricId.build("b");
+    private final MetricId c = MetricId.build("c");
+
+    private CounterCheckpointer checkpointer(
+        final SemanticMetricRegistry registry, final Path file
+    ) throws IOException {
+        final CounterCheckpointer checkpointer =
+            CounterCheckpointer.forRegistry(registry).file(file).build();
+        checkpointer.start();
+        return checkpointer;
+    }
+
+    @Test
+    public void testRestoresCounters() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("counters");
+
+        final SemanticMetricRegistry first = new SemanticMetricRegistry();
+        first.counter(a).inc(5);
+
+        try (CounterCheckpointer checkpointer = checkpointer(first, file)) {
+            first.counter(b).inc(7);
+            assertEquals(2, checkpointer.checkpoint());
+
+            // only changed counts are written.
+            first.counter(a).inc();
+            assertEquals(1, checkpointer.checkpoint());
+            assertEquals(0, checkpointer.checkpoint());
+        }
+
+        final SemanticMetricRegistry second = new SemanticMetricRegistry();
+        // existing counters are restored when started, others once they are added.
+        second.counter(b).inc();
+
+        final CounterCheckpointer restored = checkpointer(second, file);
+
+        try {
+            assertEquals(8, second.counter(b).getCount());
+            assertEquals(6, second.counter(a).getCount());
+            assertEquals(0, second.counter(c).getCount());
+
+            second.counter(c).inc(3);
+            second.counter(a).inc();
+        } finally {
+            // checkpoints the remaining changes.
+            restored.stop();
+        }
+
+        final SemanticMetricRegistry third = new SemanticMetricRegistry();
+        final CounterCheckpointer restoredAgain = checkpointer(third, file);
+
+        try {
+            assertEquals(7, third.counter(a).getCount());
+            assertEquals(8, third.counter(b).getCount());
+            assertEquals(3, third.counter(c).getCount());
+        } finally {
+            restoredAgain.stop();
+        }
+    }
+
+    @Test
+    public void testFullFile() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("counters");
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+
+        // room for the header and a single record.
+        final CounterCheckpointer checkpointer =
+            CounterCheckpointer.forRegistry(registry).file(file).capacity(40).build();
+        checkpointer.start();
+
+        registry.counter(b).inc();
+        registry.counter(c).inc();
+        assertEquals(1, checkpointer.checkpoint());
+        checkpointer.stop();
+    }
+}
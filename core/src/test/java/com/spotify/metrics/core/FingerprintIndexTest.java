@@ -0,0 +1,57 @@
+package com.spotify.metrics.core;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+public class FingerprintIndexTest {
+    @Test
+    public void testAddAndRemove() {
+        final FingerprintIndex index = new FingerprintIndex();
+        final List<MetricId> ids = new ArrayList<>();
+
+        for (int i = 0; i < 1000; i++) {
+            final MetricId id = MetricId.build("metric").tagged("i", Integer.toString(i));
+            ids.add(id);
+            index.add(id);
+        }
+
+        // removing shifts entries back within their probe sequences, which must stay reachable.
+        for (int i = 0; i < ids.size(); i += 2) {
+            index.remove(ids.get(i));
+        }
+
+        for (int i = 0; i < ids.size(); i++) {
+            final long fingerprint = ids.get(i).fingerprint();
+            final List<MetricId> expected =
+                i % 2 == 0 ? ImmutableList.of() : ImmutableList.of(ids.get(i));
+            assertEquals(expected, index.get(fingerprint));
+        }
+    }
+
+    @Test
+    public void testCollisions() {
+        final FingerprintIndex index = new FingerprintIndex();
+        final MetricId a = spy(MetricId.build("a"));
+        final MetricId b = spy(MetricId.build("b"));
+        doReturn(42L).when(a).fingerprint();
+        doReturn(42L).when(b).fingerprint();
+
+        index.add(a);
+        index.add(b);
+        index.add(a);
+        assertEquals(ImmutableList.of(a, b), index.get(42L));
+
+        index.remove(a);
+        assertEquals(ImmutableList.of(b), index.get(42L));
+
+        index.remove(b);
+        assertEquals(ImmutableList.of(), index.get(42L));
+    }
+}
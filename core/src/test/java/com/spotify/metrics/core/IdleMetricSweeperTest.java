@@ -0,0 +1,151 @@
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IdleMetricSweeperTest {
+    private final MetricId a = MetricId.build("a");
+    private final MetricId b = MetricId.build("b");
+    private final MetricId c = MetricId.build("c");
+    private final MetricId gauge = MetricId.build("gauge");
+
+    private final List<MetricId> removed = new ArrayList<>();
+
+    private long tick;
+    private SemanticMetricRegistry registry;
+
+    private final Clock clock = new Clock() {
+        @Override
+        public long getTick() {
+            return tick;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        registry = new SemanticMetricRegistry();
+        registry.addListener(new SemanticMetricRegistryListener.Base() {
+            @Override
+            public void onCounterRemoved(final MetricId name) {
+                removed.add(name);
+            }
+
+            @Override
+            public void onTimerRemoved(final MetricId name) {
+                removed.add(name);
+            }
+        });
+    }
+
+    private IdleMetricSweeper sweeper(final int batchSize) {
+        return IdleMetricSweeper.forRegistry(registry)
+            .idleTimeout(1, TimeUnit.MINUTES)
+            .batchSize(batchSize)
+            .filter(SemanticMetricFilter.ALL)
+            .clock(clock)
+            .build();
+    }
+
+    @Test
+    public void testRemovesIdleMetrics() {
+        final IdleMetricSweeper sweeper = sweeper(100);
+
+        final Counter counter = registry.counter(a);
+        registry.timer(b);
+        registry.register(gauge, (Gauge<Integer>) () -> 1);
+
+        assertEquals(0, sweeper.sweep());
+
+        tick += TimeUnit.SECONDS.toNanos(59);
+        counter.inc();
+        assertEquals(0, sweeper.sweep());
+
+        tick += TimeUnit.SECONDS.toNanos(1);
+        assertEquals(1, sweeper.sweep());
+        assertEquals(ImmutableSet.of(a, gauge), registry.getNames());
+        assertEquals(ImmutableSet.of(b), ImmutableSet.copyOf(removed));
+
+        tick += TimeUnit.SECONDS.toNanos(60);
+        assertEquals(1, sweeper.sweep());
+        assertEquals(ImmutableSet.of(gauge), registry.getNames());
+    }
+
+    @Test
+    public void testSweepsIncrementally() {
+        final IdleMetricSweeper sweeper = sweeper(2);
+
+        registry.counter(a);
+        registry.counter(b);
+        registry.counter(c);
+
+        // the first two runs observe all metrics.
+        sweeper.sweep();
+        sweeper.sweep();
+
+        tick += TimeUnit.MINUTES.toNanos(1);
+
+        int total = 0;
+
+        for (int i = 0; i < 3; i++) {
+            final int count = sweeper.sweep();
+            assertTrue(count <= 2);
+            total += count;
+        }
+
+        assertEquals(3, total);
+        assertEquals(ImmutableSet.of(), registry.getNames());
+    }
+
+    @Test
+    public void testDoesNotRemoveReplacedMetric() {
+        final IdleMetricSweeper sweeper = sweeper(100);
+
+        registry.timer(a);
+        sweeper.sweep();
+
+        registry.remove(a);
+        final Timer replacement = registry.timer(a);
+
+        tick += TimeUnit.MINUTES.toNanos(1);
+        assertEquals(0, sweeper.sweep());
+        assertEquals(replacement, registry.getTimers().get(a));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFilterIsRequired() {
+        IdleMetricSweeper.forRegistry(registry).build();
+    }
+
+    @Test
+    public void testForgetsRemovedMetrics() {
+        final IdleMetricSweeper sweeper = sweeper(1000);
+        final List<Counter> counters = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            counters.add(registry.counter(MetricId.build("counter").tagged("i", "" + i)));
+        }
+
+        sweeper.sweep();
+        registry.removeMatching(SemanticMetricFilter.ALL);
+        registry.counter(a).inc();
+
+        // the table is rebuilt without the removed metrics, and keeps tracking the new one.
+        sweeper.sweep();
+        sweeper.sweep();
+        tick += TimeUnit.MINUTES.toNanos(1);
+        assertEquals(1, sweeper.sweep());
+        assertEquals(ImmutableSet.of(), registry.getNames());
+    }
+}
@@ -0,0 +1,83 @@
+package com.spotify.metrics.core;
+
+import static org.junit.Assert.assertEquals;
+
+import com.codahale.metrics.Gauge;
+import org.junit.Test;
+
+public class InstrumentedMetricIdCacheBuilderTest {
+    private final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+    private final MetricId base = MetricId.build("cache").tagged("cache", "endpoints");
+
+    private final MetricIdCache.Loader<String> loader = new MetricIdCache.Loader<String>() {
+        @Override
+        public MetricId load(MetricId id, String key) {
+            return id.tagged("endpoint", key);
+        }
+    };
+
+    @Test
+    public void testRecordsLookups() {
+        final InstrumentedMetricIdCacheBuilder builder =
+            InstrumentedMetricIdCacheBuilder.bounded(10, registry, base);
+
+        final MetricIdCache<String> cache =
+            MetricIdCache.builder().cacheBuilder(builder).loader(loader).build();
+
+        cache.get("/a");
+        cache.get("/a");
+        cache.get("/a");
+        cache.get("/b");
+
+        final MetricId lookup = base.tagged("unit", "lookup");
+
+        assertEquals(4, registry.counter(lookup.tagged("what", "lookups")).getCount());
+        assertEquals(2, registry.counter(lookup.tagged("what", "misses")).getCount());
+        assertEquals(2L, gauge(lookup.tagged("what", "hits")));
+        assertEquals(0.5D, gauge(base.tagged("what", "hit-ratio", "unit", "%")));
+        assertEquals(2L, gauge(base.tagged("what", "size", "unit", "id")));
+        assertEquals(2, registry.timer(base.tagged("what", "load-time")).getCount());
+
+        cache.invalidateAll();
+        assertEquals(0L, gauge(base.tagged("what", "size", "unit", "id")));
+    }
+
+    @Test
+    public void testSizeOfAllCaches() {
+        final InstrumentedMetricIdCacheBuilder builder =
+            InstrumentedMetricIdCacheBuilder.bounded(10, registry, base);
+
+        final MetricIdCache<String> a =
+            MetricIdCache.builder().cacheBuilder(builder).loader(loader).build();
+        final MetricIdCache<String> b =
+            MetricIdCache.builder().cacheBuilder(builder).loader(loader).build();
+
+        a.get("/a");
+        b.get("/b");
+
+        assertEquals(2L, gauge(base.tagged("what", "size", "unit", "id")));
+    }
+
+    @Test
+    public void testRecordsEvictions() {
+        final InstrumentedMetricIdCacheBuilder builder =
+            InstrumentedMetricIdCacheBuilder.bounded(10, registry, base);
+
+        final MetricIdCache<String> cache =
+            MetricIdCache.builder().cacheBuilder(builder).loader(loader).build();
+
+        for (int i = 0; i < 100; i++) {
+            cache.get("/" + i);
+        }
+
+        final long size = (Long) gauge(base.tagged("what", "size", "unit", "id"));
+
+        assertEquals(10L, size);
+        assertEquals(100L - size, gauge(base.tagged("what", "evictions", "unit", "id")));
+    }
+
+    private Object gauge(final MetricId name) {
+        final Gauge<?> gauge = registry.getGauges().get(name);
+        return gauge.getValue();
+    }
+}
@@ -0,0 +1,39 @@
+package com.spotify.metrics.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class MetricIdEncodingTest {
+    @Test
+    public void testRoundTrip() {
+        final MetricId id = MetricId.build("requests").tagged("what", "calls", "host", "a\0b");
+        assertEquals(id, MetricIdEncoding.decode(MetricIdEncoding.encode(id)));
+
+        final MetricId empty = new MetricId();
+        assertNull(MetricIdEncoding.decode(MetricIdEncoding.encode(empty)).getKey());
+    }
+
+    @Test
+    public void testAbsenceIsDistinct() {
+        final Map<String, String> nullValue = new HashMap<>();
+        nullValue.put("what", null);
+        final MetricId absent = new MetricId(null, nullValue);
+        final MetricId literal = new MetricId("", MetricId.EMPTY_TAGS).tagged("what", "null");
+
+        assertFalse(Arrays.equals(MetricIdEncoding.encode(absent),
+            MetricIdEncoding.encode(literal)));
+
+        final MetricId decoded = MetricIdEncoding.decode(MetricIdEncoding.encode(absent));
+        assertNull(decoded.getKey());
+        assertNull(decoded.getTags().get("what"));
+        assertEquals(absent, decoded);
+        assertEquals(literal, MetricIdEncoding.decode(MetricIdEncoding.encode(literal)));
+    }
+}
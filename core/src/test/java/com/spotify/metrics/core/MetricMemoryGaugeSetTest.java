@@ -0,0 +1,107 @@
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.UniformReservoir;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MetricMemoryGaugeSetTest {
+    @Test
+    public void testEstimateGrowsWithSamples() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        final Histogram histogram = registry.histogram(MetricId.build("histogram"));
+
+        final long empty = MemoryEstimator.estimate(histogram);
+
+        for (int i = 0; i < 100; i++) {
+            histogram.update(i);
+        }
+
+        assertEquals(empty + 100 * MemoryEstimator.SKIP_LIST_SAMPLE_BYTES,
+            MemoryEstimator.estimate(histogram));
+
+        // the ttl buffer is retained on top of the delegate reservoir.
+        final HistogramWithTtl ttl = new HistogramWithTtl();
+        assertTrue(MemoryEstimator.estimate(ttl) > empty);
+
+        // histograms with unknown reservoirs are assumed to be full.
+        assertTrue(MemoryEstimator.estimate(new Histogram(new UniformReservoir()))
+                   > MemoryEstimator.DEFAULT_RESERVOIR_SAMPLES
+                     * MemoryEstimator.SKIP_LIST_SAMPLE_BYTES);
+
+        assertEquals(SemanticMetricDistribution.ESTIMATED_BYTES,
+            MemoryEstimator.estimate(registry.distribution(MetricId.build("distribution"))));
+    }
+
+    @Test
+    public void testGauges() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        final MetricMemoryGaugeSet set =
+            new MetricMemoryGaugeSet(registry, 1, TimeUnit.NANOSECONDS);
+
+        final MetricId requests = MetricId.build().tagged("what", "requests");
+        registry.counter(requests.tagged("endpoint", "a"));
+        registry.counter(requests.tagged("endpoint", "b"));
+        registry.timer(MetricId.build().tagged("what", "latency"));
+
+        registry.register(MetricId.build(), set);
+        final Map<MetricId, Metric> gauges = set.getMetrics();
+        final MetricId base = MetricId.build().tagged("what", "metric-memory-usage", "unit", "B");
+
+        final long counters = value(gauges.get(base.tagged("metric-type", "counter")));
+        final long timers = value(gauges.get(base.tagged("metric-type", "timer")));
+        assertTrue(counters > 2 * MemoryEstimator.COUNTER_BYTES);
+        assertTrue(timers > MemoryEstimator.TIMER_BYTES);
+        assertEquals(counters + timers, value(gauges.get(base)));
+
+        // reading gauges does not modify the registry.
+        final MetricId requestsBytes = base.tagged("metric-what", "requests");
+        assertEquals(counters, set.getBytes("requests"));
+        assertFalse(registry.getGauges().containsKey(requestsBytes));
+
+        // per-group gauges are registered once updated, and are not estimated themselves.
+        set.updateGroupGauges();
+        assertEquals(counters, value(registry.getGauges().get(requestsBytes)));
+        assertEquals(0L, value(gauges.get(base.tagged("metric-type", "gauge"))));
+        assertFalse(registry.getGauges().containsKey(base.tagged("metric-what", "")));
+
+        registry.removeMatching(
+            (name, metric) -> "requests".equals(name.getTags().get("what")));
+        assertEquals(0L, set.getBytes("requests"));
+        set.updateGroupGauges();
+        assertFalse(registry.getGauges().containsKey(requestsBytes));
+    }
+
+    @Test
+    public void testGroupByTag() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        final MetricMemoryGaugeSet set =
+            new MetricMemoryGaugeSet(registry, "endpoint", 1, TimeUnit.NANOSECONDS);
+
+        final MetricId requests = MetricId.build().tagged("what", "requests");
+        final Metric a = registry.counter(requests.tagged("endpoint", "a"));
+        registry.counter(requests.tagged("endpoint", "b"));
+        registry.counter(MetricId.build().tagged("what", "errors"));
+
+        final long bytes = MemoryEstimator.estimate(requests.tagged("endpoint", "a"))
+                           + MemoryEstimator.estimate(a);
+        assertEquals(bytes, set.getBytes("a"));
+        assertTrue(set.getBytes("") > 0L);
+
+        set.updateGroupGauges();
+        final MetricId base = MetricId.build().tagged("what", "metric-memory-usage", "unit", "B");
+        assertEquals(bytes, value(registry.getGauges().get(base.tagged("metric-endpoint", "a"))));
+    }
+
+    private static long value(final Metric gauge) {
+        return (Long) ((Gauge<?>) gauge).getValue();
+    }
+}
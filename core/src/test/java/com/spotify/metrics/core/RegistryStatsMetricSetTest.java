@@ -0,0 +1,79 @@
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RegistryStatsMetricSetTest {
+    private static final MetricId BASE =
+        MetricId.build().tagged("component", "semantic-metric-registry");
+
+    @Test
+    public void testRecordStats() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        final RegistryStatsMetricSet stats = new RegistryStatsMetricSet(registry);
+
+        // nothing is recorded before the set is installed.
+        registry.counter(MetricId.build("before"));
+        registry.getCounters();
+
+        registry.recordStats(stats);
+        registry.register(MetricId.build(), stats);
+
+        registry.counter(MetricId.build("a"));
+        registry.counter(MetricId.build("a"));
+        registry.meter(MetricId.build("b"));
+        assertEquals(2, stats.getMisses().getCount());
+
+        assertNull(registry.addIfAbsent(MetricId.build("c"), new Counter()));
+        registry.addIfAbsent(MetricId.build("c"), new Counter());
+        assertEquals(1, stats.getRaces().getCount());
+
+        registry.getCounters();
+        registry.getMeters(SemanticMetricFilter.ALL);
+        assertEquals(2, stats.getSnapshots().getCount());
+
+        final Map<MetricId, Metric> metrics = stats.getMetrics();
+        // the counters and the timer of the set are counted as well.
+        assertEquals(5, count(metrics, "counter"));
+        assertEquals(1, count(metrics, "meter"));
+        assertEquals(7, count(metrics, "gauge"));
+        assertEquals(1, count(metrics, "timer"));
+        assertEquals(0, count(metrics, "histogram"));
+    }
+
+    @Test
+    public void testCountWithoutTypeIndex() {
+        final SemanticMetricRegistry registry =
+            new SemanticMetricRegistry(new ConcurrentHashMap<MetricId, Metric>());
+        final RegistryStatsMetricSet stats = new RegistryStatsMetricSet(registry);
+        registry.recordStats(stats);
+
+        registry.counter(MetricId.build("a"));
+        registry.counter(MetricId.build("b"));
+
+        assertEquals(2, count(stats.getMetrics(), "counter"));
+        assertEquals(2, stats.getMisses().getCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRecordStatsTwice() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        registry.recordStats(new RegistryStatsMetricSet(registry));
+        registry.recordStats(new RegistryStatsMetricSet(registry));
+    }
+
+    private static int count(final Map<MetricId, Metric> metrics, final String type) {
+        final MetricId name = BASE
+            .tagged("what", "metric-count", "unit", "metric")
+            .tagged("metric-type", type);
+        return (Integer) ((Gauge<?>) metrics.get(name)).getValue();
+    }
+}
@@ -1,20 +1,35 @@
 package com.spotify.metrics.core;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.Metric;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
@@ -189,4 +204,339 @@ public class SemanticMetricRegistryTest {
         verify(registry, never()).onMetricAdded(id, metric);
         verify(metrics).putIfAbsent(id, metric);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetOrAddWithBuilder() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        final MetricId.Builder builder = MetricId.builder();
+
+        final Counter counter =
+            registry.counter(builder.reset().resolve("foo").tagged("what", "requests"));
+
+        assertSame(counter, registry.counter(MetricId.build("foo").tagged("what", "requests")));
+        assertSame(counter,
+            registry.counter(builder.reset().tagged("what", "requests").resolve("foo")));
+        assertEquals(1, registry.getCounters().size());
+    }
+
+    @Test
+    public void testGetOrAddWithBuilderAndSortedMap() {
+        final SemanticMetricRegistry registry =
+            new SemanticMetricRegistry(new ConcurrentSkipListMap<MetricId, Metric>());
+        final MetricId.Builder builder = MetricId.builder();
+
+        final Counter counter = registry.counter(builder.reset().resolve("foo"));
+        assertSame(counter, registry.counter(builder.reset().resolve("foo")));
+        assertSame(counter, registry.counter(MetricId.build("foo")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetOrAddWithBuilderWrongType() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        final MetricId.Builder builder = MetricId.builder();
+
+        registry.counter(builder.reset().resolve("foo"));
+        registry.timer(builder.reset().resolve("foo"));
+    }
+
+    @Test
+    public void testTemplate() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        final MetricIdTemplate template =
+            MetricIdTemplate.of(MetricId.build().tagged("what", "requests"), "method", "status");
+
+        final MetricIdTemplate.Lookup<Counter> requests = registry.counters(template);
+        final Counter counter = requests.get("GET", "200");
+
+        assertSame(counter, requests.get("GET", "200"));
+        assertSame(counter, registry.counter(
+            MetricId.build().tagged("what", "requests", "method", "GET", "status", "200")));
+        assertEquals(1, registry.getCounters().size());
+    }
+
+    @Test
+    public void testGetMetricByFingerprint() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        final MetricId a = MetricId.build("a");
+        final MetricId b = MetricId.build("b");
+
+        final Counter before = registry.counter(a);
+        assertSame(before, registry.getMetric(a.fingerprint()));
+
+        final Counter after = registry.counter(b);
+        assertSame(after, registry.getMetric(MetricId.build("b").fingerprint()));
+
+        registry.remove(a);
+        assertNull(registry.getMetric(a.fingerprint()));
+        assertEquals(0, registry.getNames(a.fingerprint()).size());
+    }
+
+    @Test
+    public void testNullTagValuesAreDistinct() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        final MetricId nullValue = MetricId.build("a").tagged("tag", null);
+        final MetricId emptyValue = MetricId.build("a").tagged("tag", "");
+
+        // the natural ordering considers these equal, the indexes must not.
+        final Counter first = registry.counter(nullValue);
+        final Counter second = registry.counter(emptyValue);
+
+        final SortedMap<MetricId, Counter> counters = registry.getCounters();
+        assertEquals(2, counters.size());
+        assertSame(first, counters.get(nullValue));
+        assertSame(second, counters.get(emptyValue));
+        assertEquals(2, registry.getNames().size());
+
+        registry.remove(nullValue);
+        assertEquals(ImmutableSet.of(emptyValue), registry.getCounters().keySet());
+    }
+
+    @Test
+    public void testGetMetricByFingerprintWithOverriddenCallbacks() {
+        // subclasses overriding the callbacks without calling them still keep the index.
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry() {
+            @Override
+            protected void onMetricAdded(final MetricId name, final Metric metric) {
+            }
+
+            @Override
+            protected void onMetricRemoved(final MetricId name, final Metric metric) {
+            }
+        };
+        final MetricId a = MetricId.build("a");
+
+        registry.getMetric(a.fingerprint());
+        final Counter counter = registry.counter(a);
+        assertSame(counter, registry.getMetric(a.fingerprint()));
+
+        registry.remove(a);
+        assertNull(registry.getMetric(a.fingerprint()));
+    }
+
+    @Test
+    public void testGetMetricByFingerprintCollision() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        // spied rather than mocked, since the registry keeps metric ids sorted.
+        final MetricId a = spy(MetricId.build("a"));
+        final MetricId b = spy(MetricId.build("b"));
+        doReturn(42L).when(a).fingerprint();
+        doReturn(42L).when(b).fingerprint();
+
+        final Counter counter = registry.counter(a);
+        registry.counter(b);
+
+        assertEquals(2, registry.getNames(42L).size());
+
+        try {
+            registry.getMetric(42L);
+            fail("expected collision to be detected");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+
+        registry.remove(b);
+        assertSame(counter, registry.getMetric(42L));
+    }
+
+    private enum Status {
+        OK, FAILED
+    }
+
+    @Test
+    public void testEnumMetrics() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        final EnumMetricIdCache<Status> ids =
+            EnumMetricIdCache.tagged(Status.class, MetricId.build("requests"), "status");
+
+        final EnumMetrics<Status, Counter> counters = registry.counters(ids);
+
+        assertEquals(2, registry.getCounters().size());
+        assertSame(counters.get(Status.OK), registry.counter(ids.get(Status.OK)));
+        assertSame(counters.get(Status.FAILED), registry.counters(ids).get(Status.FAILED));
+    }
+
+    @Test
+    public void testTypedGettersUseTypeIndex() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        final MetricId a = MetricId.build("a");
+        final MetricId b = MetricId.build("b");
+        final MetricId c = MetricId.build("c");
+
+        final Counter counter = registry.counter(a);
+        final Timer timer = registry.timer(b);
+        registry.register(c, (Gauge<Integer>) () -> 1);
+
+        assertEquals(ImmutableMap.of(a, counter), registry.getCounters());
+        assertEquals(ImmutableMap.of(b, timer), registry.getTimers());
+        assertEquals(ImmutableSet.of(c), registry.getGauges().keySet());
+        assertEquals(3, registry.getMetrics(Metric.class, SemanticMetricFilter.ALL).size());
+
+        assertTrue(registry.remove(a));
+        assertTrue(registry.getCounters().isEmpty());
+
+        // the name is free to be used for another type of metric.
+        final Meter meter = registry.meter(a);
+        assertEquals(ImmutableMap.of(a, meter), registry.getMeters());
+        assertTrue(registry.getCounters().isEmpty());
+    }
+
+    @Test
+    public void testForEachAndSortedGetters() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        final MetricId a = MetricId.build("a");
+        final MetricId b = MetricId.build("b");
+        final MetricId c = MetricId.build("c");
+
+        registry.counter(c);
+        registry.counter(a);
+        registry.meter(b);
+
+        final Map<MetricId, Counter> counters = new HashMap<>();
+        registry.forEachCounter(counters::put);
+        assertEquals(ImmutableSet.of(a, c), counters.keySet());
+
+        final Set<MetricId> filtered = new HashSet<>();
+        registry.forEachCounter((name, metric) -> name.getKey().equals("c"),
+            (name, counter) -> filtered.add(name));
+        assertEquals(ImmutableSet.of(c), filtered);
+
+        assertEquals(ImmutableList.of(a, c), new ArrayList<>(registry.getCounters().keySet()));
+        assertEquals(ImmutableList.of(a, b, c), new ArrayList<>(registry.getNames()));
+
+        registry.remove(a);
+        assertEquals(ImmutableList.of(b, c), new ArrayList<>(registry.getNames()));
+    }
+
+    @Test
+    public void testTagQuery() {
+        final SemanticMetricRegistry indexed = new SemanticMetricRegistry();
+        final SemanticMetricRegistry scanned =
+            new SemanticMetricRegistry(new ConcurrentHashMap<MetricId, Metric>());
+
+        final MetricId base = MetricId.build("requests");
+        final MetricId a = base.tagged("shard", "17", "customer", "a");
+        final MetricId b = base.tagged("shard", "17", "customer", "b");
+        final MetricId c = base.tagged("shard", "18", "customer", "a");
+
+        for (final SemanticMetricRegistry registry : ImmutableList.of(indexed, scanned)) {
+            registry.timer(a);
+            registry.counter(b);
+            registry.timer(c);
+
+            assertEquals(ImmutableSet.of(a, c),
+                registry.getTimers(TagQuery.of("customer", "a")).keySet());
+            assertEquals(ImmutableSet.of(a),
+                registry.getTimers(TagQuery.of("customer", "a").and("shard", "17")).keySet());
+            assertTrue(registry.getTimers(TagQuery.of("shard", "19")).isEmpty());
+
+            final Set<MetricId> counters = new HashSet<>();
+            registry.forEachCounter(TagQuery.of("shard", "17"),
+                (name, counter) -> counters.add(name));
+            assertEquals(ImmutableSet.of(b), counters);
+
+            registry.removeByTag("shard", "17");
+            assertEquals(ImmutableSet.of(c), registry.getNames());
+
+            // metrics added after the index was built are found.
+            registry.counter(b);
+            assertEquals(ImmutableSet.of(b),
+                registry.getCounters(TagQuery.of("shard", "17")).keySet());
+        }
+    }
+
+    @Test
+    public void testRegisterAllMap() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+
+        final List<Map<MetricId, Metric>> batches = new ArrayList<>();
+        final List<MetricId> single = new ArrayList<>();
+
+        registry.addListener(new BatchListener() {
+            @Override
+            public void onMetricsAdded(final Map<MetricId, Metric> metrics) {
+                batches.add(new HashMap<>(metrics));
+            }
+        });
+
+        registry.addListener(new SemanticMetricRegistryListener.Base() {
+            @Override
+            public void onCounterAdded(final MetricId name, final Counter counter) {
+                single.add(name);
+            }
+
+            @Override
+            public void onMeterAdded(final MetricId name, final Meter meter) {
+                single.add(name);
+            }
+        });
+
+        final MetricId a = MetricId.build("a");
+        final MetricId b = MetricId.build("b");
+        final Counter counter = new Counter();
+        final Meter meter = new Meter();
+        final SemanticMetricSet set = () -> ImmutableMap.<MetricId, Metric>of(b, meter);
+
+        registry.registerAll(ImmutableMap.of(a, counter, MetricId.build("set"), set));
+
+        final MetricId joined = MetricId.join(MetricId.build("set"), b);
+        assertEquals(ImmutableList.of(ImmutableMap.of(a, counter, joined, meter)), batches);
+        assertEquals(ImmutableList.of(a, joined), single);
+        assertSame(meter, registry.getMeters().get(joined));
+
+        // metrics before a duplicate stay registered and listeners are told about them.
+        final Counter c = new Counter();
+
+        try {
+            registry.registerAll(ImmutableMap.of(MetricId.build("c"), c, a, new Counter()));
+            fail("expected exception");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+
+        assertSame(c, registry.getCounters().get(MetricId.build("c")));
+        assertEquals(ImmutableMap.of(MetricId.build("c"), c), batches.get(1));
+        assertSame(counter, registry.getCounters().get(a));
+    }
+
+    @Test
+    public void testAccept() {
+        final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+        final MetricId a = MetricId.build("a").tagged("shard", "1");
+        final MetricId b = MetricId.build("b").tagged("shard", "2");
+        final MetricId c = MetricId.build("c").tagged("shard", "1");
+
+        final Counter counter = registry.counter(a);
+        final Timer timer = registry.timer(b);
+        final Gauge<Integer> gauge = registry.register(c, () -> 1);
+
+        final Map<MetricId, Metric> visited = new HashMap<>();
+
+        final SemanticMetricVisitor visitor = new SemanticMetricVisitor.Base() {
+            @Override
+            public void visitCounter(final MetricId name, final Counter metric) {
+                assertNull(visited.put(name, metric));
+            }
+
+            @Override
+            public void visitTimer(final MetricId name, final Timer metric) {
+                assertNull(visited.put(name, metric));
+            }
+
+            @Override
+            public void visitGauge(final MetricId name, final Gauge<?> metric) {
+                assertNull(visited.put(name, metric));
+            }
+        };
+
+        registry.accept(visitor);
+        assertEquals(ImmutableMap.of(a, counter, b, timer, c, gauge), visited);
+
+        visited.clear();
+        registry.accept(visitor, TagQuery.of("shard", "1"));
+        assertEquals(ImmutableMap.of(a, counter, c, gauge), visited);
+    }
+
+    private abstract static class BatchListener extends SemanticMetricRegistryListener.Base
+        implements SemanticMetricRegistryBatchListener {
+    }
+}
@@ -0,0 +1,44 @@
+package com.spotify.metrics.core;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SemanticMetricScopeTest {
+    private final SemanticMetricRegistry registry = new SemanticMetricRegistry();
+    private final SemanticMetricScope scope =
+        registry.scoped(MetricId.build("service").tagged("component", "db", "shard", "1"));
+
+    @Test
+    public void testJoinsPrefix() {
+        final MetricId requests = MetricId.build("requests").tagged("shard", "2");
+        final Counter counter = scope.counter(requests);
+
+        final MetricId full =
+            MetricId.build("service.requests").tagged("component", "db", "shard", "2");
+        assertEquals(full, scope.resolve(requests));
+        assertSame(counter, registry.getCounters().get(full));
+        assertSame(counter, scope.counter(requests));
+
+        // joined names are cached.
+        assertSame(scope.resolve(requests), scope.resolve(requests));
+
+        assertTrue(scope.remove(requests));
+        assertTrue(registry.getCounters().isEmpty());
+    }
+
+    @Test
+    public void testNestedScope() {
+        final SemanticMetricScope nested = scope.scoped(MetricId.build("pool"));
+        final Timer timer = nested.timer(MetricId.build("wait"));
+
+        final MetricId full =
+            MetricId.build("service.pool.wait").tagged("component", "db", "shard", "1");
+        assertSame(timer, registry.getTimers().get(full));
+        assertSame(registry, nested.getRegistry());
+    }
+}
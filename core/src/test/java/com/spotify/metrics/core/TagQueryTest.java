@@ -0,0 +1,32 @@
+package com.spotify.metrics.core;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TagQueryTest {
+    private final MetricId id = MetricId.build("foo").tagged("shard", "17", "customer", "a");
+
+    @Test
+    public void testMatches() {
+        assertTrue(TagQuery.of("shard", "17").matches(id, null));
+        assertTrue(TagQuery.of("shard", "17").and("customer", "a").matches(id, null));
+        assertFalse(TagQuery.of("shard", "17").and("customer", "b").matches(id, null));
+        assertFalse(TagQuery.of("region", "eu").matches(id, null));
+    }
+
+    @Test
+    public void testAndReplacesValue() {
+        final TagQuery query = TagQuery.of("shard", "17").and("shard", "18");
+        assertEquals(ImmutableMap.of("shard", "18"), query.getTags());
+        assertEquals(TagQuery.of("shard", "18"), query);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullValue() {
+        TagQuery.of("shard", null);
+    }
+}
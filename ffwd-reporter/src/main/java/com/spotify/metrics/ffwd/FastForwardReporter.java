@@ -39,13 +39,16 @@ import com.spotify.metrics.core.Distribution;
 import com.spotify.metrics.core.MetricId;
 import com.spotify.metrics.core.SemanticMetricFilter;
 import com.spotify.metrics.core.SemanticMetricRegistry;
+import com.spotify.metrics.core.SemanticMetricVisitor;
 import com.spotify.metrics.tags.NoopTagExtractor;
 import com.spotify.metrics.tags.TagExtractor;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -89,7 +92,53 @@ public class FastForwardReporter implements AutoCloseable {
 
     private final AtomicBoolean running = new AtomicBoolean(false);
 
-    private Set<Percentile> histogramPercentiles;
+    private final List<Percentile> histogramPercentiles;
+
+    private final PreparedMetrics<PreparedMetric> gauges;
+    private final PreparedMetrics<PreparedMetric> counters;
+    private final PreparedMetrics<PreparedMetric> histograms;
+    private final PreparedMetrics<PreparedMetric> meters;
+    private final PreparedMetrics<PreparedMetric> timers;
+    private final PreparedMetrics<PreparedMetric> derivingMeters;
+    private final PreparedMetrics<com.spotify.ffwd.v1.Metric> distributions;
+
+    private final SemanticMetricVisitor visitor = new SemanticMetricVisitor() {
+        @Override
+        public void visitGauge(MetricId name, Gauge<?> gauge) {
+            reportGauge(name, gauge);
+        }
+
+        @Override
+        public void visitCounter(MetricId name, Counter counter) {
+            reportCounter(name, counter);
+        }
+
+        @Override
+        public void visitHistogram(MetricId name, Histogram histogram) {
+            reportHistogram(name, histogram);
+        }
+
+        @Override
+        public void visitMeter(MetricId name, Meter meter) {
+            reportMetered(name, meter);
+        }
+
+        @Override
+        public void visitTimer(MetricId name, Timer timer) {
+            reportTimer(name, timer);
+        }
+
+        @Override
+        public void visitDerivingMeter(MetricId name, DerivingMeter derivingMeter) {
+            reportDerivingMeter(name, derivingMeter);
+        }
+
+        @Override
+        public void visitDistribution(MetricId name, Distribution distribution) {
+            reportDistribution(name, distribution);
+        }
+    };
+
     private ScheduledFuture<?> scheduledFuture;
 
     private FastForwardReporter(
@@ -102,10 +151,47 @@ public class FastForwardReporter implements AutoCloseable {
         this.unit = unit;
         this.duration = duration;
         this.client = client;
-        this.histogramPercentiles = new HashSet<>(histogramPercentiles);
+        this.histogramPercentiles = new ArrayList<>(histogramPercentiles);
         this.tagExtractor = tagExtractor;
         this.executorService = executorService;
         this.executorOwner = executorOwner;
+
+        final List<String> histogramStats =
+            new ArrayList<>(Arrays.asList("min", "max", "mean", "median", "stddev"));
+
+        for (final Percentile q : this.histogramPercentiles) {
+            histogramStats.add(q.getPercentileString());
+        }
+
+        this.gauges = prepared("gauge", histogramStats);
+        this.counters = prepared("counter", histogramStats);
+        this.histograms = prepared("histogram", histogramStats);
+        this.meters = prepared("meter", histogramStats);
+        this.timers = new PreparedMetrics<>(key -> new PreparedMetric(
+            metric(key, "timer").attribute("unit", "ns"), histogramStats));
+        this.derivingMeters = prepared("deriving-meter", histogramStats);
+        this.distributions = new PreparedMetrics<>(key -> {
+            key = MetricId.join(prefix, key);
+            return FastForward
+                .metricV1(key.getKey())
+                .attributes(key.getTags())
+                .attribute(METRIC_TYPE, "distribution");
+        });
+    }
+
+    private PreparedMetrics<PreparedMetric> prepared(
+        final String type, final List<String> histogramStats
+    ) {
+        return new PreparedMetrics<>(key -> new PreparedMetric(metric(key, type), histogramStats));
+    }
+
+    private Metric metric(MetricId key, final String type) {
+        key = MetricId.join(prefix, key);
+
+        return FastForward
+            .metric(key.getKey())
+            .attributes(key.getTags())
+            .attribute(METRIC_TYPE, type);
     }
 
     public static Builder forRegistry(SemanticMetricRegistry registry) {
@@ -210,60 +296,22 @@ public class FastForwardReporter implements AutoCloseable {
     }
 
     public void report() {
-        report(registry.getGauges(FILTER_ALL), registry.getCounters(FILTER_ALL),
-            registry.getHistograms(FILTER_ALL), registry.getMeters(FILTER_ALL),
-            registry.getTimers(FILTER_ALL), registry.getDerivingMeters(FILTER_ALL),
-            registry.getDistributions(FILTER_ALL));
-    }
-
-    private void report(
-        @SuppressWarnings("rawtypes") SortedMap<MetricId, Gauge> gauges,
-        SortedMap<MetricId, Counter> counters, SortedMap<MetricId, Histogram> histograms,
-        SortedMap<MetricId, Meter> meters, SortedMap<MetricId, Timer> timers,
-        SortedMap<MetricId, DerivingMeter> derivingMeters,
-        SortedMap<MetricId, Distribution> distributions
-    ) {
-        for (@SuppressWarnings("rawtypes") Map.Entry<MetricId, Gauge> entry : gauges.entrySet()) {
-            reportGauge(entry.getKey(), entry.getValue());
-        }
-
-        for (Map.Entry<MetricId, Counter> entry : counters.entrySet()) {
-            reportCounter(entry.getKey(), entry.getValue());
-        }
-
-        for (Map.Entry<MetricId, Histogram> entry : histograms.entrySet()) {
-            reportHistogram(entry.getKey(), entry.getValue());
-        }
-
-        for (Map.Entry<MetricId, Meter> entry : meters.entrySet()) {
-            reportMetered(entry.getKey(), entry.getValue());
-        }
-
-        for (Map.Entry<MetricId, Timer> entry : timers.entrySet()) {
-            reportTimer(entry.getKey(), entry.getValue());
-        }
-
-        for (Map.Entry<MetricId, DerivingMeter> entry : derivingMeters.entrySet()) {
-            reportDerivingMeter(entry.getKey(), entry.getValue());
-        }
-
-        for (Map.Entry<MetricId, Distribution> entry : distributions.entrySet()) {
-            reportDistribution(entry.getKey(), entry.getValue());
-        }
+        registry.accept(visitor, FILTER_ALL);
+
+        // drop prepared metrics which are no longer in the registry.
+        gauges.sweep();
+        counters.sweep();
+        histograms.sweep();
+        meters.sweep();
+        timers.sweep();
+        derivingMeters.sweep();
+        distributions.sweep();
     }
 
     private void reportGauge(
         MetricId key, @SuppressWarnings("rawtypes") Gauge value
     ) {
-
-        key = MetricId.join(prefix, key);
-
-        final Metric m = FastForward
-            .metric(key.getKey())
-            .attributes(key.getTags())
-            .attribute(METRIC_TYPE, "gauge");
-
-        send(m.value(convert(value.getValue())));
+        send(gauges.get(key).metric().value(convert(value.getValue())));
     }
 
     private double convert(Object value) {
@@ -275,14 +323,7 @@ public class FastForwardReporter implements AutoCloseable {
     }
 
     private void reportCounter(MetricId key, Counting value) {
-        key = MetricId.join(prefix, key);
-
-        final Metric m = FastForward
-            .metric(key.getKey())
-            .attributes(key.getTags())
-            .attribute(METRIC_TYPE, "counter");
-
-        send(m.value(value.getCount()));
+        send(counters.get(key).metric().value(value.getCount()));
     }
 
     private void reportHistogram(MetricId key, Histogram value) {
@@ -291,27 +332,12 @@ public class FastForwardReporter implements AutoCloseable {
             return;
         }
 
-        key = MetricId.join(prefix, key);
-
-        final Metric m = FastForward
-            .metric(key.getKey())
-            .attributes(key.getTags())
-            .attribute(METRIC_TYPE, "histogram");
-
-        reportHistogram(m, snapshot);
+        reportHistogram(histograms.get(key), snapshot);
     }
 
     private void reportMetered(MetricId key, Meter value) {
-        MetricId originalKey = key;
-        key = MetricId.join(prefix, key);
-
-        final Metric m = FastForward
-            .metric(key.getKey())
-            .attributes(key.getTags())
-            .attribute(METRIC_TYPE, "meter");
-
-        reportMetered(m, value);
-        reportCounter(originalKey, value);
+        reportMetered(meters.get(key), value);
+        reportCounter(key, value);
     }
 
     private void reportTimer(MetricId key, Timer value) {
@@ -320,60 +346,41 @@ public class FastForwardReporter implements AutoCloseable {
             return;
         }
 
-        key = MetricId.join(prefix, key);
-
-        final Metric m = FastForward
-            .metric(key.getKey())
-            .attributes(key.getTags())
-            .attribute(METRIC_TYPE, "timer")
-            .attribute("unit", "ns");
+        final PreparedMetric m = timers.get(key);
 
         reportMetered(m, value);
         reportHistogram(m, snapshot);
     }
 
     private void reportDerivingMeter(MetricId key, DerivingMeter value) {
-        key = MetricId.join(prefix, key);
-
-        final Metric m = FastForward
-            .metric(key.getKey())
-            .attributes(key.getTags())
-            .attribute(METRIC_TYPE, "deriving-meter");
-
-        reportMetered(m, value);
+        reportMetered(derivingMeters.get(key), value);
     }
 
     private void reportDistribution(MetricId key, Distribution distribution) {
-        key = MetricId.join(prefix, key);
-
-        final com.spotify.ffwd.v1.Metric metric = FastForward
-            .metricV1(key.getKey())
-            .attributes(key.getTags())
-            .attribute(METRIC_TYPE, "distribution");
-
-        reportDistribution(metric, distribution);
+        reportDistribution(distributions.get(key), distribution);
     }
 
-    private void reportHistogram(final Metric m, final Snapshot s) {
-        send(m.attribute("stat", "min").value(s.getMin()));
-        send(m.attribute("stat", "max").value(s.getMax()));
-        send(m.attribute("stat", "mean").value(s.getMean()));
-        send(m.attribute("stat", "median").value(s.getMedian()));
-        send(m.attribute("stat", "stddev").value(s.getStdDev()));
-        reportHistogramQuantiles(m, s);
+    private void reportHistogram(final PreparedMetric m, final Snapshot s) {
+        final Metric[] stats = m.histogram();
+        send(stats[0].value(s.getMin()));
+        send(stats[1].value(s.getMax()));
+        send(stats[2].value(s.getMean()));
+        send(stats[3].value(s.getMedian()));
+        send(stats[4].value(s.getStdDev()));
+        reportHistogramQuantiles(stats, s);
     }
 
-    private void reportHistogramQuantiles(final Metric m, final Snapshot s) {
-        for (Percentile q : histogramPercentiles) {
-            send(m.attribute("stat", q.getPercentileString()).value(s.getValue(q.getQuantile())));
+    private void reportHistogramQuantiles(final Metric[] stats, final Snapshot s) {
+        // quantile stats follow the five fixed stats, in the order of histogramPercentiles.
+        for (int i = 0; i < histogramPercentiles.size(); i++) {
+            send(stats[5 + i].value(s.getValue(histogramPercentiles.get(i).getQuantile())));
         }
     }
 
-    private void reportMetered(final Metric m, Metered value) {
-        final String u = getUnit(m);
-        final Metric r = m.attribute("unit", u + "/s");
-        send(r.attribute("stat", "1m").value(value.getOneMinuteRate()));
-        send(r.attribute("stat", "5m").value(value.getFiveMinuteRate()));
+    private void reportMetered(final PreparedMetric m, Metered value) {
+        final Metric[] stats = m.metered();
+        send(stats[0].value(value.getOneMinuteRate()));
+        send(stats[1].value(value.getFiveMinuteRate()));
     }
 
     private void reportDistribution(final com.spotify.ffwd.v1.Metric metric,
@@ -384,16 +391,6 @@ public class FastForwardReporter implements AutoCloseable {
         log.warn("Using DEPRICATED 'distribution' metric_type, this is no longer supported");
     }
 
-    private String getUnit(final Metric m) {
-        final String unit = m.getAttributes().get("unit");
-
-        if (unit == null) {
-            return "n";
-        }
-
-        return unit;
-    }
-
     private void send(Metric metric) {
         final Map<String, String> tags = tagExtractor.addTags(metric.getAttributes());
         final Metric taggedMetric = metric.attributes(tags);
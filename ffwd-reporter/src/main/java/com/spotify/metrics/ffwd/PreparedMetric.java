@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.ffwd;
+
+import com.spotify.ffwd.Metric;
+import java.util.List;
+
+/**
+ * A metric prepared for sending, together with the variants of it used for each stat line.
+ * <p>
+ * Metrics are immutable and copy their attributes when modified, so the variants are built once
+ * and then only have their value set when reported.
+ */
+class PreparedMetric {
+    private static final String[] METERED_STATS = {"1m", "5m"};
+
+    private final Metric metric;
+    private final List<String> histogramStats;
+
+    // lazily built, racing threads build equal arrays.
+    private volatile Metric[] histogram;
+    private volatile Metric[] metered;
+
+    PreparedMetric(final Metric metric, final List<String> histogramStats) {
+        this.metric = metric;
+        this.histogramStats = histogramStats;
+    }
+
+    Metric metric() {
+        return metric;
+    }
+
+    /**
+     * Get variants of the metric for each histogram stat, in the order they were given in.
+     */
+    Metric[] histogram() {
+        Metric[] h = histogram;
+
+        if (h == null) {
+            h = new Metric[histogramStats.size()];
+
+            for (int i = 0; i < h.length; i++) {
+                h[i] = metric.attribute("stat", histogramStats.get(i));
+            }
+
+            histogram = h;
+        }
+
+        return h;
+    }
+
+    /**
+     * Get variants of the metric for the 1m and 5m rate stats.
+     */
+    Metric[] metered() {
+        Metric[] m = metered;
+
+        if (m == null) {
+            final String unit = metric.getAttributes().get("unit");
+            final Metric rate = metric.attribute("unit", (unit == null ? "n" : unit) + "/s");
+
+            m = new Metric[METERED_STATS.length];
+
+            for (int i = 0; i < m.length; i++) {
+                m[i] = rate.attribute("stat", METERED_STATS[i]);
+            }
+
+            metered = m;
+        }
+
+        return m;
+    }
+}
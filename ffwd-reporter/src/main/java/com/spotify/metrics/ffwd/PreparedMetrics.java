@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.ffwd;
+
+import com.spotify.metrics.core.MetricId;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Metrics prepared for sending, by the id of the metric they were prepared for.
+ * <p>
+ * Preparing a metric involves joining the id with the prefix of the reporter and converting
+ * its tags into attributes, which is wasteful to repeat on every report. Entries which were not
+ * used since the last {@link #sweep()} are dropped, so that removed metrics are not retained.
+ *
+ * @param <T> type of prepared metric
+ */
+class PreparedMetrics<T> {
+    private final Function<MetricId, T> prepare;
+    private final ConcurrentMap<MetricId, Entry<T>> entries = new ConcurrentHashMap<>();
+
+    private volatile long generation;
+
+    PreparedMetrics(final Function<MetricId, T> prepare) {
+        this.prepare = prepare;
+    }
+
+    /**
+     * Get the prepared metric for the given id, preparing it if needed.
+     */
+    T get(final MetricId id) {
+        Entry<T> entry = entries.get(id);
+
+        if (entry == null) {
+            entry = new Entry<>(prepare.apply(id));
+            entries.put(id, entry);
+        }
+
+        entry.generation = generation;
+        return entry.value;
+    }
+
+    /**
+     * Drop all entries which have not been used since the last sweep.
+     * <p>
+     * If sweeps race with concurrent reports, entries might be dropped even though they are in
+     * use, which only costs preparing them again.
+     */
+    void sweep() {
+        final long current = generation;
+        entries.values().removeIf(entry -> entry.generation != current);
+        generation = current + 1;
+    }
+
+    private static final class Entry<T> {
+        private final T value;
+        private volatile long generation;
+
+        private Entry(final T value) {
+            this.value = value;
+        }
+    }
+}
@@ -267,4 +267,35 @@ public class FastForwardReporterTest {
 
         assertEquals(new HashSet<>(Arrays.asList("test.hi")), actualKeys);
     }
+
+    @Test
+    public void shouldReportRemovedMetricsOnlyUntilRemoved() throws Exception {
+        ArgumentCaptor<Metric> argumentCaptor = ArgumentCaptor.forClass(Metric.class);
+        doNothing().when(fastForward).send(argumentCaptor.capture());
+
+        final MetricId name = MetricId.build("thetimer").tagged("what", "latency");
+        registry.timer(name).update(10, TimeUnit.MILLISECONDS);
+
+        reporter.report();
+        final Set<Metric> first = new HashSet<>(argumentCaptor.getAllValues());
+
+        reporter.report();
+        final Set<Metric> second = new HashSet<>(argumentCaptor.getAllValues());
+        second.removeAll(first);
+
+        // reports of unchanged metrics are identical.
+        assertEquals(Collections.emptySet(), second);
+
+        registry.remove(name);
+        final int sent = argumentCaptor.getAllValues().size();
+        reporter.report();
+
+        final List<Metric> metrics = argumentCaptor.getAllValues();
+        final Set<String> keys = metrics.subList(sent, metrics.size())
+            .stream()
+            .map(Metric::getKey)
+            .collect(Collectors.toSet());
+
+        assertEquals(Collections.singleton("test.hi"), keys);
+    }
 }
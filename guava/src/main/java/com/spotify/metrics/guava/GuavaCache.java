@@ -58,14 +58,27 @@ public final class GuavaCache<T> implements MetricIdCache.Cache<T> {
         cache.invalidateAll();
     }
 
+    @Override
+    public long size() {
+        return cache.size();
+    }
+
     public static MetricIdCache.Any setup(final Setup setup) {
-        return MetricIdCache.builder().cacheBuilder(new MetricIdCache.CacheBuilder() {
+        return MetricIdCache.builder().cacheBuilder(cacheBuilder(setup));
+    }
+
+    /**
+     * Build a cache builder which can be used to wrap the Guava caches, for example to
+     * instrument them.
+     */
+    public static MetricIdCache.CacheBuilder cacheBuilder(final Setup setup) {
+        return new MetricIdCache.CacheBuilder() {
             @Override
             public <T> MetricIdCache.Cache<T> build(final MetricIdCache.Loader<T> loader) {
                 final Cache<T, MetricId> cache = setup.setup(CacheBuilder.newBuilder()).build();
                 return new GuavaCache<T>(loader, cache);
             }
-        });
+        };
     }
 
     public static interface Setup {
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2021 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.jmh;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.cache.CacheBuilder;
+import com.spotify.metrics.caffeine.CaffeineCache;
+import com.spotify.metrics.core.MetricId;
+import com.spotify.metrics.core.MetricIdCache;
+import com.spotify.metrics.guava.GuavaCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares lookups through the unbounded, Guava-backed and Caffeine-backed {@link MetricIdCache}
+ * implementations, on a single thread and under contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 2, warmups = 1)
+@Measurement(time = 5, iterations = 5)
+@Warmup(time = 5, iterations = 2)
+public class CacheBenchmark {
+    private static final int KEYS = 1024;
+
+    private MetricIdCache<String> unbounded;
+    private MetricIdCache<String> guava;
+    private MetricIdCache<String> caffeine;
+
+    @Setup
+    public void setUp() {
+        final MetricIdCache.Loader<String> loader = (id, key) -> id.tagged("endpoint", key);
+        final MetricId base = MetricId.build("requests");
+
+        unbounded = MetricIdCache.builder().metricId(base).unbounded(loader).build();
+
+        guava = GuavaCache.setup(new GuavaCache.Setup() {
+            @Override
+            public <K, V> CacheBuilder<K, V> setup(final CacheBuilder<K, V> builder) {
+                return builder.maximumSize(KEYS * 2);
+            }
+        }).metricId(base).loader(loader).build();
+
+        caffeine = CaffeineCache.setup(new CaffeineCache.Setup() {
+            @Override
+            public <K, V> Caffeine<K, V> setup(final Caffeine<K, V> builder) {
+                return builder.maximumSize(KEYS * 2);
+            }
+        }).metricId(base).loader(loader).build();
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+        private final String[] keys = new String[KEYS];
+        private int next;
+
+        @Setup
+        public void setUp() {
+            for (int i = 0; i < KEYS; i++) {
+                keys[i] = "/endpoint/" + i;
+            }
+        }
+
+        String next() {
+            return keys[next++ & (KEYS - 1)];
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public MetricId unbounded1(final Keys keys) {
+        return unbounded.get(keys.next());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public MetricId unbounded8(final Keys keys) {
+        return unbounded.get(keys.next());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public MetricId guava1(final Keys keys) {
+        return guava.get(keys.next());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public MetricId guava8(final Keys keys) {
+        return guava.get(keys.next());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public MetricId caffeine1(final Keys keys) {
+        return caffeine.get(keys.next());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public MetricId caffeine8(final Keys keys) {
+        return caffeine.get(keys.next());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2021 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.jmh;
+
+import com.codahale.metrics.Metric;
+import com.spotify.metrics.core.MetricId;
+import com.spotify.metrics.core.SemanticMetricRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares looking up metrics by their {@link MetricId#fingerprint() fingerprint} against looking
+ * them up through {@link MetricId#equals(Object)}.
+ * <p>
+ * The lookups by id use a distinct but equal instance to the registered one, so that the
+ * comparison has to walk all tags.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 2, warmups = 1)
+@Measurement(time = 5, iterations = 5)
+@Warmup(time = 5, iterations = 2)
+public class FingerprintBenchmark {
+    @Param({"2", "6", "10"})
+    private int tagCount;
+
+    @Param({"1000"})
+    private int metricCount;
+
+    private SemanticMetricRegistry registry;
+    private Map<MetricId, Metric> metrics;
+
+    private MetricId idCopy;
+    private long fingerprint;
+    private String[] pairs;
+
+    @Setup
+    public void setUp() {
+        registry = new SemanticMetricRegistry();
+        pairs = new String[tagCount * 2];
+
+        for (int i = 0; i < tagCount; i++) {
+            pairs[i * 2] = "key" + i;
+            pairs[i * 2 + 1] = "value" + i;
+        }
+
+        final MetricId base = MetricId.build("requests").tagged(pairs);
+
+        for (int i = 0; i < metricCount; i++) {
+            registry.counter(base.tagged("instance", Integer.toString(i)));
+        }
+
+        metrics = registry.getMetrics();
+
+        final MetricId target = base.tagged("instance", Integer.toString(metricCount / 2));
+        idCopy = MetricId.build("requests").tagged(pairs).tagged("instance",
+            Integer.toString(metricCount / 2));
+        fingerprint = target.fingerprint();
+
+        // build the index up front.
+        registry.getMetric(fingerprint);
+    }
+
+    @Benchmark
+    public Metric lookupById() {
+        return metrics.get(idCopy);
+    }
+
+    @Benchmark
+    public Metric lookupByFingerprint() {
+        return registry.getMetric(fingerprint);
+    }
+
+    @Benchmark
+    public long fingerprintCached() {
+        return idCopy.fingerprint();
+    }
+
+    @Benchmark
+    public long fingerprintFresh() {
+        return MetricId.build("requests").tagged(pairs).fingerprint();
+    }
+
+    @Benchmark
+    public int hashCodeFresh() {
+        return MetricId.build("requests").tagged(pairs).hashCode();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2021 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.jmh;
+
+import com.spotify.metrics.core.MetricId;
+import com.spotify.metrics.core.MetricIdCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of a {@link MetricIdCache} with and without a per-thread front cache,
+ * when all threads look up the same handful of hot keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 2, warmups = 1)
+@Measurement(time = 5, iterations = 5)
+@Warmup(time = 5, iterations = 2)
+public class FrontCacheBenchmark {
+    private static final int KEYS = 8;
+
+    private MetricIdCache<String> plain;
+    private MetricIdCache<String> front;
+
+    @Setup
+    public void setUp() {
+        final MetricIdCache.Loader<String> loader = (id, key) -> id.tagged("endpoint", key);
+        final MetricId base = MetricId.build("requests");
+
+        plain = MetricIdCache.builder().metricId(base).unbounded(loader).build();
+        front = MetricIdCache.builder().metricId(base).unbounded(loader).frontCache(16).build();
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+        private final String[] keys = new String[KEYS];
+        private int next;
+
+        @Setup
+        public void setUp() {
+            for (int i = 0; i < KEYS; i++) {
+                keys[i] = "/endpoint/" + i;
+            }
+        }
+
+        String next() {
+            return keys[next++ & (KEYS - 1)];
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public MetricId plain1(final Keys keys) {
+        return plain.get(keys.next());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public MetricId plain8(final Keys keys) {
+        return plain.get(keys.next());
+    }
+
+    @Benchmark
+    @Threads(32)
+    public MetricId plain32(final Keys keys) {
+        return plain.get(keys.next());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public MetricId front1(final Keys keys) {
+        return front.get(keys.next());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public MetricId front8(final Keys keys) {
+        return front.get(keys.next());
+    }
+
+    @Benchmark
+    @Threads(32)
+    public MetricId front32(final Keys keys) {
+        return front.get(keys.next());
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2021 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.jmh;
+
+import com.spotify.metrics.core.MetricId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the array-backed tags of {@link MetricId} against the previous TreeMap-backed
+ * implementation.
+ * <p>
+ * Run with {@code -prof gc} to compare the allocation rate of the tagged benchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 2, warmups = 1)
+@Measurement(time = 5, iterations = 5)
+@Warmup(time = 5, iterations = 2)
+public class MetricIdBenchmark {
+    @Param({"2", "6", "10"})
+    private int tagCount;
+
+    private String[] pairs;
+
+    private MetricId id;
+    private MetricId idCopy;
+    private MetricId idOther;
+
+    private TreeMapMetricId legacy;
+    private TreeMapMetricId legacyCopy;
+    private TreeMapMetricId legacyOther;
+
+    @Setup
+    public void setUp() {
+        pairs = new String[tagCount * 2];
+
+        for (int i = 0; i < tagCount; i++) {
+            pairs[i * 2] = "key" + (tagCount - i);
+            pairs[i * 2 + 1] = "value" + i;
+        }
+
+        id = MetricId.EMPTY.tagged(pairs);
+        idCopy = MetricId.EMPTY.tagged(pairs);
+        legacy = TreeMapMetricId.EMPTY.tagged(pairs);
+        legacyCopy = TreeMapMetricId.EMPTY.tagged(pairs);
+
+        // differs in the last value only, so comparisons have to walk all tags.
+        final String last = pairs[pairs.length - 2];
+        idOther = id.tagged(last, "other");
+        legacyOther = legacy.tagged(last, "other");
+    }
+
+    @Benchmark
+    public MetricId taggedOne() {
+        return id.tagged("endpoint", "/foo");
+    }
+
+    @Benchmark
+    public TreeMapMetricId taggedOneLegacy() {
+        return legacy.tagged("endpoint", "/foo");
+    }
+
+    @Benchmark
+    public MetricId taggedAll() {
+        return MetricId.EMPTY.tagged(pairs);
+    }
+
+    @Benchmark
+    public TreeMapMetricId taggedAllLegacy() {
+        return TreeMapMetricId.EMPTY.tagged(pairs);
+    }
+
+    @Benchmark
+    public boolean equalsEqual() {
+        return id.equals(idCopy);
+    }
+
+    @Benchmark
+    public boolean equalsEqualLegacy() {
+        return legacy.equals(legacyCopy);
+    }
+
+    @Benchmark
+    public int compareToEqual() {
+        return id.compareTo(idCopy);
+    }
+
+    @Benchmark
+    public int compareToEqualLegacy() {
+        return legacy.compareTo(legacyCopy);
+    }
+
+    @Benchmark
+    public int compareToDifferent() {
+        return id.compareTo(idOther);
+    }
+
+    @Benchmark
+    public int compareToDifferentLegacy() {
+        return legacy.compareTo(legacyOther);
+    }
+
+    @Benchmark
+    public String getTag() {
+        return id.getTags().get(pairs[0]);
+    }
+
+    @Benchmark
+    public String getTagLegacy() {
+        return legacy.getTags().get(pairs[0]);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2021 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.jmh;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.spotify.metrics.core.MetricId;
+import com.spotify.metrics.core.SemanticMetricRegistry;
+import com.spotify.metrics.core.TagQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to get the meters of a large registry where most metrics are
+ * counters, with and without the per-type index the registry keeps for its own map of metrics,
+ * how long it takes to visit them without copying, and how long it takes to find one of them by
+ * tag.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 2, warmups = 1)
+@Measurement(time = 5, iterations = 5)
+@Warmup(time = 5, iterations = 2)
+public class RegistryBenchmark {
+    private static final TagQuery QUERY = TagQuery.of("id", "20");
+
+    @Param({"10000", "200000"})
+    private int size;
+
+    private SemanticMetricRegistry indexed;
+    private SemanticMetricRegistry scanned;
+
+    @Setup
+    public void setUp() {
+        indexed = new SemanticMetricRegistry();
+        // a registry on a caller-provided map visits all metrics for every typed lookup.
+        scanned = new SemanticMetricRegistry(new ConcurrentHashMap<MetricId, Metric>());
+
+        final MetricId base = MetricId.build("requests");
+
+        for (int i = 0; i < size; i++) {
+            final MetricId id = base.tagged("id", Integer.toString(i));
+
+            // one in twenty metrics is a meter.
+            if (i % 20 == 0) {
+                indexed.meter(id);
+                scanned.meter(id);
+            } else {
+                indexed.counter(id);
+                scanned.counter(id);
+            }
+        }
+    }
+
+    @Benchmark
+    public SortedMap<MetricId, Meter> getMetersIndexed() {
+        return indexed.getMeters();
+    }
+
+    @Benchmark
+    public SortedMap<MetricId, Meter> getMetersScanned() {
+        return scanned.getMeters();
+    }
+
+    @Benchmark
+    public void forEachMeterIndexed(final Blackhole blackhole) {
+        indexed.forEachMeter((name, meter) -> blackhole.consume(meter));
+    }
+
+    @Benchmark
+    public SortedMap<MetricId, Meter> getMetersByTagIndexed() {
+        return indexed.getMeters(QUERY);
+    }
+
+    @Benchmark
+    public SortedMap<MetricId, Meter> getMetersByTagScanned() {
+        return scanned.getMeters(QUERY);
+    }
+}
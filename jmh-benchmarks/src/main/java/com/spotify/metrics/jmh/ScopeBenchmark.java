@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2021 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.jmh;
+
+import com.codahale.metrics.Counter;
+import com.spotify.metrics.core.MetricId;
+import com.spotify.metrics.core.SemanticMetricRegistry;
+import com.spotify.metrics.core.SemanticMetricScope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares looking up an existing counter by tagging a base id at the call site with looking
+ * it up through a scope. Run with {@code -prof gc} to see that the scope does not allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 2, warmups = 1)
+@Measurement(time = 5, iterations = 5)
+@Warmup(time = 5, iterations = 2)
+public class ScopeBenchmark {
+    private static final MetricId REQUESTS = MetricId.build("requests").tagged("endpoint", "get");
+
+    private SemanticMetricRegistry registry;
+    private MetricId base;
+    private SemanticMetricScope scope;
+
+    @Setup
+    public void setUp() {
+        registry = new SemanticMetricRegistry();
+        base = MetricId.build("service").tagged("component", "db", "shard", "1");
+        scope = registry.scoped(base);
+        scope.counter(REQUESTS);
+    }
+
+    @Benchmark
+    public Counter tagAtCallSite() {
+        return registry.counter(base.resolve("requests").tagged("endpoint", "get"));
+    }
+
+    @Benchmark
+    public Counter scoped() {
+        return scope.counter(REQUESTS);
+    }
+}
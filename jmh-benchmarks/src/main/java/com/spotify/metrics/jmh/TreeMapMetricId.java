@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2021 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.jmh;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The TreeMap-backed MetricId implementation that predates the array-backed tag storage, kept
+ * around as a baseline for {@link MetricIdBenchmark}.
+ */
+final class TreeMapMetricId implements Comparable<TreeMapMetricId> {
+    static final TreeMapMetricId EMPTY =
+        new TreeMapMetricId(null, Collections.unmodifiableSortedMap(new TreeMap<>()));
+
+    private final String key;
+    private final SortedMap<String, String> tags;
+    private final int hash;
+
+    private TreeMapMetricId(final String key, final SortedMap<String, String> tags) {
+        this.key = key;
+        this.tags = tags;
+        this.hash = 31 * (31 + (key == null ? 0 : key.hashCode())) + tags.hashCode();
+    }
+
+    TreeMapMetricId tagged(final String k1, final String v1) {
+        final TreeMap<String, String> tags = new TreeMap<>(this.tags);
+        tags.put(k1, v1);
+        return new TreeMapMetricId(key, Collections.unmodifiableSortedMap(tags));
+    }
+
+    TreeMapMetricId tagged(final String... pairs) {
+        final TreeMap<String, String> tags = new TreeMap<>(this.tags);
+
+        for (int i = 0; i < pairs.length; i += 2) {
+            tags.put(pairs[i], pairs[i + 1]);
+        }
+
+        return new TreeMapMetricId(key, Collections.unmodifiableSortedMap(tags));
+    }
+
+    Map<String, String> getTags() {
+        return tags;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof TreeMapMetricId)) {
+            return false;
+        }
+
+        final TreeMapMetricId m = (TreeMapMetricId) obj;
+
+        if (hash != m.hash) {
+            return false;
+        }
+
+        if (key == null ? m.key != null : !key.equals(m.key)) {
+            return false;
+        }
+
+        return tags.equals(m.tags);
+    }
+
+    @Override
+    public int compareTo(final TreeMapMetricId o) {
+        if (this == o) {
+            return 0;
+        }
+
+        final int h = Integer.compare(hash, o.hash);
+
+        if (h != 0) {
+            return h;
+        }
+
+        if (key != null && o.key != null) {
+            final int k = key.compareTo(o.key);
+
+            if (k != 0) {
+                return k;
+            }
+        }
+
+        final Iterator<Map.Entry<String, String>> li = tags.entrySet().iterator();
+        final Iterator<Map.Entry<String, String>> ri = o.tags.entrySet().iterator();
+
+        while (li.hasNext()) {
+            if (!ri.hasNext()) {
+                return -1;
+            }
+
+            final Map.Entry<String, String> l = li.next();
+            final Map.Entry<String, String> r = ri.next();
+
+            final int k = l.getKey().compareTo(r.getKey());
+
+            if (k != 0) {
+                return k;
+            }
+
+            if (l.getValue() != null && r.getValue() != null) {
+                final int v = l.getValue().compareTo(r.getValue());
+
+                if (v != 0) {
+                    return v;
+                }
+            }
+        }
+
+        return ri.hasNext() ? 1 : 0;
+    }
+}
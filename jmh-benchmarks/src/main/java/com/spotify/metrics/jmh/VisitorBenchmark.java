@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2021 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.metrics.jmh;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Counting;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.Timer;
+import com.spotify.metrics.core.DerivingMeter;
+import com.spotify.metrics.core.Distribution;
+import com.spotify.metrics.core.MetricId;
+import com.spotify.metrics.core.SemanticMetricFilter;
+import com.spotify.metrics.core.SemanticMetricRegistry;
+import com.spotify.metrics.core.SemanticMetricVisitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares traversing all metrics of a registry the way a reporter does, through the seven
+ * typed getters and through a visitor.
+ * <p>
+ * Like a reporter, both read the value of every metric. Run with {@code -prof gc} to compare the
+ * allocation rates, since the typed getters copy and sort the metrics of each type while the
+ * visitor does not allocate per metric.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 2, warmups = 1)
+@Measurement(time = 5, iterations = 5)
+@Warmup(time = 5, iterations = 2)
+public class VisitorBenchmark {
+    @Param({"10000", "200000"})
+    private int size;
+
+    private SemanticMetricRegistry registry;
+
+    @Setup
+    public void setUp() {
+        registry = new SemanticMetricRegistry();
+
+        final MetricId base = MetricId.build("requests");
+
+        for (int i = 0; i < size; i++) {
+            final MetricId id = base.tagged("id", Integer.toString(i));
+
+            switch (i % 4) {
+                case 0:
+                    registry.counter(id);
+                    break;
+                case 1:
+                    registry.meter(id);
+                    break;
+                case 2:
+                    registry.timer(id);
+                    break;
+                default:
+                    registry.register(id, (Gauge<Integer>) () -> 42);
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public void typedGetters(final Blackhole blackhole) {
+        consume(registry.getGauges(), blackhole);
+        consume(registry.getCounters(), blackhole);
+        consume(registry.getHistograms(), blackhole);
+        consume(registry.getMeters(), blackhole);
+        consume(registry.getTimers(), blackhole);
+        consume(registry.getDerivingMeters(SemanticMetricFilter.ALL), blackhole);
+        consume(registry.getDistributions(SemanticMetricFilter.ALL), blackhole);
+    }
+
+    @Benchmark
+    public void visitor(final Blackhole blackhole) {
+        registry.accept(new SemanticMetricVisitor() {
+            @Override
+            public void visitGauge(MetricId name, Gauge<?> gauge) {
+                blackhole.consume(gauge.getValue());
+            }
+
+            @Override
+            public void visitCounter(MetricId name, Counter counter) {
+                blackhole.consume(counter.getCount());
+            }
+
+            @Override
+            public void visitHistogram(MetricId name, Histogram histogram) {
+                blackhole.consume(histogram.getCount());
+            }
+
+            @Override
+            public void visitMeter(MetricId name, Meter meter) {
+                blackhole.consume(meter.getCount());
+            }
+
+            @Override
+            public void visitTimer(MetricId name, Timer timer) {
+                blackhole.consume(timer.getCount());
+            }
+
+            @Override
+            public void visitDerivingMeter(MetricId name, DerivingMeter derivingMeter) {
+                blackhole.consume(derivingMeter.getCount());
+            }
+
+            @Override
+            public void visitDistribution(MetricId name, Distribution distribution) {
+                blackhole.consume(distribution.getCount());
+            }
+        });
+    }
+
+    private static void consume(
+        final Map<MetricId, ? extends Metric> metrics, final Blackhole blackhole
+    ) {
+        for (final Metric metric : metrics.values()) {
+            if (metric instanceof Gauge) {
+                blackhole.consume(((Gauge<?>) metric).getValue());
+            } else {
+                blackhole.consume(((Counting) metric).getCount());
+            }
+        }
+    }
+}
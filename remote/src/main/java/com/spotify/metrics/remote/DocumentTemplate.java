@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.spotify.metrics.remote;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ForwardingMap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * The pre-encoded JSON form of the documents sent for a single metric.
+ * <p>
+ * Everything but the value of a document is encoded once when the template is created, so
+ * that {@link OkRemote} can write the body of a request by splicing the encoded value in between.
+ */
+public final class DocumentTemplate {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String VALUE_PLACEHOLDER = "\u0000";
+
+    private final String key;
+    private final Map<String, String> allAttributes;
+    private final byte[] prefix;
+    private final byte[] suffix;
+
+    private DocumentTemplate(
+        final String key, final Map<String, String> allAttributes, final byte[] prefix,
+        final byte[] suffix
+    ) {
+        this.key = key;
+        this.allAttributes = allAttributes;
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    /**
+     * Create a template for documents with the given key and attributes.
+     *
+     * @see SemanticAggregator#buildDocument(String, String, Map)
+     */
+    public static DocumentTemplate create(
+        final String key, final Map<String, String> allAttributes
+    ) {
+        final String json;
+
+        try {
+            json = MAPPER.writeValueAsString(
+                SemanticAggregator.buildDocument(VALUE_PLACEHOLDER, key, allAttributes));
+        } catch (final JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid json input", e);
+        }
+
+        // the placeholder is escaped by the encoder, so it can't be confused with key or
+        // attributes.
+        final String placeholder = "\"" + new String(
+            JsonStringEncoder.getInstance().quoteAsString(VALUE_PLACEHOLDER)) + "\"";
+        final int index = json.indexOf(placeholder);
+
+        return new DocumentTemplate(key, allAttributes,
+            (json.substring(0, index) + "\"").getBytes(StandardCharsets.UTF_8),
+            ("\"" + json.substring(index + placeholder.length())).getBytes(
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Build a document with the given value.
+     *
+     * @param value the value of the document
+     * @return a document which is equal to the one built by
+     * {@link SemanticAggregator#buildDocument(String, String, Map)}, and can be encoded
+     * without encoding its key and attributes again
+     */
+    public Document document(final String value) {
+        return new Document(value);
+    }
+
+    /**
+     * A document built from a template.
+     */
+    public final class Document extends ForwardingMap<String, Object> {
+        private final String value;
+        private Map<String, Object> delegate;
+
+        private Document(final String value) {
+            this.value = value;
+        }
+
+        @Override
+        protected Map<String, Object> delegate() {
+            if (delegate == null) {
+                delegate = SemanticAggregator.buildDocument(value, key, allAttributes);
+            }
+
+            return delegate;
+        }
+
+        /**
+         * Encode this document as UTF-8 JSON.
+         */
+        public byte[] toJson() {
+            final byte[] encoded = encodeValue(value);
+            final byte[] result = new byte[prefix.length + encoded.length + suffix.length];
+            System.arraycopy(prefix, 0, result, 0, prefix.length);
+            System.arraycopy(encoded, 0, result, prefix.length, encoded.length);
+            System.arraycopy(suffix, 0, result, prefix.length + encoded.length, suffix.length);
+            return result;
+        }
+    }
+
+    private static byte[] encodeValue(final String value) {
+        final int length = value.length();
+
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+
+            if (c < 0x20 || c >= 0x7f || c == '"' || c == '\\') {
+                return JsonStringEncoder.getInstance().quoteAsUTF8(value);
+            }
+        }
+
+        // plain ascii, which is the case for all numeric values.
+        final byte[] result = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            result[i] = (byte) value.charAt(i);
+        }
+
+        return result;
+    }
+}
@@ -74,14 +74,18 @@ public class OkRemote implements Remote {
         if ((path.length() > 0) && (path.charAt(0) != '/')) {
             path = "/" + path;
         }
-        final String jsonStr;
-        try {
-            jsonStr = mapper.writeValueAsString(jsonObj);
-        } catch (JsonProcessingException e) {
-            return Futures.immediateFailedFuture(new RuntimeException("Invalid json input"));
+        final RequestBody body;
+        if (jsonObj instanceof DocumentTemplate.Document) {
+            // key and attributes are already encoded, only the value needs encoding.
+            body = RequestBody.create(JSON, ((DocumentTemplate.Document) jsonObj).toJson());
+        } else {
+            try {
+                body = RequestBody.create(JSON, mapper.writeValueAsString(jsonObj));
+            } catch (JsonProcessingException e) {
+                return Futures.immediateFailedFuture(new RuntimeException("Invalid json input"));
+            }
         }
         final String url = "http://" + host + ":" + port + path;
-        final RequestBody body = RequestBody.create(JSON, jsonStr);
 
         final Request request = new Request.Builder()
             .url(url)
@@ -52,6 +52,8 @@ public interface SemanticAggregatorMetricBuilder<T extends RemoteMetric> {
                     SemanticAggregator.buildAttributes(id, "meter");
                 final String shard =
                     Sharder.buildShardKey(shardKey, allAttributes);
+                final DocumentTemplate template =
+                    DocumentTemplate.create(id.getKey(), allAttributes);
 
                 return new RemoteMeter() {
                     @Override
@@ -64,10 +66,7 @@ public interface SemanticAggregatorMetricBuilder<T extends RemoteMetric> {
                         return remote.post(
                             "/",
                             shard,
-                            SemanticAggregator.buildDocument(
-                                Long.toString(n),
-                                id.getKey(),
-                                allAttributes));
+                            template.document(Long.toString(n)));
                     }
 
                 };
@@ -91,6 +90,8 @@ public interface SemanticAggregatorMetricBuilder<T extends RemoteMetric> {
                     SemanticAggregator.buildAttributes(id, "counter");
                 final String shard =
                     Sharder.buildShardKey(shardKey, allAttributes);
+                final DocumentTemplate template =
+                    DocumentTemplate.create(id.getKey(), allAttributes);
 
                 return new RemoteCounter() {
                     @Override
@@ -103,10 +104,7 @@ public interface SemanticAggregatorMetricBuilder<T extends RemoteMetric> {
                         remote.post(
                             "/",
                             shard,
-                            SemanticAggregator.buildDocument(
-                                Long.toString(n),
-                                id.getKey(),
-                                allAttributes));
+                            template.document(Long.toString(n)));
                     }
 
                     @Override
@@ -155,6 +153,8 @@ public interface SemanticAggregatorMetricBuilder<T extends RemoteMetric> {
                     SemanticAggregator.buildAttributes(id, "deriving_meter");
                 final String shard =
                     Sharder.buildShardKey(shardKey, allAttributes);
+                final DocumentTemplate template =
+                    DocumentTemplate.create(id.getKey(), allAttributes);
 
                 return new RemoteDerivingMeter() {
                     @Override
@@ -167,10 +167,7 @@ public interface SemanticAggregatorMetricBuilder<T extends RemoteMetric> {
                         return remote.post(
                             "/",
                             shard,
-                            SemanticAggregator.buildDocument(
-                                Long.toString(n),
-                                id.getKey(),
-                                allAttributes));
+                            template.document(Long.toString(n)));
                     }
 
                 };
@@ -194,6 +191,8 @@ public interface SemanticAggregatorMetricBuilder<T extends RemoteMetric> {
                     SemanticAggregator.buildAttributes(id, "histogram");
                 final String shard =
                     Sharder.buildShardKey(shardKey, allAttributes);
+                final DocumentTemplate template =
+                    DocumentTemplate.create(id.getKey(), allAttributes);
 
                 return new RemoteHistogram() {
                     @Override
@@ -201,10 +200,7 @@ public interface SemanticAggregatorMetricBuilder<T extends RemoteMetric> {
                         return remote.post(
                             "/",
                             shard,
-                            SemanticAggregator.buildDocument(
-                                Long.toString(value),
-                                id.getKey(),
-                                allAttributes));
+                            template.document(Long.toString(value)));
                     }
                 };
             }
@@ -43,6 +43,7 @@ public class SemanticAggregatorTimer implements RemoteTimer {
     final String key;
     final Remote remote;
     final Map<String, String> allAttributes;
+    final DocumentTemplate template;
     final String shard;
     final TimeSource timeSource;
 
@@ -56,6 +57,7 @@ public class SemanticAggregatorTimer implements RemoteTimer {
         this.timeSource = timeSource;
         allAttributes = SemanticAggregator.buildAttributes(id, "timer");
         shard = Sharder.buildShardKey(shardKey, allAttributes);
+        template = DocumentTemplate.create(key, allAttributes);
     }
 
     public SemanticAggregatorTimer(MetricId id, List<String> shardKey, Remote remote) {
@@ -72,10 +74,7 @@ public class SemanticAggregatorTimer implements RemoteTimer {
                 return remote.post(
                     "/",
                     shard,
-                    SemanticAggregator.buildDocument(
-                        Long.toString(stopTm - startTm),
-                        key,
-                        allAttributes));
+                    template.document(Long.toString(stopTm - startTm)));
             }
         };
     }
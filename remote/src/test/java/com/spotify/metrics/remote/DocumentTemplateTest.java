@@ -0,0 +1,37 @@
+package com.spotify.metrics.remote;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class DocumentTemplateTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<String, String> attributes =
+        ImmutableMap.of("what", "quo\"tes", "metric_type", "counter", "unicode", "å\u0000");
+    private final DocumentTemplate template = DocumentTemplate.create("foo\\bar", attributes);
+
+    @Test
+    public void testEqualsBuiltDocument() {
+        assertEquals(SemanticAggregator.buildDocument("42", "foo\\bar", attributes),
+            template.document("42"));
+        assertEquals(template.document("42"),
+            SemanticAggregator.buildDocument("42", "foo\\bar", attributes));
+    }
+
+    @Test
+    public void testToJson() throws Exception {
+        for (final String value : new String[]{"42", "-1", "", "a\"b", "å"}) {
+            final String expected = mapper.writeValueAsString(
+                SemanticAggregator.buildDocument(value, "foo\\bar", attributes));
+
+            assertEquals(expected,
+                new String(template.document(value).toJson(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -41,4 +41,17 @@ public class OkRemoteTest {
         RecordedRequest r = server.takeRequest();
         assertEquals("shard-key", r.getHeader("X-Shard-Key"));
     }
+
+    @Test
+    public void templateTest() throws InterruptedException, ExecutionException {
+        server.enqueue(new MockResponse().setBody("hia"));
+        final DocumentTemplate template =
+            DocumentTemplate.create("key", ImmutableMap.of("what", "requests"));
+        remote.post("foo", "foo", template.document("12"));
+        RecordedRequest r = server.takeRequest();
+        assertEquals(
+            "{\"type\":\"metric\",\"value\":\"12\",\"key\":\"key\","
+                + "\"attributes\":{\"what\":\"requests\"}}",
+            r.getBody().readUtf8());
+    }
 }
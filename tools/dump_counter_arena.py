@@ -0,0 +1,82 @@
+#!/usr/bin/env python
+"""Dump the values of a CounterArena written by a running JVM.
+
+Usage: dump_counter_arena.py <file>
+
+The layout is described in CounterArena: a 64 byte header of ints (magic,
+version, slot size, slot count), followed by fixed-size slots holding a long
+value, an int type, an int name length and the encoded name. Numbers are in
+the byte order of the writer, which is told by the magic number. Names are
+the metric key followed by tag keys and values, each prefixed by the length of
+its UTF-8 bytes as a big-endian int, where a length of -1 marks a missing key
+or value.
+"""
+
+import mmap
+import struct
+import sys
+
+MAGIC = 0x534d4341
+VERSION = 2
+HEADER_SIZE = 64
+TYPES = {1: 'counter', 2: 'gauge'}
+
+
+def decode_parts(encoded):
+    parts = []
+    offset = 0
+
+    while offset < len(encoded):
+        length, = struct.unpack_from('>i', encoded, offset)
+        offset += 4
+
+        if length < 0:
+            parts.append(None)
+            continue
+
+        parts.append(encoded[offset:offset + length].decode('utf-8'))
+        offset += length
+
+    return parts
+
+
+def format_name(encoded):
+    parts = decode_parts(encoded)
+    tags = ', '.join('%s=%s' % (parts[i], parts[i + 1])
+                     for i in range(1, len(parts) - 1, 2))
+    return '%s{%s}' % (parts[0], tags)
+
+
+def dump(path):
+    with open(path, 'rb') as fd:
+        buf = mmap.mmap(fd.fileno(), 0, access=mmap.ACCESS_READ)
+
+    order = '>'
+
+    if struct.unpack_from('<i', buf, 0)[0] == MAGIC:
+        order = '<'
+
+    magic, version, slot_size, slots = struct.unpack_from(order + 'iiii', buf, 0)
+
+    if magic != MAGIC:
+        sys.exit('not a counter arena: %s' % path)
+
+    if version != VERSION:
+        sys.exit('unsupported counter arena version: %d' % version)
+
+    for i in range(slots):
+        offset = HEADER_SIZE + i * slot_size
+        value, kind, length = struct.unpack_from(order + 'qii', buf, offset)
+
+        if kind not in TYPES:
+            continue
+
+        name = buf[offset + 16:offset + 16 + length]
+        print('%s %s %d' % (TYPES[kind], format_name(name), value))
+
+
+if __name__ == '__main__':
+    if len(sys.argv) != 2:
+        sys.exit(__doc__)
+
+    dump(sys.argv[1])